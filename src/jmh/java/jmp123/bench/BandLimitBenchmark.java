@@ -0,0 +1,81 @@
+/*
+ * BandLimitBenchmark.java -- 高频子带为0的文件的解码基准测试
+ */
+package jmp123.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jmp123.PlayBack;
+
+/**
+ * 解码 {@link Fixtures#createBandLimited(int, int, File)} 生成的文件，比较不同位率和非零子带数的解码速度。
+ * 每次操作解码一个文件，辅助计数器 <code>frames</code> 给出每秒解码的帧数，音频输出对象为null。
+ * <p>
+ * 非零子带之后的子带不作抗锯齿和IMDCT。多相合成滤波只跳过全为0的输入（见 {@link SynthesisBenchmark}），
+ * 这些文件的每组输入都有非零值，仍处理全部32个子带。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BandLimitBenchmark {
+	@Param({ "64", "128", "256" })
+	public int kbps;
+
+	/**
+	 * 非零子带数。44.1kHz时每个子带宽689Hz，16kHz低通约为23个子带。
+	 */
+	@Param({ "16", "23", "32" })
+	public int sblimit;
+
+	private String path;
+
+	/**
+	 * 已解码的帧数。
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Frames {
+		public long frames;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			frames = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		path = Fixtures.createBandLimited(kbps, sblimit, new File(Fixtures.DEFAULT_DIR)).getPath();
+	}
+
+	@Benchmark
+	public int decodeFile(Frames counter) throws IOException {
+		PlayBack playback = new PlayBack(null);
+		if (playback.open(path, null) == false)
+			throw new IOException("Open failed: " + path);
+		playback.start(false);
+		int frames = playback.getHeader().getFrames();
+		playback.close();
+		counter.frames += frames;
+		return frames;
+	}
+}
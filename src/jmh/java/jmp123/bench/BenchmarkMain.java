@@ -0,0 +1,31 @@
+/*
+ * BenchmarkMain.java -- 基准测试入口
+ */
+package jmp123.bench;
+
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * 运行基准测试。命令行参数和JMH相同；未指定 <code>-prof</code> 时默认加上 <code>-prof gc</code>，报告每次操作分配的内存（gc.alloc.rate.norm）。
+ * <p>
+ * 用法: <code>java -jar target/benchmarks.jar [JMH参数]</code>
+ */
+public final class BenchmarkMain {
+	private BenchmarkMain() {
+	}
+
+	public static void main(String[] args) throws RunnerException, java.io.IOException {
+		boolean hasProf = false;
+		for (String arg : args)
+			if (arg.equals("-prof") || arg.equals("-lprof") || arg.equals("-h"))
+				hasProf = true;
+		if (!hasProf) {
+			String[] a = new String[args.length + 2];
+			a[0] = "-prof";
+			a[1] = "gc";
+			System.arraycopy(args, 0, a, 2, args.length);
+			args = a;
+		}
+		org.openjdk.jmh.Main.main(args);
+	}
+}
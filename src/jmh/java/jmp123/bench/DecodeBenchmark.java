@@ -0,0 +1,80 @@
+/*
+ * DecodeBenchmark.java -- 完整解码流程的基准测试
+ */
+package jmp123.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jmp123.PlayBack;
+
+/**
+ * 通过 {@link PlayBack#open(String, String)} 和 {@link PlayBack#start(boolean)} 解码整个文件，音频输出对象为null。
+ * <p>
+ * 每次操作解码一个文件，包括文件读取、帧同步、解码和多相合成滤波。辅助计数器 <code>frames</code> 给出每秒解码的帧数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+	@Param
+	public Fixtures.Spec spec;
+
+	/**
+	 * 是否用内存映射读取文件，见 {@link jmp123.instream.MappedRandReadFile}。
+	 */
+	@Param({ "true", "false" })
+	public boolean mmap;
+
+	private String path;
+
+	/**
+	 * 已解码的帧数。
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Frames {
+		public long frames;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			frames = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		path = Fixtures.create(spec, new File(Fixtures.DEFAULT_DIR)).getPath();
+		System.setProperty("jmp123.mmap", String.valueOf(mmap));
+	}
+
+	@Benchmark
+	public int decodeFile(Frames counter) throws IOException {
+		PlayBack playback = new PlayBack(null);
+		if (playback.open(path, null) == false)
+			throw new IOException("Open failed: " + path);
+		playback.start(false);
+		int frames = playback.getHeader().getFrames();
+		playback.close();
+		counter.frames += frames;
+		return frames;
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * ExecutorBenchmark.java -- 多相合成滤波执行方式的基准测试
+ */
+package jmp123.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jmp123.PlayBack;
+import jmp123.decoder.SynthesisConcurrent;
+
+/**
+ * 比较 Layer Ⅲ 多相合成滤波的三种执行方式：共享线程池、虚拟线程（JDK 21以前退化为共享线程池）和解码线程内串行执行。
+ * <p>
+ * 多路并发解码的情形可以用JMH的 <code>-t</code> 参数指定线程数，例如 <code>-t 16</code>。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutorBenchmark {
+	public enum Mode {
+		POOL, VIRTUAL, INLINE;
+
+		Executor executor() {
+			switch (this) {
+			case VIRTUAL:
+				return SynthesisConcurrent.virtualThreads();
+			case INLINE:
+				return SynthesisConcurrent.INLINE;
+			default:
+				return SynthesisConcurrent.sharedPool();
+			}
+		}
+	}
+
+	@Param
+	public Mode mode;
+
+	@Param({ "L3_MPEG1_JSTEREO_CBR", "L3_MPEG1_MONO_CBR" })
+	public Fixtures.Spec spec;
+
+	private String path;
+	private Executor executor;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		path = Fixtures.create(spec, new File(Fixtures.DEFAULT_DIR)).getPath();
+		executor = mode.executor();
+	}
+
+	@Benchmark
+	public int decodeFile(DecodeBenchmark.Frames counter) throws IOException {
+		PlayBack playback = new PlayBack(null);
+		playback.setSynthesisExecutor(executor);
+		if (playback.open(path, null) == false)
+			throw new IOException("Open failed: " + path);
+		playback.start(false);
+		int frames = playback.getHeader().getFrames();
+		playback.close();
+		counter.frames += frames;
+		return frames;
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * FrameBenchmark.java -- 帧解码的基准测试
+ */
+package jmp123.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jmp123.decoder.Header;
+import jmp123.decoder.Layer1;
+import jmp123.decoder.Layer123;
+import jmp123.decoder.Layer2;
+import jmp123.decoder.Layer3;
+
+/**
+ * 对已读入内存的文件逐帧调用 {@link Layer123#decodeFrame(byte[], int)}，不含文件读取和缓冲区刷新。
+ * <p>
+ * 和 {@link SynthesisBenchmark} 对比可以分离出多相合成滤波以外的解码耗时。Layer Ⅲ 的多相合成滤波在另外的线程中和帧解码并发执行，
+ * 所以本测试的结果主要受帧解码（哈夫曼解码、逆量化、IMDCT等）的速度限制。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrameBenchmark {
+	@Param
+	public Fixtures.Spec spec;
+
+	private byte[] data;
+
+	/**
+	 * 已解码的帧数。
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Frames {
+		public long frames;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			frames = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		File file = Fixtures.create(spec, new File(Fixtures.DEFAULT_DIR));
+		data = Files.readAllBytes(file.toPath());
+	}
+
+	@Benchmark
+	public int decodeFrames(Frames counter) {
+		Header header = new Header();
+		header.initialize(data.length, 0);
+		int off = 0, end = data.length;
+		if (header.syncFrame(data, off, end) == false)
+			throw new IllegalStateException("No frame found: " + spec);
+
+		Layer123 layer;
+		switch (header.getLayer()) {
+		case 1:
+			layer = new Layer1(header, null);
+			break;
+		case 2:
+			layer = new Layer2(header, null);
+			break;
+		default:
+			layer = new Layer3(header, null);
+		}
+
+		try {
+			do {
+				off = layer.decodeFrame(data, header.offset());
+			} while (header.syncFrame(data, off, end));
+		} finally {
+			layer.close();
+		}
+		counter.frames += header.getFrames();
+		return off;
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * OpenBenchmark.java -- 打开文件到输出第一段PCM数据的延迟
+ */
+package jmp123.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.FloatControl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jmp123.PlayBack;
+import jmp123.decoder.Header;
+import jmp123.decoder.IAudio;
+
+/**
+ * 播放列表中切换到下一个文件的延迟：从 {@link PlayBack#open(String, String)} 到音频输出对象收到第一段PCM数据，收到后停止播放。
+ * <p>
+ * <code>reuse=true</code> 时所有文件用同一个PlayBack播放，格式相同的文件复用上一个文件的帧解码器；<code>reuse=false</code>
+ * 时每个文件新建PlayBack和帧解码器。码表等查找表在加载类时初始化，两种方式都不包括这部分时间。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpenBenchmark {
+	@Param({ "true", "false" })
+	public boolean reuse;
+
+	@Param({ "L3_MPEG1_JSTEREO_CBR", "L2_MPEG1_STEREO" })
+	public Fixtures.Spec spec;
+
+	private String path;
+	private FirstWrite audio;
+	private PlayBack playback;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		path = Fixtures.create(spec, new File(Fixtures.DEFAULT_DIR)).getPath();
+		audio = new FirstWrite();
+		playback = new PlayBack(audio);
+	}
+
+	@Benchmark
+	public int openToFirstPcm() throws IOException {
+		if (!reuse)
+			playback = new PlayBack(audio);
+		audio.playback = playback;
+		audio.bytes = 0;
+		if (playback.open(path, null) == false)
+			throw new IOException("Open failed: " + path);
+		playback.start(false);
+		playback.close();
+		return audio.bytes;
+	}
+
+	/*
+	 * 收到第一段PCM数据后停止播放。
+	 */
+	private static final class FirstWrite implements IAudio {
+		PlayBack playback;
+		int bytes;
+
+		public int write(byte[] b, int len) {
+			if (bytes == 0)
+				playback.stop();
+			bytes += len;
+			return len;
+		}
+
+		public boolean open(Header h, String artist) {
+			return true;
+		}
+
+		public void start(boolean b) {
+		}
+
+		public void drain() {
+		}
+
+		public void close() {
+		}
+
+		public void refreshMessage(String msg) {
+		}
+
+		public void setLineGain(float gain) {
+		}
+
+		public FloatControl getFloatControl() {
+			return null;
+		}
+	}
+}
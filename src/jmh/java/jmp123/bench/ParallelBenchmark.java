@@ -0,0 +1,66 @@
+/*
+ * ParallelBenchmark.java -- 分段并行解码的基准测试
+ */
+package jmp123.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jmp123.ParallelDecoder;
+
+/**
+ * 用1到N个工作线程分段并行解码同一个较长的文件（基准测试文件重复 {@link #REPEAT} 次），得到加速比曲线。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelBenchmark {
+	static final int REPEAT = 10;
+
+	@Param({ "1", "2", "4", "8" })
+	public int threads;
+
+	@Param({ "250" })
+	public int segment;
+
+	@Param({ "L3_MPEG1_JSTEREO_CBR" })
+	public Fixtures.Spec spec;
+
+	private byte[] data;
+	private ParallelDecoder decoder;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		File file = Fixtures.create(spec, new File(Fixtures.DEFAULT_DIR));
+		byte[] b = Files.readAllBytes(file.toPath());
+		data = new byte[b.length * REPEAT];
+		for (int i = 0; i < REPEAT; i++)
+			System.arraycopy(b, 0, data, i * b.length, b.length);
+		decoder = new ParallelDecoder(threads, segment);
+	}
+
+	@Benchmark
+	public int decode(DecodeBenchmark.Frames counter) throws IOException, InterruptedException {
+		decoder.decode(data, null);
+		counter.frames += decoder.getFrames();
+		return decoder.getFrames();
+	}
+}
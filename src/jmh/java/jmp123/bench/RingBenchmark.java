@@ -0,0 +1,85 @@
+/*
+ * RingBenchmark.java -- 解码和多相合成滤波之间环形队列深度的基准测试
+ */
+package jmp123.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jmp123.PlayBack;
+import jmp123.decoder.Layer3;
+
+/**
+ * 用不同的队列深度解码 Layer Ⅲ 文件，同时报告队列统计数据：
+ * <ul>
+ * <li><code>stalls</code>：解码线程因队列已满等待的次数（每秒）。</li>
+ * <li><code>queued</code>：提交每帧时队列占用数的累计值（每秒），除以 <code>frames</code> 得到队列的平均占用数。</li>
+ * <li><code>idle</code>：多相合成滤波任务因队列为空结束的次数（每秒）。</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RingBenchmark {
+	@Param({ "2", "4", "8" })
+	public int depth;
+
+	@Param({ "L3_MPEG1_JSTEREO_CBR" })
+	public Fixtures.Spec spec;
+
+	private String path;
+
+	/**
+	 * 队列统计数据。
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counters {
+		public long frames, stalls, idle, queued;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			frames = stalls = idle = queued = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		path = Fixtures.create(spec, new File(Fixtures.DEFAULT_DIR)).getPath();
+	}
+
+	@Benchmark
+	public long decodeFile(Counters counters) throws IOException {
+		PlayBack playback = new PlayBack(null);
+		playback.setSynthesisDepth(depth);
+		if (playback.open(path, null) == false)
+			throw new IOException("Open failed: " + path);
+		playback.start(false);
+		playback.close();
+
+		Layer3 layer = (Layer3) playback.getLayer();
+		counters.frames += layer.getSubmittedFrames();
+		counters.stalls += layer.getStalls();
+		counters.idle += layer.getIdleCount(0);
+		counters.queued += Math.round(layer.getAverageOccupancy() * layer.getSubmittedFrames());
+		return layer.getSubmittedFrames();
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * SynthesisBenchmark.java -- 多相合成滤波的基准测试
+ */
+package jmp123.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jmp123.decoder.AudioBuffer;
+import jmp123.decoder.Synthesis;
+
+/**
+ * 单独测试 {@link Synthesis#synthesisSubBand(float[], int)}。每次操作对每个声道合成一帧（1152个样本，即36次子带合成），
+ * 结果以“帧/秒”为单位，可以直接和 {@link FrameBenchmark} 的结果比较。参数 <code>backend</code> 比较标量代码和Vector API实现的加窗运算，
+ * 参数 <code>input</code> 比较有信号和静音的输入。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SynthesisBenchmark {
+	private static final int SUBBANDS = 36;
+
+	@Param({ "1", "2" })
+	public int channels;
+
+	/**
+	 * 加窗运算的实现：scalar 或 vector（见 {@link Synthesis#setVectorEnabled(boolean)}）。
+	 */
+	@Param({ "scalar", "vector" })
+	public String backend;
+
+	/**
+	 * 子带样本：noise 为随机值；silence 全为0，不作矩阵运算和加窗运算。
+	 */
+	@Param({ "noise", "silence" })
+	public String input;
+
+	private AudioBuffer audioBuf;
+	private Synthesis filter;
+	private float[][] samples;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		audioBuf = new AudioBuffer(null, 32 * SUBBANDS * 2 * channels);
+		filter = new Synthesis(audioBuf, channels);
+		boolean vector = backend.equals("vector");
+		if (filter.setVectorEnabled(vector) != vector)
+			throw new IllegalStateException("Vector API not available");
+		samples = new float[SUBBANDS][32];
+		Random rnd = new Random(SUBBANDS);
+		for (float[] s : samples)
+			for (int i = 0; i < 32; i++)
+				s[i] = input.equals("silence") ? 0 : (float) rnd.nextGaussian() * 0.1f;
+	}
+
+	@Benchmark
+	public void synthesisFrame() {
+		for (int ch = 0; ch < channels; ch++)
+			for (int i = 0; i < SUBBANDS; i++)
+				filter.synthesisSubBand(samples[i], ch);
+		audioBuf.output();
+	}
+}
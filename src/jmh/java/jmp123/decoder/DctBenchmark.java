@@ -0,0 +1,68 @@
+/*
+ * DctBenchmark.java -- 多相合成滤波矩阵运算的基准测试
+ */
+package jmp123.decoder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 比较 {@link Synthesis} 中完全展开的矩阵运算和 {@link DctTable} 查表的矩阵运算，结果为每次DCT-32的耗时。
+ * <p>
+ * 放在 jmp123.decoder 包内以便直接调用包内可见的矩阵运算方法。两种实现的误差由单元测试 DctTest 检查。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DctBenchmark {
+	private static final int BATCH = 64;
+
+	private Synthesis synthesis;
+	private DctTable table;
+	private float[][] samples;
+	private float[] fifo;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		synthesis = new Synthesis(null, 1);
+		table = new DctTable();
+		fifo = new float[1024];
+		samples = new float[BATCH][32];
+		Random rnd = new Random(BATCH);
+		for (float[] s : samples)
+			for (int i = 0; i < 32; i++)
+				s[i] = (float) rnd.nextGaussian();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public float[] unrolled() {
+		for (int n = 0; n < BATCH; n++)
+			synthesis.dct32to64(samples[n], fifo, (n & 15) << 6);
+		return fifo;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public float[] table() {
+		for (int n = 0; n < BATCH; n++)
+			table.dct32to64(samples[n], fifo, (n & 15) << 6);
+		return fifo;
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * HuffmanBenchmark.java -- 哈夫曼解码的基准测试
+ */
+package jmp123.decoder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 比较 {@link BitStreamMainData#HUFF_TREE} 和 {@link BitStreamMainData#HUFF_LOOKUP} 两种哈夫曼解码方式，结果为每个粒度组内一个声道的解码耗时。
+ * <p>
+ * 码表是完全的前缀码，任意比特序列都能解码，所以输入用固定种子的随机数产生，码表号、big_values、区域划分和 part2_3_length 也随机选取。
+ * 两种方式解码结果相同由单元测试 HuffmanTest 检查。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HuffmanBenchmark {
+	private static final int BATCH = 256;
+	private static final int LEN = 512; // 每个粒度填入位流缓冲区的字节数
+
+	// 哈夫曼码表号4和14未使用
+	private static final int[] TABLES = {0,1,2,3,5,6,7,8,9,10,11,12,13,15,16,17,18,19,20,21,22,23,24,
+		25,26,27,28,29,30,31};
+
+	private BitStreamMainData tree, lookup;
+	private byte[] data;
+	private int[][] granules; // {part3len, big_values, region1Start, region2Start, count1table_select}
+	private int[][] tables;
+	private int[] hv;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		tree = new BitStreamMainData(4096, 1024, BitStreamMainData.HUFF_TREE);
+		lookup = new BitStreamMainData(4096, 1024, BitStreamMainData.HUFF_LOOKUP);
+		Random rnd = new Random(BATCH);
+		data = new byte[BATCH * LEN];
+		rnd.nextBytes(data);
+		granules = new int[BATCH][];
+		tables = new int[BATCH][3];
+		for (int n = 0; n < BATCH; n++) {
+			int bv = rnd.nextInt(289), r1 = rnd.nextInt(23) * 8, r2 = r1 + rnd.nextInt(23) * 8;
+			granules[n] = new int[] {rnd.nextInt(4096), bv, r1, r2, rnd.nextInt(2)};
+			for (int i = 0; i < 3; i++)
+				tables[n][i] = TABLES[rnd.nextInt(TABLES.length)];
+		}
+		hv = new int[32 * 18 + 4];
+	}
+
+	/*
+	 * 和 Layer3 相同，先填入主数据，再定位到它的开始位置解码。
+	 */
+	private int decode(BitStreamMainData bs, int n, int[] hv) {
+		int[] g = granules[n];
+		bs.append(data, n * LEN, LEN);
+		bs.seekBack(LEN);
+		return bs.decodeHuff(g[0], g[1], g[2], g[3], tables[n], g[4], hv);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int[] tree() {
+		tree.reset();
+		for (int n = 0; n < BATCH; n++)
+			decode(tree, n, hv);
+		return hv;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int[] lookup() {
+		lookup.reset();
+		for (int n = 0; n < BATCH; n++)
+			decode(lookup, n, hv);
+		return hv;
+	}
+}
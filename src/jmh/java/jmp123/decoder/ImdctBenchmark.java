@@ -0,0 +1,110 @@
+/*
+ * ImdctBenchmark.java -- IMDCT的基准测试
+ */
+package jmp123.decoder;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 比较 {@link Layer3#IMDCT_REFERENCE} 和 {@link Layer3#IMDCT_FAST} 两种IMDCT实现，结果为一个粒度组内一个声道32个子带的耗时，
+ * 包括把输入复制到工作数组的时间（两种实现都原地输出）。
+ * <p>
+ * 初始化时两种实现对每种块类型连续处理多个粒度组（重叠缓冲区保留上一个粒度组的值），输出和重叠缓冲区不逐位相同时测试失败。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImdctBenchmark {
+	private static final int GRANULES = 16;
+
+	/**
+	 * 块类型：0（长块）或2（短块）。
+	 */
+	@Param({ "0", "2" })
+	public int blockType;
+
+	private float[][] input;
+	private float[] xr, pre;
+	private int n;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		Random rnd = new Random(GRANULES);
+		input = new float[GRANULES][576];
+		for (float[] x : input)
+			for (int i = 0; i < 576; i++)
+				x[i] = (float) (rnd.nextGaussian() * 1000);
+		xr = new float[576];
+		pre = new float[576];
+		for (int bt = 0; bt < 4; bt++)
+			check(bt);
+	}
+
+	private void check(int bt) {
+		float[] x1 = new float[576], x2 = new float[576], p1 = new float[576], p2 = new float[576];
+		for (float[] x : input) {
+			System.arraycopy(x, 0, x1, 0, 576);
+			System.arraycopy(x, 0, x2, 0, 576);
+			for (int i = 0; i < 576; i += 18) {
+				if (bt == 2) {
+					Layer3.imdct12(x1, p1, i);
+					Layer3.imdct12Fast(x2, p2, i);
+				} else {
+					Layer3.imdct36(x1, p1, i, bt);
+					Layer3.imdct36Fast(x2, p2, i, Layer3.imdctWin[bt]);
+				}
+			}
+			if (!Arrays.equals(x1, x2) || !Arrays.equals(p1, p2))
+				throw new IllegalStateException("IMDCT mismatch, block_type=" + bt);
+		}
+	}
+
+	private float[] next() {
+		System.arraycopy(input[n], 0, xr, 0, 576);
+		n = (n + 1) & (GRANULES - 1);
+		return xr;
+	}
+
+	@Benchmark
+	public float[] reference() {
+		float[] x = next();
+		for (int i = 0; i < 576; i += 18) {
+			if (blockType == 2)
+				Layer3.imdct12(x, pre, i);
+			else
+				Layer3.imdct36(x, pre, i, blockType);
+		}
+		return x;
+	}
+
+	@Benchmark
+	public float[] fast() {
+		float[] x = next();
+		float[] win = Layer3.imdctWin[blockType];
+		for (int i = 0; i < 576; i += 18) {
+			if (blockType == 2)
+				Layer3.imdct12Fast(x, pre, i);
+			else
+				Layer3.imdct36Fast(x, pre, i, win);
+		}
+		return x;
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * RequantizerBenchmark.java -- Layer III 逆量化的基准测试
+ */
+package jmp123.decoder;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 比较逐条频率线判断符号、查两次表的逆量化（原来的实现，保留在这里作对照）和 {@link Layer3#requantize} 按频带增益逆量化，
+ * 结果为一个粒度组内一个声道的耗时，包括计算每个频带的增益。
+ * <p>
+ * 哈夫曼值由 {@link BitStreamMainData#decodeHuff} 从固定种子的随机位流解码得到（方法同 {@link HuffmanBenchmark}），增益因子也随机选取。
+ * 初始化时两种实现逐个粒度组对照，输出的576个值不逐位相同时测试失败。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequantizerBenchmark {
+	private static final int BATCH = 256;
+	private static final int LEN = 512; // 每个粒度填入位流缓冲区的字节数
+
+	// 哈夫曼码表号4和14未使用
+	private static final int[] TABLES = {0,1,2,3,5,6,7,8,9,10,11,12,13,15,16,17,18,19,20,21,22,23,24,
+		25,26,27,28,29,30,31};
+	private static final int[] PRETAB = {0,0,0,0,0,0,0,0,0,0,0,1,1,1,1,2,2,3,3,3,2,0};
+	private static final float[] POW2 = new float[374];
+	private static final float[] POW_IS = new float[8207];
+	static {
+		for (int i = 0; i < POW2.length; i++)
+			POW2[i] = (float) Math.pow(2.0, -0.25 * (i - 45));
+		for (int i = 0; i < POW_IS.length; i++)
+			POW_IS[i] = (float) Math.pow(i, 4.0 / 3.0);
+	}
+
+	/**
+	 * 块类型：0（长块）或2（短块）。
+	 */
+	@Param({ "0", "2" })
+	public int blockType;
+
+	private int[][] hv; // [BATCH][576+4]
+	private int[] maxi, pow2i, shift; // [BATCH]
+	private int[][] scf; // [BATCH][]: 长块22个，短块3*13个
+	private int[][] subgain; // [BATCH][3]
+	private boolean[] preflag;
+	private int[] widthLong, widthShort, bandWidthShort;
+	private float[] xr, gain;
+	private int[] nonzero;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		widthLong = Layer3.WIDTH_LONG[0]; // 44.1kHz
+		bandWidthShort = Layer3.BAND_WIDTH_SHORT[0];
+		widthShort = new int[13];
+		for (int i = 0; i < 13; i++)
+			widthShort[i] = bandWidthShort[3 * i];
+
+		BitStreamMainData bs = new BitStreamMainData(4096, 1024, BitStreamMainData.HUFF_LOOKUP);
+		Random rnd = new Random(BATCH + blockType);
+		byte[] data = new byte[LEN];
+		int[] tables = new int[3];
+		hv = new int[BATCH][32 * 18 + 4];
+		maxi = new int[BATCH];
+		pow2i = new int[BATCH];
+		shift = new int[BATCH];
+		scf = new int[BATCH][];
+		subgain = new int[BATCH][3];
+		preflag = new boolean[BATCH];
+		for (int n = 0; n < BATCH; n++) {
+			int r1 = 36, r2 = 576; // 同 Layer3.huffBits 中的短块
+			if (blockType != 2) {
+				r1 = widthLong[0] * (1 + rnd.nextInt(8));
+				r2 = r1 + widthLong[0] * rnd.nextInt(16);
+			}
+			for (int i = 0; i < 3; i++)
+				tables[i] = TABLES[rnd.nextInt(TABLES.length)];
+			rnd.nextBytes(data);
+			bs.append(data, 0, LEN);
+			bs.seekBack(LEN);
+			maxi[n] = bs.decodeHuff(1000 + rnd.nextInt(3000), rnd.nextInt(289), r1, r2, tables, rnd.nextInt(2), hv[n]);
+			pow2i[n] = 255 - (140 + rnd.nextInt(45));
+			shift[n] = 1 + rnd.nextInt(2);
+			scf[n] = new int[blockType == 2 ? 3 * 13 : 22];
+			for (int i = 0; i < scf[n].length; i++)
+				scf[n][i] = rnd.nextInt(16);
+			for (int i = 0; i < 3; i++)
+				subgain[n][i] = rnd.nextInt(8);
+			preflag[n] = rnd.nextBoolean();
+		}
+		xr = new float[576];
+		gain = new float[3 * 13];
+		nonzero = new int[3 * 13];
+		check();
+	}
+
+	private void check() {
+		float[] x1 = new float[576], x2 = new float[576];
+		for (int n = 0; n < BATCH; n++) {
+			Arrays.fill(x1, 0);
+			Arrays.fill(x2, 0);
+			int b1 = reference(n, x1), b2 = table(n, x2);
+			if (b1 != b2 || !Arrays.equals(x1, x2))
+				throw new IllegalStateException("Requantizer mismatch at granule " + n);
+		}
+	}
+
+	/*
+	 * 原来的实现：每个频带查表求增益，每条频率线判断符号。返回非零值的频带数（短块取3个窗口中最大的）。
+	 */
+	private int reference(int n, float[] xrch) {
+		final int[] hv = this.hv[n], s = scf[n], subgain = this.subgain[n];
+		final int maxi = this.maxi[n], pow2i = this.pow2i[n], shift = this.shift[n];
+		float requVal;
+		int sfb = 0, hvIdx = 0, bi, val, xri = 0, win, width, xriStart = 0, rzero = -1;
+
+		if (blockType == 2) {
+			for (; hvIdx < maxi; sfb++) {
+				width = widthShort[sfb];
+				for (win = 0; win < 3; win++) {
+					requVal = POW2[pow2i + (subgain[win] << 3) + (s[3 * sfb + win] << shift)];
+					xri = xriStart + win;
+					for (bi = 0; bi < width; bi++) {
+						val = hv[hvIdx];
+						if (val < 0) {
+							xrch[xri] = -requVal * POW_IS[-val];
+							rzero = sfb;
+						} else if (val > 0) {
+							xrch[xri] = requVal * POW_IS[val];
+							rzero = sfb;
+						} else
+							xrch[xri] = 0;
+						hvIdx++;
+						xri += 3;
+					}
+				}
+				xriStart = xri - 2;
+			}
+		} else {
+			for (; hvIdx < maxi; sfb++) {
+				requVal = POW2[pow2i + ((s[sfb] + (preflag[n] ? PRETAB[sfb] : 0)) << shift)];
+				bi = hvIdx + widthLong[sfb];
+				for (; hvIdx < bi; hvIdx++) {
+					val = hv[hvIdx];
+					if (val < 0) {
+						xrch[hvIdx] = -requVal * POW_IS[-val];
+						rzero = sfb;
+					} else if (val > 0) {
+						xrch[hvIdx] = requVal * POW_IS[val];
+						rzero = sfb;
+					} else
+						xrch[hvIdx] = 0;
+				}
+			}
+		}
+		return rzero + 1;
+	}
+
+	/*
+	 * 先求每个频带的增益，再调用Layer3.requantize。
+	 */
+	private int table(int n, float[] xrch) {
+		final int[] s = scf[n], subgain = this.subgain[n];
+		final int pow2i = this.pow2i[n], shift = this.shift[n];
+		int b, sfb, hvIdx, rzero = 0;
+
+		if (blockType == 2) {
+			for (sfb = b = 0; sfb < 13; sfb++)
+				for (int win = 0; win < 3; win++, b++)
+					gain[b] = POW2[pow2i + (subgain[win] << 3) + (s[b] << shift)];
+			hvIdx = Layer3.requantize(hv[n], maxi[n], gain, bandWidthShort, 0, xrch, nonzero);
+			for (b = sfb = 0; sfb < hvIdx; sfb += bandWidthShort[b++])
+				if (nonzero[b] != 0)
+					rzero = b / 3 + 1;
+		} else {
+			for (b = 0; b < 22; b++)
+				gain[b] = POW2[pow2i + ((s[b] + (preflag[n] ? PRETAB[b] : 0)) << shift)];
+			hvIdx = Layer3.requantize(hv[n], maxi[n], gain, widthLong, 22, xrch, nonzero);
+			for (b = sfb = 0; sfb < hvIdx; sfb += widthLong[b++])
+				if (nonzero[b] != 0)
+					rzero = b + 1;
+		}
+		return rzero;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public float[] reference() {
+		for (int n = 0; n < BATCH; n++)
+			reference(n, xr);
+		return xr;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public float[] table() {
+		for (int n = 0; n < BATCH; n++)
+			table(n, xr);
+		return xr;
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * StereoBenchmark.java -- Layer III M/S立体声处理的基准测试
+ */
+package jmp123.decoder;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 比较长块联合立体声一个粒度组两个声道的逆量化、M/S处理和抗锯齿：原来的处理（M/S处理到两个声道非零值区的末尾，再逐个声道抗锯齿）
+ * 和 Layer3 现在的处理（M/S处理只到右声道非零值区的末尾，其后复制左声道；两个声道在同一个循环内抗锯齿）。
+ * 两者都包括逆量化和把非零值区之后置0的时间。
+ * <p>
+ * 哈夫曼值由 {@link BitStreamMainData#decodeHuff} 从固定种子的随机位流解码得到（方法同 {@link RequantizerBenchmark}）。
+ * 初始化时两种方法逐个粒度组对照，输出不逐位相同时测试失败。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StereoBenchmark {
+	private static final int BATCH = 256;
+	private static final int LEN = 512; // 每个粒度填入位流缓冲区的字节数
+
+	// 哈夫曼码表号4和14未使用
+	private static final int[] TABLES = {0,1,2,3,5,6,7,8,9,10,11,12,13,15,16,17,18,19,20,21,22,23,24,
+		25,26,27,28,29,30,31};
+
+	private int[][][] hv; // [BATCH][2][576+4]
+	private int[][] maxi; // [BATCH][2]
+	private float[][][] gain; // [BATCH][2][22]
+	private int[] widthLong, nonzero;
+	private float[] xr0, xr1;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		widthLong = Layer3.WIDTH_LONG[0]; // 44.1kHz
+
+		BitStreamMainData bs = new BitStreamMainData(4096, 1024, BitStreamMainData.HUFF_LOOKUP);
+		Random rnd = new Random(BATCH);
+		byte[] data = new byte[LEN];
+		int[] tables = new int[3];
+		hv = new int[BATCH][2][32 * 18 + 4];
+		maxi = new int[BATCH][2];
+		gain = new float[BATCH][2][22];
+		for (int n = 0; n < BATCH; n++) {
+			for (int ch = 0; ch < 2; ch++) {
+				int r1 = widthLong[0] * (1 + rnd.nextInt(8));
+				int r2 = r1 + widthLong[0] * rnd.nextInt(16);
+				for (int i = 0; i < 3; i++)
+					tables[i] = TABLES[rnd.nextInt(TABLES.length)];
+				rnd.nextBytes(data);
+				bs.append(data, 0, LEN);
+				bs.seekBack(LEN);
+				// 边声道的值通常较少
+				int bigValues = ch == 0 ? rnd.nextInt(289) : rnd.nextInt(145);
+				maxi[n][ch] = bs.decodeHuff(1000 + rnd.nextInt(3000), bigValues, r1, r2, tables,
+						rnd.nextInt(2), hv[n][ch]);
+				for (int b = 0; b < 22; b++)
+					gain[n][ch][b] = (float) Math.pow(2.0, -0.25 * (120 + rnd.nextInt(60)));
+			}
+		}
+		xr0 = new float[576];
+		xr1 = new float[576];
+		nonzero = new int[22];
+		check();
+	}
+
+	private void check() {
+		float[] a0 = new float[576], a1 = new float[576], b0 = new float[576], b1 = new float[576];
+		for (int n = 0; n < BATCH; n++) {
+			separate(n, a0, a1);
+			fused(n, b0, b1);
+			if (!Arrays.equals(a0, b0) || !Arrays.equals(a1, b1))
+				throw new IllegalStateException("Stereo mismatch at granule " + n);
+		}
+	}
+
+	/*
+	 * 原来的处理顺序：逆量化两个声道，M/S处理，再逐个声道抗锯齿。
+	 */
+	private void separate(int n, float[] x0, float[] x1) {
+		final int rzero = Math.max(maxi[n][0], maxi[n][1]);
+		int i = Layer3.requantize(hv[n][0], maxi[n][0], gain[n][0], widthLong, 22, x0, nonzero);
+		Arrays.fill(x0, i, 576, 0);
+		i = Layer3.requantize(hv[n][1], maxi[n][1], gain[n][1], widthLong, 22, x1, nonzero);
+		Arrays.fill(x1, i, 576, 0);
+		float tmp0, tmp1;
+		for (i = 0; i < rzero; i++) {
+			tmp0 = x0[i];
+			tmp1 = x1[i];
+			x0[i] = tmp0 + tmp1;
+			x1[i] = tmp0 - tmp1;
+		}
+		Layer3.antialias(x0, rzero - 18);
+		Layer3.antialias(x1, rzero - 18);
+	}
+
+	/*
+	 * 同Layer3.ms_stereo和Layer3.decodeFrame中两个声道都是长块时的处理。
+	 */
+	private void fused(int n, float[] x0, float[] x1) {
+		final int rzero = Math.max(maxi[n][0], maxi[n][1]), end = maxi[n][1];
+		int i = Layer3.requantize(hv[n][0], maxi[n][0], gain[n][0], widthLong, 22, x0, nonzero);
+		Arrays.fill(x0, i, 576, 0);
+		i = Layer3.requantize(hv[n][1], maxi[n][1], gain[n][1], widthLong, 22, x1, nonzero);
+		Arrays.fill(x1, i, 576, 0);
+		float tmp0, tmp1;
+		for (i = 0; i < end; i++) {
+			tmp0 = x0[i];
+			tmp1 = x1[i];
+			x0[i] = tmp0 + tmp1;
+			x1[i] = tmp0 - tmp1;
+		}
+		if (end < rzero)
+			System.arraycopy(x0, end, x1, end, rzero - end);
+		Layer3.antialias(x0, x1, rzero - 18);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public float[] separate() {
+		for (int n = 0; n < BATCH; n++)
+			separate(n, xr0, xr1);
+		return xr1;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public float[] fused() {
+		for (int n = 0; n < BATCH; n++)
+			fused(n, xr0, xr1);
+		return xr1;
+	}
+}
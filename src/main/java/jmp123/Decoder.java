@@ -0,0 +1,353 @@
+/*
+ * Decoder.java -- 拉取方式的解码器
+ */
+package jmp123;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+
+import javax.sound.sampled.FloatControl;
+
+import jmp123.decoder.Header;
+import jmp123.decoder.ID3Tag;
+import jmp123.decoder.IDirectAudio;
+
+/**
+ * 以拉取方式解码一个文件。调用者不实现 {@link jmp123.decoder.IAudio}，而是用 {@link #read(short[], int, int)}、
+ * {@link #nextFrame(short[])} 等方法按自己的消费速度取PCM样本，一次可以取任意多帧。解码器只在已解码的样本不够时才解码下一帧。
+ * <p>
+ * 内部用 {@link PlayBack} 打开文件和解码帧，PCM数据以 {@link IDirectAudio} 的数组形式写入一个先进先出的样本缓冲区，
+ * 缓冲区在解码过程中复用，只在容量不够时扩大。Layer Ⅲ 的多相合成滤波默认仍然异步执行（见
+ * {@link #setSynthesisExecutor(Executor)}），取出的样本和 PlayBack 播放输出的相同。
+ * <p>
+ * 用法：
+ * <pre>
+ * Decoder decoder = new Decoder(IDirectAudio.FORMAT_PCM16);
+ * if (decoder.open(path)) {
+ *     short[] pcm = new short[decoder.getFrameSamples() * 4];
+ *     int n;
+ *     while ((n = decoder.read(pcm, 0, pcm.length)) != -1)
+ *         consume(pcm, n);
+ *     decoder.close();
+ * }
+ * </pre>
+ * 一个Decoder对象不是线程安全的，应在同一个线程中调用它的方法。
+ */
+public class Decoder {
+	private final int format;
+	private final Fifo fifo;
+	private final PlayBack playback;
+	private boolean opened, started, finished;
+
+	/**
+	 * 创建输出16位整数样本的解码器。
+	 */
+	public Decoder() {
+		this(IDirectAudio.FORMAT_PCM16);
+	}
+
+	/**
+	 * 创建指定样本格式的解码器。
+	 *
+	 * @param format
+	 *            样本格式：{@link IDirectAudio#FORMAT_PCM16} 或 {@link IDirectAudio#FORMAT_FLOAT}。
+	 */
+	public Decoder(int format) {
+		if (format != IDirectAudio.FORMAT_PCM16 && format != IDirectAudio.FORMAT_FLOAT)
+			throw new IllegalArgumentException("format=" + format);
+		this.format = format;
+		fifo = new Fifo();
+		playback = new PlayBack(fifo);
+	}
+
+	/**
+	 * 指定 Layer Ⅲ 多相合成滤波的执行方式，在 {@link #open(String)} 之前调用。
+	 *
+	 * @param executor
+	 *            执行多相合成滤波的 {@link Executor}。
+	 * @see PlayBack#setSynthesisExecutor(Executor)
+	 */
+	public void setSynthesisExecutor(Executor executor) {
+		playback.setSynthesisExecutor(executor);
+	}
+
+	/**
+	 * 指定是否按LAME标签去掉编码器在文件开头和末尾补的样本，在 {@link #open(String)} 之前调用。
+	 *
+	 * @param gapless
+	 *            指定为true去掉补的样本。默认为false。
+	 * @see PlayBack#setGapless(boolean)
+	 */
+	public void setGapless(boolean gapless) {
+		playback.setGapless(gapless);
+	}
+
+	/**
+	 * 打开文件并解析标签信息和第一帧的帧头。可以用同一个Decoder对象依次解码多个文件，打开下一个文件前应调用 {@link #close()}。
+	 *
+	 * @param name
+	 *            文件路径。
+	 * @return 打开失败返回 <b>false</b>；否则返回 <b>true</b> 。
+	 * @throws IOException
+	 *             发生I/O错误。
+	 */
+	public boolean open(String name) throws IOException {
+		fifo.clear();
+		started = finished = false;
+		opened = playback.open(name, null);
+		return opened;
+	}
+
+	/**
+	 * 获取帧头信息。
+	 *
+	 * @return 帧头信息 {@link Header} 对象，解码过程中随当前帧更新。
+	 */
+	public Header getHeader() {
+		return playback.getHeader();
+	}
+
+	/**
+	 * 获取文件的标签信息。
+	 *
+	 * @return 文件的标签信息 {@link ID3Tag} 对象。
+	 */
+	public ID3Tag getID3Tag() {
+		return playback.getID3Tag();
+	}
+
+	/**
+	 * 获取一帧的样本数（各声道样本数之和），例如 MPEG-1 Layer Ⅲ 立体声为2304。
+	 *
+	 * @return 一帧的样本数。
+	 */
+	public int getFrameSamples() {
+		Header h = playback.getHeader();
+		int n = (h.getLayer() == 1) ? 384 : (h.getLayer() == 2 || h.getVersion() == Header.MPEG1) ? 1152 : 576;
+		return n * h.getChannels();
+	}
+
+	/**
+	 * 读取16位整数样本。已解码的样本不够时解码后续的帧，直到取够len个样本或到达文件末尾。
+	 * 多声道的样本交替排列，len 应为声道数的整数倍。
+	 *
+	 * @param b
+	 *            存放样本的数组。
+	 * @param off
+	 *            第一个样本在b中的偏移量。
+	 * @param len
+	 *            最多读取的样本数。
+	 * @return 读取的样本数；已到文件末尾返回-1。
+	 * @throws IOException
+	 *             发生I/O错误。
+	 * @throws IllegalStateException
+	 *             文件未打开或样本格式不是 {@link IDirectAudio#FORMAT_PCM16}。
+	 */
+	public int read(short[] b, int off, int len) throws IOException {
+		check(IDirectAudio.FORMAT_PCM16);
+		if (fill(len) == 0)
+			return len == 0 ? 0 : -1;
+		return fifo.read(b, off, len);
+	}
+
+	/**
+	 * 读取浮点样本，范围[-1.0, 1.0)，不限幅。
+	 *
+	 * @return 读取的样本数；已到文件末尾返回-1。
+	 * @throws IOException
+	 *             发生I/O错误。
+	 * @throws IllegalStateException
+	 *             文件未打开或样本格式不是 {@link IDirectAudio#FORMAT_FLOAT}。
+	 * @see #read(short[], int, int)
+	 */
+	public int read(float[] b, int off, int len) throws IOException {
+		check(IDirectAudio.FORMAT_FLOAT);
+		if (fill(len) == 0)
+			return len == 0 ? 0 : -1;
+		return fifo.read(b, off, len);
+	}
+
+	/**
+	 * 读取一帧的16位整数样本，即 {@link #getFrameSamples()} 个样本，只有最后一次读取可能不足一帧。
+	 *
+	 * @param b
+	 *            存放样本的数组，长度不小于 {@link #getFrameSamples()}。
+	 * @return 读取的样本数；已到文件末尾返回-1。
+	 * @throws IOException
+	 *             发生I/O错误。
+	 */
+	public int nextFrame(short[] b) throws IOException {
+		return read(b, 0, getFrameSamples());
+	}
+
+	/**
+	 * 读取一帧的浮点样本。
+	 *
+	 * @return 读取的样本数；已到文件末尾返回-1。
+	 * @throws IOException
+	 *             发生I/O错误。
+	 * @see #nextFrame(short[])
+	 */
+	public int nextFrame(float[] b) throws IOException {
+		return read(b, 0, getFrameSamples());
+	}
+
+	/**
+	 * 关闭文件，丢弃未读取的样本。
+	 */
+	public void close() {
+		if (started && !finished)
+			playback.end();
+		opened = started = false;
+		fifo.clear();
+		playback.close();
+	}
+
+	private void check(int f) {
+		if (!opened)
+			throw new IllegalStateException("Not opened");
+		if (f != format)
+			throw new IllegalStateException("format=" + format);
+	}
+
+	/*
+	 * 逐帧解码直到缓冲区中至少有len个样本或到达文件末尾。返回缓冲区中的样本数。
+	 */
+	private int fill(int len) throws IOException {
+		if (!started) {
+			if (!playback.begin())
+				throw new IOException("Unsupported layer: " + playback.getHeader().getLayer());
+			started = true;
+		}
+		while (fifo.available() < len && !finished) {
+			if (!playback.decodeNext()) {
+				// 取出环形队列和音频输出缓冲区中剩余的样本
+				playback.end();
+				finished = true;
+			}
+		}
+		return fifo.available();
+	}
+
+	/*
+	 * 先进先出的样本缓冲区。解码器写满音频输出缓冲区时调用write方法追加样本。
+	 */
+	private final class Fifo implements IDirectAudio {
+		private short[] shorts = new short[0];
+		private float[] floats = new float[0];
+		private int head, tail; // 未读取的样本在 [head, tail)
+
+		int available() {
+			return tail - head;
+		}
+
+		void clear() {
+			head = tail = 0;
+		}
+
+		/*
+		 * 为len个样本腾出空间：先把未读取的样本移到开头，仍不够时扩大数组。返回写入位置。
+		 */
+		private int reserve(int len, int capacity) {
+			if (tail + len <= capacity)
+				return tail;
+			int n = tail - head;
+			if (format == FORMAT_PCM16) {
+				short[] a = (n + len <= capacity) ? shorts : new short[Math.max(n + len, capacity << 1)];
+				System.arraycopy(shorts, head, a, 0, n);
+				shorts = a;
+			} else {
+				float[] a = (n + len <= capacity) ? floats : new float[Math.max(n + len, capacity << 1)];
+				System.arraycopy(floats, head, a, 0, n);
+				floats = a;
+			}
+			head = 0;
+			return tail = n;
+		}
+
+		int read(short[] b, int off, int len) {
+			len = Math.min(len, tail - head);
+			System.arraycopy(shorts, head, b, off, len);
+			head += len;
+			if (head == tail)
+				head = tail = 0;
+			return len;
+		}
+
+		int read(float[] b, int off, int len) {
+			len = Math.min(len, tail - head);
+			System.arraycopy(floats, head, b, off, len);
+			head += len;
+			if (head == tail)
+				head = tail = 0;
+			return len;
+		}
+
+		@Override
+		public int getSampleFormat() {
+			return format;
+		}
+
+		@Override
+		public ByteBuffer getBuffer(int size) {
+			return null; // 数组形式的输出
+		}
+
+		@Override
+		public int write(ByteBuffer buf, int size) {
+			return 0;
+		}
+
+		@Override
+		public int write(short[] b, int len) {
+			int o = reserve(len, shorts.length);
+			System.arraycopy(b, 0, shorts, o, len);
+			tail = o + len;
+			return len;
+		}
+
+		@Override
+		public int write(float[] b, int len) {
+			int o = reserve(len, floats.length);
+			System.arraycopy(b, 0, floats, o, len);
+			tail = o + len;
+			return len;
+		}
+
+		@Override
+		public boolean open(Header h, String artist) {
+			return true;
+		}
+
+		@Override
+		public int write(byte[] b, int size) {
+			return 0;
+		}
+
+		@Override
+		public void start(boolean b) {
+		}
+
+		@Override
+		public void drain() {
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public void refreshMessage(String msg) {
+		}
+
+		@Override
+		public void setLineGain(float gain) {
+		}
+
+		@Override
+		public FloatControl getFloatControl() {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ * ParallelDecoder.java -- 分段并行解码
+ */
+package jmp123;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sound.sampled.FloatControl;
+
+import jmp123.decoder.Header;
+import jmp123.decoder.IAudio;
+import jmp123.decoder.ID3Tag;
+import jmp123.decoder.Layer1;
+import jmp123.decoder.Layer123;
+import jmp123.decoder.Layer2;
+import jmp123.decoder.Layer3;
+import jmp123.decoder.SynthesisConcurrent;
+
+/**
+ * 离线分段并行解码。用于不需要实时播放、只要求解码吞吐量的场合，例如批量转换长文件。
+ * <p>
+ * Layer Ⅲ 的帧解码依赖前面若干帧：位流缓冲区（main_data_begin）、IMDCT的重叠相加（preBlckCh0/1）和多相合成滤波的FIFO（Synthesis.fifobuf）。
+ * 本类先用 {@link Header#syncFrame(byte[], int, int)} 找出所有帧的位置，将帧序列分为若干段，每段在一个工作线程中用独立的解码器解码。
+ * 每段从它前面若干帧开始解码以重建这些状态，这些预热帧输出的PCM被丢弃，最后按顺序拼接各段的PCM。
+ * <p>
+ * 预热的帧数按帧索引逐段计算：重叠相加和FIFO要求段前的1帧（MPEG-2/2.5每帧只有1个粒度组，要求2帧）能完整解码，
+ * 从这些帧往前，直到前面各帧的主数据长度之和不小于它们的main_data_begin（MPEG-1最大511字节，MPEG-2/2.5最大255字节）。
+ * 因此低位率、位流缓冲区跨越多帧的文件，输出的PCM也和顺序解码逐字节相同。
+ * Layer Ⅰ/Ⅱ 文件不分段，在一个工作线程中顺序解码。
+ */
+public class ParallelDecoder {
+	/**
+	 * 默认每段的帧数。
+	 */
+	public static final int DEFAULT_SEGMENT = 1000;
+
+	private final int threads, segment;
+	private int frames;
+
+	/**
+	 * 用默认的段长创建分段并行解码器。
+	 *
+	 * @param threads
+	 *            工作线程数。小于1时使用可用的处理器数。
+	 */
+	public ParallelDecoder(int threads) {
+		this(threads, DEFAULT_SEGMENT);
+	}
+
+	/**
+	 * 创建分段并行解码器。
+	 *
+	 * @param threads
+	 *            工作线程数。小于1时使用可用的处理器数。
+	 * @param segment
+	 *            每段的帧数。
+	 */
+	public ParallelDecoder(int threads, int segment) {
+		if (segment < 1)
+			throw new IllegalArgumentException("segment=" + segment);
+		this.threads = threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+		this.segment = segment;
+	}
+
+	/**
+	 * 解码一个本地文件。
+	 *
+	 * @see #decode(byte[], IAudio)
+	 */
+	public boolean decode(String name, IAudio audio) throws IOException, InterruptedException {
+		RandomAccessFile raf = new RandomAccessFile(name, "r");
+		try {
+			byte[] data = new byte[(int) raf.length()];
+			raf.readFully(data);
+			return decode(data, audio);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * 解码内存中的一个MPEG音频文件。PCM数据按顺序写入音频输出对象，写完后调用 {@link IAudio#drain()}，但不关闭音频输出对象。
+	 *
+	 * @param data
+	 *            文件内容。
+	 * @param audio
+	 *            音频输出对象，可以为null。
+	 * @return 找不到帧同步字或打开音频输出失败返回false，否则返回true。
+	 * @throws IOException
+	 *             解码时出错。
+	 * @throws InterruptedException
+	 *             等待工作线程时被中断。
+	 */
+	public boolean decode(final byte[] data, IAudio audio) throws IOException, InterruptedException {
+		// 1. 跳过ID3v2标签，查找所有帧的位置
+		int off = new ID3Tag().checkID3V2(data, 0);
+		if (off <= 10)
+			off = 0;
+		final int[] pos = index(data, off);
+		frames = pos.length;
+		if (frames == 0)
+			return false;
+
+		Header h = new Header();
+		h.initialize(data.length - off, 0);
+		h.syncFrame(data, pos[0], data.length);
+		if (audio != null && audio.open(h, null) == false)
+			return false;
+
+		// 2. 分段解码，按顺序输出. 最多有2*threads个段同时在内存中
+		int seg = h.getLayer() == 3 ? segment : frames;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+		try {
+			int next = 0;
+			while (next < frames || !pending.isEmpty()) {
+				while (next < frames && pending.size() < 2 * threads) {
+					final int start = next, end = Math.min(next + seg, frames);
+					pending.add(pool.submit(new Callable<byte[]>() {
+						public byte[] call() {
+							return decodeSegment(data, pos, start, end);
+						}
+					}));
+					next = end;
+				}
+				byte[] pcm = pending.poll().get();
+				if (audio != null)
+					audio.write(pcm, pcm.length);
+			}
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		if (audio != null)
+			audio.drain();
+		return true;
+	}
+
+	/**
+	 * 获取最近一次解码的帧数。
+	 *
+	 * @return 帧数。
+	 */
+	public int getFrames() {
+		return frames;
+	}
+
+	/**
+	 * 查找所有帧的位置。返回的每个位置是调用 {@link Header#syncFrame(byte[], int, int)} 时的偏移量，即上一帧的结束位置。
+	 */
+	private static int[] index(byte[] data, int off) {
+		Header h = new Header();
+		h.initialize(data.length - off, 0);
+		int[] pos = new int[1024];
+		int n = 0;
+		while (h.syncFrame(data, off, data.length)) {
+			if (n == pos.length)
+				pos = Arrays.copyOf(pos, n << 1);
+			pos[n++] = off;
+			off = h.offset() + h.getSideInfoSize() + h.getMainDataSize();
+		}
+		return Arrays.copyOf(pos, n);
+	}
+
+	/**
+	 * 计算从第start帧开始的段应从哪一帧开始预热。只用于 Layer Ⅲ。
+	 */
+	private static int warmupFrom(byte[] data, int[] pos, int start, int end) {
+		if (start == 0)
+			return 0;
+		Header h = new Header();
+		h.initialize(data.length, 0);
+		h.syncFrame(data, pos[start], data.length);
+		boolean mpeg1 = h.getVersion() == Header.MPEG1;
+		int maxBegin = mpeg1 ? 511 : 255;
+
+		// 第need帧起的各帧都要能完整解码：它们的主数据在位流缓冲区中，重叠相加和FIFO才能得到和顺序解码相同的值
+		int need = Math.max(0, start - (mpeg1 ? 1 : 2));
+		int first = need, size = 0;
+		for (int i = need; i < end && size < maxBegin; i++) {
+			h.syncFrame(data, pos[i], data.length);
+			int off = h.offset(); // 边信息的开始位置
+			int begin = mpeg1 ? ((data[off] & 0xff) << 1) | ((data[off + 1] & 0xff) >> 7) : data[off] & 0xff;
+			size += h.getMainDataSize();
+			// 往前找到主数据长度之和不小于main_data_begin的帧
+			for (int sum = 0, j = i - 1; sum < begin && j >= 0; j--) {
+				h.syncFrame(data, pos[j], data.length);
+				sum += h.getMainDataSize();
+				first = Math.min(first, j);
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * 解码 [start, end) 帧，返回这些帧的PCM数据。
+	 */
+	private byte[] decodeSegment(byte[] data, int[] pos, int start, int end) {
+		Header h = new Header();
+		h.initialize(data.length, 0);
+		h.syncFrame(data, pos[start], data.length);
+		int first = h.getLayer() == 3 ? warmupFrom(data, pos, start, end) : start;
+		h.syncFrame(data, pos[first], data.length);
+
+		PcmCollector pcm = new PcmCollector((end - first) * h.getPcmSize());
+		Layer123 layer;
+		switch (h.getLayer()) {
+		case 1:
+			layer = new Layer1(h, pcm);
+			break;
+		case 2:
+			layer = new Layer2(h, pcm);
+			break;
+		default:
+			layer = new Layer3(h, pcm, SynthesisConcurrent.INLINE, 2);
+		}
+
+		long skip = 0;
+		for (int i = first; i < end; i++) {
+			if (i > first)
+				h.syncFrame(data, pos[i], data.length);
+			if (i == start && layer instanceof Layer3)
+				// 串行执行多相合成滤波，已提交的帧都已输出
+				skip = ((Layer3) layer).getSubmittedFrames() * h.getPcmSize();
+			layer.decodeFrame(data, h.offset());
+		}
+		layer.close();
+		return Arrays.copyOfRange(pcm.buf, (int) skip, pcm.size);
+	}
+
+	/**
+	 * 将PCM数据收集到内存。
+	 */
+	private static final class PcmCollector implements IAudio {
+		byte[] buf;
+		int size;
+
+		PcmCollector(int capacity) {
+			buf = new byte[capacity];
+		}
+
+		public int write(byte[] b, int len) {
+			if (size + len > buf.length)
+				buf = Arrays.copyOf(buf, Math.max(buf.length << 1, size + len));
+			System.arraycopy(b, 0, buf, size, len);
+			size += len;
+			return len;
+		}
+
+		public boolean open(Header h, String artist) {
+			return true;
+		}
+
+		public void start(boolean b) {
+		}
+
+		public void drain() {
+		}
+
+		public void close() {
+		}
+
+		public void refreshMessage(String msg) {
+		}
+
+		public void setLineGain(float gain) {
+		}
+
+		public FloatControl getFloatControl() {
+			return null;
+		}
+	}
+}
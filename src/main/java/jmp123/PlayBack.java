@@ -21,6 +21,8 @@
 package jmp123;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.JSlider;
 
@@ -33,8 +35,11 @@ import jmp123.decoder.Layer123;
 import jmp123.decoder.Layer1;
 import jmp123.decoder.Layer2;
 import jmp123.decoder.Layer3;
+import jmp123.decoder.SynthesisConcurrent;
 import jmp123.instream.BuffRandReadFile;
 import jmp123.instream.BuffRandReadURL;
+import jmp123.instream.FrameIndex;
+import jmp123.instream.MappedRandReadFile;
 import jmp123.instream.RandomRead;
 import jmp123.instream.MultiplexAudio;
 
@@ -57,6 +62,21 @@ import jmp123.instream.MultiplexAudio;
  * 
  */
 public class PlayBack {
+	/**
+	 * 默认的预解码帧数，见 {@link #setPrimeFrames(int)}。
+	 */
+	public static final int DEFAULT_PRIME_FRAMES = 4;
+
+	/*
+	 * 快进时每次连续播放的帧数。
+	 */
+	private static final int FAST_FORWARD_CHUNK = 8;
+
+	/*
+	 * 解码器的延迟（IMDCT重叠相加和多相合成滤波），单位“样本”。和LAME标签中的编码器延迟一起从文件开头去掉。
+	 */
+	private static final int DECODER_DELAY = 529;
+
 	private byte[] buf;
 	private final int BUFLEN = 8192;
 	private boolean eof, paused;
@@ -66,6 +86,22 @@ public class PlayBack {
 	private Header header;
 	private IAudio audio;
 	private float currentVolume = 0.0f;
+	private Executor synthesisExecutor = SynthesisConcurrent.sharedPool();
+	private int synthesisDepth = Layer3.DEFAULT_DEPTH;
+	private Layer123 layer;
+	private Executor layerExecutor; // 创建layer时的多相合成滤波执行方式和队列深度
+	private int layerDepth;
+	private String localName; // 本地文件名，用于建立帧索引
+	private volatile Indexer indexer; // 在后台加载或建立当前文件的帧索引，prepare时复位
+	private long bufPos; // buf[0]在文件中的位置
+	private long firstFrame; // 第一帧帧头在文件中的位置
+	private volatile float seekTime = -1;
+	private final AtomicLong skipRequest = new AtomicLong();
+	private volatile int speed = 1;
+	private int primeFrames = DEFAULT_PRIME_FRAMES;
+	private int played; // 快进时本轮已播放的帧数
+	private boolean gapless;
+	private String title; // prepare 方法指定的歌曲标题
 
 	/**
 	 * 用指定的音频输出对象构造一个PlayBack对象。
@@ -81,6 +117,37 @@ public class PlayBack {
 		buf = new byte[BUFLEN];
 	}
 
+	/**
+	 * 指定 Layer Ⅲ 多相合成滤波的执行方式，在下一次调用 start 方法时生效。默认使用 {@link SynthesisConcurrent#sharedPool()}。
+	 * 
+	 * @param executor
+	 *            执行多相合成滤波的 {@link Executor}。
+	 * @see SynthesisConcurrent#INLINE
+	 * @see SynthesisConcurrent#virtualThreads()
+	 */
+	public void setSynthesisExecutor(Executor executor) {
+		synthesisExecutor = executor;
+	}
+
+	/**
+	 * 指定 Layer Ⅲ 解码和多相合成滤波之间环形队列的深度，在下一次调用 start 方法时生效。默认为 {@link Layer3#DEFAULT_DEPTH}。
+	 * 
+	 * @param depth
+	 *            队列深度，不小于2。
+	 */
+	public void setSynthesisDepth(int depth) {
+		synthesisDepth = depth;
+	}
+
+	/**
+	 * 获取最近一次调用 start 方法时使用的帧解码器，可用于读取 {@link Layer3} 的队列统计数据。
+	 * 
+	 * @return 帧解码器。未调用 start 方法时返回null。
+	 */
+	public Layer123 getLayer() {
+		return layer;
+	}
+
 	/**
 	 * 暂停或继续此文件播放。这相当于一个单稳态的触发开关，第一次调用该方法暂停播放，第二次调用继续播放，以此类推。
 	 * @return 返回当前状态。处于暂停状态返回true，否则返回false。
@@ -112,20 +179,48 @@ public class PlayBack {
 	}
 
 	/**
-	 * 关闭此文件播放并清除关联的资源。
+	 * 关闭此文件播放并清除关联的资源。无缝播放时不关闭音频输出对象，见 {@link #setGapless(boolean)}。
 	 */
 	public void close() {
 		if (id3tag != null)
 			id3tag.clear();
-		if (audio != null)
+		if (audio != null && !gapless)
 			audio.close();
 
 		// 若正读取网络文件通过调用close方法中断下载(缓冲)
 		if (instream != null)
 			instream.close();
+		cancelIndex();
 		//System.out.println("jmp123.PlayBack.close() ret.");
 	}
 
+	/**
+	 * 指定是否无缝播放，在下一次调用 start 方法时生效。无缝播放时：
+	 * <ul>
+	 * <li>按LAME标签去掉编码器在文件开头和末尾补的样本（encoder delay和padding）；</li>
+	 * <li>播放完一个文件不等待音频输出对象排空，{@link #close()} 不关闭音频输出对象，下一个文件的PCM数据紧接着写入。
+	 * 音频输出对象的 open 方法应在格式相同时继续使用已打开的源数据行（如 {@link jmp123.output.Audio}）。
+	 * 播放完最后一个文件后调用 {@link #closeAudio()}。</li>
+	 * </ul>
+	 * 
+	 * @param gapless
+	 *            无缝播放指定为true。默认为false。
+	 */
+	public void setGapless(boolean gapless) {
+		this.gapless = gapless;
+	}
+
+	/**
+	 * 等待音频输出对象播放完已写入的数据（暂停时不等待）并关闭它。无缝播放时在播放完最后一个文件后调用。
+	 */
+	public void closeAudio() {
+		if (audio == null)
+			return;
+		if (!paused)
+			audio.drain();
+		audio.close();
+	}
+
 	/**
 	 * 打开文件并解析文件信息。
 	 * 
@@ -137,16 +232,37 @@ public class PlayBack {
 	 * @throws IOException 发生I/O错误。
 	 */
 	public boolean open(String name, String title) throws IOException {
+		return prepare(name, title) && openAudio();
+	}
+
+	/**
+	 * 打开文件，解析标签信息和第一帧的帧头，但不初始化音频输出。读网络文件时要等待缓冲，可以在播放上一个文件时在另一个线程中调用此方法预读，
+	 * 然后在播放线程中调用 {@link #openAudio()} 和 start 方法。{@link #open(String, String)} 依次调用这两个方法。
+	 * 
+	 * @param name
+	 *            文件路径。
+	 * @param title
+	 *            歌曲标题，可以为null。
+	 * @return 打开失败返回 <b>false</b>；否则返回 <b>true</b> 。
+	 * @throws IOException 发生I/O错误。
+	 */
+	public boolean prepare(String name, String title) throws IOException {
 		maxOff = off = 0;
 		paused = eof = false;
 
 		boolean id3v1 = false;
+		cancelIndex();
+		localName = null;
 		String str = name.toLowerCase();
 		if (str.startsWith("http://") && str.endsWith(".mp3")) {
 			instream = new BuffRandReadURL(audio);
 		} else if (str.endsWith(".mp3")) {
-			instream = new BuffRandReadFile();
+			if ("false".equals(System.getProperty("jmp123.mmap")))
+				instream = new BuffRandReadFile();
+			else
+				instream = new MappedRandReadFile();
 			id3v1 = true;
+			localName = name;
 		} else if (str.endsWith(".dat") || str.endsWith(".vob")) {
 			instream = new MultiplexAudio();
 		} else {
@@ -168,7 +284,9 @@ public class PlayBack {
 		nextHeader();
 		if (eof)
 			return false;
+		firstFrame = bufPos + off - header.getHeaderSize();
 
+		this.title = title;
 		if (audio != null && title != null) {
 			// 歌曲的标题和艺术家，优先使用播放列表(*.m3u)中指定的参数
 			String[] strArray = title.split(" ");
@@ -186,6 +304,15 @@ public class PlayBack {
 			}
 		}
 
+		return true;
+	}
+
+	/**
+	 * 用 {@link #prepare(String, String)} 解析得到的帧头初始化音频输出。
+	 * 
+	 * @return 初始化失败返回 <b>false</b>；否则返回 <b>true</b> 。
+	 */
+	public boolean openAudio() {
 		// 成功解析帧头后初始化音频输出
 		if (audio != null && audio.open(header, id3tag.getArtist()) == false)
 			return false;
@@ -217,6 +344,7 @@ public class PlayBack {
 			tagSize += id3tag.checkAPEtagFooter(buf, 0); // APE tag footer
 		}
 
+		bufPos = 0;
 		if ((maxOff = instream.read(buf, 0, BUFLEN)) <= 10) {
 			eof = true;
 			return -1;
@@ -234,6 +362,7 @@ public class PlayBack {
 				return -1;
 			}
 			id3tag.parseID3V2(b, 0, b.length);
+			bufPos = b.length;
 			if ((maxOff = instream.read(buf, 0, BUFLEN)) <= 4)
 				eof = true;
 		} else if (sizev2 > 10) {
@@ -263,6 +392,52 @@ public class PlayBack {
 		return id3tag;
 	}
 
+	/*
+	 * 获取解码已打开文件的帧解码器。上一个文件的解码器能解码这个文件时复用它，不再重新分配缓冲区，
+	 * 播放列表中连续的文件通常格式相同。不支持的层返回null。
+	 */
+	private Layer123 newLayer() {
+		Layer123 l;
+		if (layer != null && layer.accepts(header)
+				&& (header.getLayer() != 3 || layerExecutor == synthesisExecutor && layerDepth == synthesisDepth)) {
+			l = layer;
+			l.restart();
+		} else {
+			layerExecutor = synthesisExecutor;
+			layerDepth = synthesisDepth;
+			switch (header.getLayer()) {
+			case 1:
+				l = new Layer1(header, audio);
+				break;
+			case 2:
+				l = new Layer2(header, audio);
+				break;
+			case 3:
+				l = new Layer3(header, audio, synthesisExecutor, synthesisDepth);
+				break;
+			default:
+				return null;
+			}
+		}
+		if (gapless)
+			setTrim(l);
+		return l;
+	}
+
+	/*
+	 * 无缝播放时按LAME标签指定输出的样本范围。VBR标签所在的帧也被当作一帧音频解码（输出静音），
+	 * 第一个有效的样本在这一帧、编码器延迟和解码器延迟之后。LAME标签中的帧数不包括VBR标签所在的帧。
+	 */
+	private void setTrim(Layer123 l) {
+		int delay = header.getEncoderDelay();
+		if (delay < 0)
+			return;
+		long n = header.getPcmSize() / (header.getChannels() << 1); // 每帧每个声道的样本数
+		long start = n + delay + DECODER_DELAY;
+		long end = start + header.getTrackFrames() * n - delay - header.getEncoderPadding();
+		l.setTrim(start, end > start ? end : Long.MAX_VALUE);
+	}
+
 	/**
 	 * 解码已打开的文件。
 	 * 
@@ -271,23 +446,11 @@ public class PlayBack {
 	 * @return 成功播放指定的文件返回true，否则返回false。
 	 */
 	public boolean start(boolean verbose) {
-		Layer123 layer = null;
 		int frames = 0;
 		paused = false;
 
-		switch (header.getLayer()) {
-		case 1:
-			layer = new Layer1(header, audio);
-			break;
-		case 2:
-			layer = new Layer2(header, audio);
-			break;
-		case 3:
-			layer = new Layer3(header, audio);
-			break;
-		default:
+		if ((layer = newLayer()) == null)
 			return false;
-		}
 
 		try {
 			while (!eof) {
@@ -299,6 +462,10 @@ public class PlayBack {
 
 				// 2. 定位到下一帧并解码帧头
 				nextHeader();
+				if (seekTime >= 0)
+					seekRequested();
+				if (speed > 1 || skipRequest.get() > 0)
+					skipRequested();
 
 				// 3. 检测并处理暂停
 				if (paused) {
@@ -320,13 +487,39 @@ public class PlayBack {
 			// System.out.println("jmp123.PlayBack.start() interrupt.");
 		} finally {
 			if (layer != null)
-				layer.close();
+				layer.close(!gapless);
 		}
 		// System.out.println("jmp123.PlayBack.start() ret.");
 
 		return true;
 	}
-	
+
+	/*
+	 * 拉取方式解码（Decoder）的第一步：创建帧解码器。不支持的层返回false。
+	 */
+	boolean begin() {
+		paused = false;
+		return (layer = newLayer()) != null;
+	}
+
+	/*
+	 * 拉取方式解码：解码一帧并定位到下一帧。PCM数据照常经音频输出缓冲区写入音频输出对象。已到文件末尾返回false。
+	 */
+	boolean decodeNext() throws IOException {
+		if (eof)
+			return false;
+		off = layer.decodeFrame(buf, off);
+		nextHeader();
+		return true;
+	}
+
+	/*
+	 * 拉取方式解码的最后一步：等待最后几帧完成多相合成滤波，音频输出缓冲区的剩余内容写入音频输出对象。
+	 */
+	void end() {
+		layer.close(false);
+	}
+
 	//=======================添加的方法=====================
 	/**
 	 * 播放从start帧到end的音乐段
@@ -339,49 +532,42 @@ public class PlayBack {
 		long frameCount = header.getTrackFrames();
 		if(end > frameCount)
 			end = frameCount;
+		final long last = end;
+		long frame;
 		
-		Layer123 layer = null ; //, layer2 = null;
 		paused = false;
 
-		switch (header.getLayer()) {
-		case 1:
-			layer = new Layer1(header, audio);
-//			layer2 = new Layer1(header, null);
-			break;
-		case 2:
-			layer = new Layer2(header, audio);
-//			layer2 = new Layer2(header, null);
-			break;
-		case 3:
-			layer = new Layer3(header, audio);
-//			layer2 = new Layer3(header, null);
-			break;
-		default:
+		if ((layer = newLayer()) == null)
 			return false;
-		}
 
 		try {
+			// 用帧索引直接定位到开始帧，索引还未建好时只解码帧头跳过开始帧之前的帧
+			if (start > 0) {
+				if (seekFrame(start, true))
+					end -= start;
+				else
+					end -= skipFrames(start);
+			}
+
 			while (!eof&&end-->0) {
-				if (start-->0) {
-					// 1.1. 解码一帧不输出(不播放)
-					// 如果不播放则可以不需要去解码这个帧，则直接跳过这一帧
-//					off = layer2.decodeFrame(buf, off); 
-				}
-				else {
-					//设置音量
-					//
-					if(volumeBar!=null) {
-						float currentValue = volumeBar.getValue();
-						float maxValue = 0; //audio.getFloatControl().getMaximum();
-						float minValue = audio.getFloatControl().getMinimum()+30;
-						audio.setLineGain(currentValue/100*(maxValue-minValue)+minValue);
-					} else {
-					audio.setLineGain(currentVolume); }
-					// 1.2. 解码一帧并输出(播放)
-					off = layer.decodeFrame(buf, off);
-				}
+				//设置音量
+				//
+				if(volumeBar!=null) {
+					float currentValue = volumeBar.getValue();
+					float maxValue = 0; //audio.getFloatControl().getMaximum();
+					float minValue = audio.getFloatControl().getMinimum()+30;
+					audio.setLineGain(currentValue/100*(maxValue-minValue)+minValue);
+				} else {
+				audio.setLineGain(currentVolume); }
+				// 1. 解码一帧并输出(播放)
+				off = layer.decodeFrame(buf, off);
+
 				// 2. 定位到下一帧并解码帧头
 				nextHeader();
+				if (seekTime >= 0 && (frame = seekRequested()) >= 0)
+					end = last - frame;
+				if (speed > 1 || skipRequest.get() > 0)
+					end -= skipRequested();
 
 				// 3. 检测并处理暂停
 				if (paused) {
@@ -398,12 +584,189 @@ public class PlayBack {
 			e.printStackTrace();
 		} finally {
 			if (layer != null)
-				layer.close();
+				layer.close(!gapless);
 		}
 		return true;
 	}
 	//====================================================================
 
+	/**
+	 * 播放过程中定位到指定的时间。解码线程在解码下一帧之前完成定位。
+	 * 
+	 * @param seconds
+	 *            播放时间，单位“秒”。
+	 * @see #seekFrame(long)
+	 */
+	public void seek(float seconds) {
+		seekTime = Math.max(seconds, 0);
+	}
+
+	/**
+	 * 播放过程中向后跳过指定的帧数。解码线程在解码下一帧之前只解码帧头跳过这些帧，见 {@link #setPrimeFrames(int)}。
+	 * 
+	 * @param frames
+	 *            跳过的帧数。
+	 */
+	public void skip(long frames) {
+		if (frames > 0)
+			skipRequest.addAndGet(frames);
+	}
+
+	/**
+	 * 指定快进的倍数。快进时每连续播放8帧，只解码帧头跳过其后 8 * (speed - 1) 帧，解码的帧数只比正常播放多预解码的帧。
+	 * 
+	 * @param speed
+	 *            快进的倍数，1表示正常播放。
+	 */
+	public void setFastForward(int speed) {
+		this.speed = Math.max(speed, 1);
+		played = 0;
+	}
+
+	/**
+	 * 指定定位、跳过或快进之后在落点之前预解码的帧数。预解码的帧不输出PCM，只用于重建位流缓冲区（main_data_begin最大为511字节）、
+	 * IMDCT重叠相加和多相合成滤波FIFO等跨帧的解码状态，使落点之后的输出没有杂音。默认为 {@link #DEFAULT_PRIME_FRAMES}。
+	 * 
+	 * @param frames
+	 *            预解码的帧数，0表示不预解码。
+	 */
+	public void setPrimeFrames(int frames) {
+		primeFrames = Math.max(frames, 0);
+	}
+
+	/**
+	 * 完成 {@link #skip(long)} 请求的跳过和快进。
+	 * 
+	 * @return 跳过的帧数。
+	 */
+	private long skipRequested() throws IOException {
+		long n = skipRequest.getAndSet(0);
+		if (speed > 1 && ++played >= FAST_FORWARD_CHUNK) {
+			played = 0;
+			n += FAST_FORWARD_CHUNK * (speed - 1);
+		}
+		return n > 0 ? skipFrames(n) : 0;
+	}
+
+	/**
+	 * 向后跳过n帧，当前帧成为第n帧。只解码帧头，最后 primeFrames 帧用 {@link Layer123#primeFrame(byte[], int)} 预解码。
+	 * 
+	 * @return 实际跳过的帧数，到达文件末尾时小于n。
+	 */
+	private long skipFrames(long n) throws IOException {
+		long i = 0;
+		for (; i < n - primeFrames && !eof; i++) {
+			off = header.offset() + header.getSideInfoSize() + header.getMainDataSize();
+			nextHeader();
+		}
+		if (i > 0)
+			layer.reset();
+		for (; i < n && !eof; i++) {
+			off = layer.primeFrame(buf, off);
+			nextHeader();
+		}
+		return i;
+	}
+
+	/**
+	 * 完成 {@link #seek(float)} 请求的定位。
+	 * 
+	 * @return 定位到的帧序号；定位失败返回-1，此时继续解码下一帧。
+	 */
+	private long seekRequested() throws IOException {
+		float t = seekTime;
+		seekTime = -1;
+		long frame = (long) (t / header.getFrameDuration());
+		return seekFrame(frame, false) ? frame : -1;
+	}
+
+	/**
+	 * 定位到指定的帧并解码帧头。先定位到它之前 primeFrames 帧，复位帧解码器后预解码这几帧。
+	 * <ul>
+	 * <li>本地文件用帧索引（{@link FrameIndex}）精确定位，系统属性 <code>jmp123.index=false</code> 可以禁止使用。
+	 * 第一次定位时在后台线程中加载或建立索引，每个打开的文件只加载一次；</li>
+	 * <li>索引还未建好时，用VBR标签的TOC或按固定位率估算位置（{@link Header#getSeekOffset(float)}），再用帧同步找到最近的一帧。</li>
+	 * </ul>
+	 * 
+	 * @param frame
+	 *            帧序号，从0开始。
+	 * @param exact
+	 *            为true时只用帧索引定位，索引还未建好时返回false。
+	 * @return 定位成功返回true；帧序号超出范围或输入流不支持随机读取时返回false，此时调用者应逐帧跳过。
+	 * @throws IOException
+	 *             发生I/O错误。
+	 */
+	private boolean seekFrame(long frame, boolean exact) throws IOException {
+		long pos = -1, frames = header.getTrackFrames();
+		long target = Math.max(0, frame - primeFrames);
+		FrameIndex index = frameIndex();
+		if (index != null) {
+			if (frame < index.getFrames())
+				pos = index.getOffset((int) target);
+		} else if (!exact && frame < frames)
+			pos = firstFrame + header.getSeekOffset((float) target / frames);
+		if (pos < 0 || instream.seek(pos) == false)
+			return false;
+		bufPos = pos;
+		off = 0;
+		if ((maxOff = instream.read(buf, 0, BUFLEN)) <= 4)
+			eof = true;
+		else
+			nextHeader();
+		header.setFrames((int) target + 1);
+		layer.reset();
+		for (; target < frame && !eof; target++) {
+			off = layer.primeFrame(buf, off);
+			nextHeader();
+		}
+		return true;
+	}
+
+	/**
+	 * 获取当前文件的帧索引，第一次调用时启动后台线程加载或建立索引。
+	 * 
+	 * @return 帧索引；不是本地文件、禁止使用索引、索引还未建好或者建立失败时返回null。
+	 */
+	private FrameIndex frameIndex() {
+		if (localName == null || "false".equals(System.getProperty("jmp123.index")))
+			return null;
+		Indexer t = indexer;
+		if (t == null) {
+			indexer = t = new Indexer(localName);
+			t.start();
+		}
+		return t.index;
+	}
+
+	private void cancelIndex() {
+		Indexer t = indexer;
+		indexer = null;
+		if (t != null)
+			t.interrupt();
+	}
+
+	/**
+	 * 在后台加载或建立一个文件的帧索引（{@link FrameIndex#forFile(String)}），不阻塞解码线程。
+	 */
+	private static final class Indexer extends Thread {
+		private final String name;
+		private volatile FrameIndex index;
+
+		Indexer(String name) {
+			this.name = name;
+			setName("frame_index");
+			setDaemon(true);
+		}
+
+		public void run() {
+			try {
+				index = FrameIndex.forFile(name);
+			} catch (IOException e) {
+				// 扫描被中断或读文件失败，定位时按TOC估算位置
+			}
+		}
+	}
+
 	private void nextHeader() throws IOException {
 		int len, chunk = 0;
 		while (!eof && header.syncFrame(buf, off, maxOff) == false) {
@@ -411,6 +774,7 @@ public class PlayBack {
 			off = header.offset();
 			len = maxOff - off;
 			System.arraycopy(buf, off, buf, 0, len);
+			bufPos += off;
 			maxOff = len + instream.read(buf, len, off);
 			off = 0;
 			if( maxOff <= len || (chunk += BUFLEN) > 0x10000)
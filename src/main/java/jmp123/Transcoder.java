@@ -0,0 +1,275 @@
+/*
+ * Transcoder.java -- 批量解码MP3文件到WAV/PCM文件
+ */
+package jmp123;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jmp123.decoder.IDirectAudio;
+import jmp123.output.FileAudio;
+
+/**
+ * 不依赖图形界面的批量解码器。将一个文件或一个目录树下的所有 .mp3 文件解码为WAV或原始PCM文件，输出目录保持源目录的结构。
+ * <p>
+ * 多个文件由线程池中的工作线程并行解码。每个工作线程有自己的 {@link PlayBack}（以及它的 Header、Layer123）和
+ * {@link FileAudio} 对象，依次解码分给它的文件，格式相同时复用帧解码器；工作线程之间不共享解码器状态。
+ * <p>
+ * 命令行用法: <code>java jmp123.Transcoder [-t 线程数] [-raw] [-float] 源文件或目录 输出目录</code>
+ */
+public class Transcoder {
+	private final int threads;
+	private final boolean wav;
+	private final int format;
+
+	/**
+	 * 批量解码的统计结果。
+	 */
+	public static final class Result {
+		private final int files, failed;
+		private final long frames, inBytes, outBytes, nanos;
+
+		Result(int files, int failed, long frames, long inBytes, long outBytes, long nanos) {
+			this.files = files;
+			this.failed = failed;
+			this.frames = frames;
+			this.inBytes = inBytes;
+			this.outBytes = outBytes;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * @return 成功解码的文件数。
+		 */
+		public int getFiles() {
+			return files;
+		}
+
+		/**
+		 * @return 解码失败的文件数。
+		 */
+		public int getFailed() {
+			return failed;
+		}
+
+		/**
+		 * @return 解码的总帧数。
+		 */
+		public long getFrames() {
+			return frames;
+		}
+
+		/**
+		 * @return 读入的MP3数据总长度，单位“字节”。
+		 */
+		public long getInputBytes() {
+			return inBytes;
+		}
+
+		/**
+		 * @return 输出的PCM数据总长度，单位“字节”。
+		 */
+		public long getOutputBytes() {
+			return outBytes;
+		}
+
+		/**
+		 * @return 总耗时，单位“纳秒”。
+		 */
+		public long getElapsedNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return 每秒解码的帧数。
+		 */
+		public double getFramesPerSecond() {
+			return nanos == 0 ? 0 : frames * 1e9 / nanos;
+		}
+
+		/**
+		 * @return 每秒输出的PCM字节数。
+		 */
+		public double getBytesPerSecond() {
+			return nanos == 0 ? 0 : outBytes * 1e9 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d files (%d failed), %d frames in %.2f s: %.0f frames/s, %.2f MB/s PCM, %.2f MB/s MP3",
+					files, failed, frames, nanos / 1e9, getFramesPerSecond(), getBytesPerSecond() / 1048576,
+					nanos == 0 ? 0 : inBytes * 1e9 / nanos / 1048576);
+		}
+	}
+
+	/**
+	 * 创建批量解码器。
+	 *
+	 * @param threads
+	 *            工作线程数。小于1时使用可用的处理器数。
+	 * @param wav
+	 *            指定为true输出WAV文件，否则输出原始PCM（*.pcm，16位小端）。
+	 */
+	public Transcoder(int threads, boolean wav) {
+		this(threads, wav, IDirectAudio.FORMAT_PCM16);
+	}
+
+	/**
+	 * 创建指定样本格式的批量解码器。
+	 *
+	 * @param threads
+	 *            工作线程数。小于1时使用可用的处理器数。
+	 * @param wav
+	 *            指定为true输出WAV文件，否则输出原始PCM（*.pcm，小端）。
+	 * @param format
+	 *            样本格式：{@link IDirectAudio#FORMAT_PCM16} 或 {@link IDirectAudio#FORMAT_FLOAT}。
+	 */
+	public Transcoder(int threads, boolean wav, int format) {
+		this.threads = threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+		this.wav = wav;
+		this.format = format;
+	}
+
+	/**
+	 * 解码源文件或源目录下的所有 .mp3 文件。
+	 *
+	 * @param src
+	 *            源文件或目录。
+	 * @param dstDir
+	 *            输出目录，不存在时自动创建。
+	 * @return 统计结果。
+	 * @throws IOException
+	 *             源文件不存在。
+	 * @throws InterruptedException
+	 *             等待工作线程时被中断。
+	 */
+	public Result transcode(File src, File dstDir) throws IOException, InterruptedException {
+		if (!src.exists())
+			throw new IOException("File not found: " + src);
+		List<File> sources = new ArrayList<File>();
+		List<File> targets = new ArrayList<File>();
+		collect(src, src.isDirectory() ? dstDir : new File(dstDir, src.getName()), sources, targets);
+
+		final AtomicLong frames = new AtomicLong();
+		final AtomicLong inBytes = new AtomicLong();
+		final AtomicLong outBytes = new AtomicLong();
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+
+		// 每个工作线程一个解码器和音频输出对象
+		final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+			protected Worker initialValue() {
+				return new Worker(wav, format);
+			}
+		};
+
+		long begin = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			for (int i = 0; i < sources.size(); i++) {
+				final File in = sources.get(i), out = targets.get(i);
+				results.add(pool.submit(new Callable<Boolean>() {
+					public Boolean call() throws IOException {
+						Worker w = workers.get();
+						FileAudio audio = w.audio;
+						PlayBack playback = w.playback;
+						audio.setFile(out);
+						try {
+							out.getParentFile().mkdirs();
+							if (playback.open(in.getPath(), null) == false || playback.start(false) == false) {
+								System.err.println("Decode failed: " + in);
+								return false;
+							}
+						} finally {
+							playback.close();
+						}
+						if (audio.getException() != null) {
+							System.err.println("Write failed: " + out + ": " + audio.getException());
+							return false;
+						}
+						frames.addAndGet(playback.getHeader().getFrames());
+						inBytes.addAndGet(in.length());
+						outBytes.addAndGet(audio.getDataSize());
+						return true;
+					}
+				}));
+			}
+
+			int failed = 0;
+			for (Future<Boolean> f : results) {
+				try {
+					if (!f.get())
+						failed++;
+				} catch (ExecutionException e) {
+					System.err.println(e.getCause());
+					failed++;
+				}
+			}
+			return new Result(results.size() - failed, failed, frames.get(), inBytes.get(), outBytes.get(),
+					System.nanoTime() - begin);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/*
+	 * 一个工作线程的解码器和音频输出对象。
+	 */
+	private static final class Worker {
+		final FileAudio audio;
+		final PlayBack playback;
+
+		Worker(boolean wav, int format) {
+			audio = new FileAudio(null, wav, format);
+			playback = new PlayBack(audio);
+		}
+	}
+
+	private void collect(File src, File dst, List<File> sources, List<File> targets) {
+		if (src.isDirectory()) {
+			File[] list = src.listFiles();
+			if (list == null)
+				return;
+			for (File f : list)
+				collect(f, new File(dst, f.getName()), sources, targets);
+		} else if (src.getName().toLowerCase().endsWith(".mp3")) {
+			String name = dst.getName();
+			name = name.substring(0, name.length() - 4) + (wav ? ".wav" : ".pcm");
+			sources.add(src);
+			targets.add(new File(dst.getParentFile(), name));
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = 0, i = 0;
+		boolean wav = true;
+		int format = IDirectAudio.FORMAT_PCM16;
+		for (; i < args.length && args[i].startsWith("-"); i++) {
+			if (args[i].equals("-t") && i + 1 < args.length)
+				threads = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-raw"))
+				wav = false;
+			else if (args[i].equals("-float"))
+				format = IDirectAudio.FORMAT_FLOAT;
+			else
+				break;
+		}
+		if (args.length - i != 2) {
+			System.err.println("Usage: java jmp123.Transcoder [-t threads] [-raw] [-float] <file|dir> <output dir>");
+			System.exit(1);
+		}
+
+		Transcoder transcoder = new Transcoder(threads, wav, format);
+		Result result = transcoder.transcode(new File(args[i]), new File(args[i + 1]));
+		System.out.println(result);
+		if (result.getFailed() > 0)
+			System.exit(2);
+	}
+}
@@ -1,27 +1,167 @@
 package jmp123.decoder;
 
+import java.nio.ByteBuffer;
+
 /**
  * 音频输出缓冲区。
+ * <p>
+ * 默认存放16位小端PCM字节。音频输出对象实现了 {@link IDirectAudio} 时，按它指定的样本格式写入它提供的ByteBuffer或者
+ * short[]/float[]数组。
  */
 public class AudioBuffer {
+	/*
+	 * 存储方式。
+	 */
+	static final int BYTES = 0;
+	static final int SHORTS = 1;
+	static final int FLOATS = 2;
+	static final int BUFFER_PCM16 = 3;
+	static final int BUFFER_FLOAT = 4;
+
+	/*
+	 * 浮点样本的比例因子，多相合成滤波输出的样本值范围为[-32768, 32767]。
+	 */
+	private static final float FLOAT_SCALE = 1.0f / 32768;
+
 	protected byte[] pcmbuf;
 	protected int[] off; // 两个声道的缓冲区偏移量
 	private IAudio audio;
 	private int size;
 
+	final int mode;
+	private final int unit; // 一个样本占用的存储单元数，off和size的单位是存储单元
+	private short[] shortbuf;
+	private float[] floatbuf;
+	private IDirectAudio direct;
+	private ByteBuffer buffer;
+	private int base; // buffer的起始写入位置
+	private int bufferSize; // 一次写入buffer的字节数
+	private int mark0, mark1;
+
 	/**
 	 * 音频输出缓冲区构建器。
-	 * 
+	 *
 	 * @param audio
 	 *            音频输出对象。如果指定为null则调用 {@link #output()} 不产生输出，仅清空缓冲区。
 	 * @param size
-	 *            音频输出缓冲区长度，单位“字节”。
+	 *            音频输出缓冲区长度，单位“字节”，按16位样本计算。
 	 */
 	public AudioBuffer(IAudio audio, int size) {
 		this.audio = audio;
-		this.size = size;
-		pcmbuf = new byte[size];
-		off = new int[] {0, 2};
+		if (audio instanceof IDirectAudio) {
+			direct = (IDirectAudio) audio;
+			boolean f = direct.getSampleFormat() == IDirectAudio.FORMAT_FLOAT;
+			bufferSize = f ? size << 1 : size;
+			buffer = direct.getBuffer(bufferSize);
+			if (buffer != null)
+				mode = f ? BUFFER_FLOAT : BUFFER_PCM16;
+			else
+				mode = f ? FLOATS : SHORTS;
+		} else
+			mode = BYTES;
+		unit = unit(mode);
+		this.size = (size >> 1) * unit;
+		allocate();
+	}
+
+	/*
+	 * 创建一个和 like 格式相同、不产生输出的缓冲区，存放一帧PCM数据。ByteBuffer方式对应数组方式。
+	 */
+	private AudioBuffer(AudioBuffer like, int size) {
+		switch (like.mode) {
+		case BUFFER_PCM16:
+			mode = SHORTS;
+			break;
+		case BUFFER_FLOAT:
+			mode = FLOATS;
+			break;
+		default:
+			mode = like.mode;
+		}
+		unit = unit(mode);
+		this.size = (size >> 1) * unit;
+		allocate();
+	}
+
+	private static int unit(int mode) {
+		switch (mode) {
+		case SHORTS:
+		case FLOATS:
+			return 1;
+		case BUFFER_FLOAT:
+			return 4;
+		default:
+			return 2;
+		}
+	}
+
+	private void allocate() {
+		if (mode == BYTES)
+			pcmbuf = new byte[size];
+		else if (mode == SHORTS)
+			shortbuf = new short[size];
+		else if (mode == FLOATS)
+			floatbuf = new float[size];
+		else
+			base = buffer.position();
+		off = new int[] {0, unit};
+	}
+
+	/**
+	 * 创建和此缓冲区格式相同、存放一帧PCM数据的缓冲区。该缓冲区不产生输出，用 {@link #append(AudioBuffer)} 追加到此缓冲区。
+	 *
+	 * @param size
+	 *            缓冲区长度，单位“字节”，按16位样本计算。
+	 * @return 新的缓冲区。
+	 */
+	AudioBuffer newFrameBuffer(int size) {
+		return new AudioBuffer(this, size);
+	}
+
+	/**
+	 * 写入一个子带的32个样本。用于存储方式不是16位PCM字节的缓冲区。
+	 *
+	 * @param samples
+	 *            未限幅的样本值。
+	 * @param ch
+	 *            声道。
+	 * @param channels
+	 *            声道数。
+	 */
+	void store(float[] samples, int ch, int channels) {
+		final int stride = unit * channels;
+		int i, pcmi, o = off[ch];
+		float sum;
+		switch (mode) {
+		case SHORTS:
+			for (i = 0; i < 32; i++, o += stride) {
+				sum = samples[i];
+				shortbuf[o] = (short) (sum > 32767 ? 32767 : (sum < -32768 ? -32768 : (int) sum));
+			}
+			break;
+		case FLOATS:
+			for (i = 0; i < 32; i++, o += stride)
+				floatbuf[o] = samples[i] * FLOAT_SCALE;
+			break;
+		case BUFFER_PCM16:
+			for (i = 0; i < 32; i++, o += stride) {
+				sum = samples[i];
+				buffer.putShort(base + o, (short) (sum > 32767 ? 32767 : (sum < -32768 ? -32768 : (int) sum)));
+			}
+			break;
+		case BUFFER_FLOAT:
+			for (i = 0; i < 32; i++, o += stride)
+				buffer.putFloat(base + o, samples[i] * FLOAT_SCALE);
+			break;
+		default:
+			for (i = 0; i < 32; i++, o += stride) {
+				sum = samples[i];
+				pcmi = sum > 32767 ? 32767 : (sum < -32768 ? -32768 : (int) sum);
+				pcmbuf[o] = (byte) pcmi;
+				pcmbuf[o + 1] = (byte) (pcmi >>> 8);
+			}
+		}
+		off[ch] = o;
 	}
 
 	/**
@@ -30,22 +170,134 @@ public class AudioBuffer {
 	 */
 	public void output() {
 		if (off[0] == size) {
-			if (audio != null)
-				audio.write(pcmbuf, size);
+			write(size);
 			off[0] = 0;
-			off[1] = 2;
+			off[1] = unit;
 		}
 	}
 
+	/*
+	 * 将缓冲区中len个存储单元的数据写入音频输出对象。
+	 */
+	private void write(int len) {
+		if (audio == null)
+			return;
+		switch (mode) {
+		case SHORTS:
+			direct.write(shortbuf, len);
+			break;
+		case FLOATS:
+			direct.write(floatbuf, len);
+			break;
+		case BUFFER_PCM16:
+		case BUFFER_FLOAT:
+			direct.write(buffer, len);
+			buffer = direct.getBuffer(bufferSize);
+			base = buffer.position();
+			break;
+		default:
+			audio.write(pcmbuf, len);
+		}
+	}
+
+	/**
+	 * 将另一个缓冲区中的PCM数据追加到此缓冲区并将另一个缓冲区的偏移量复位，此缓冲区填满时写入音频输出对象。
+	 *
+	 * @param ab
+	 *            存放一帧PCM数据的缓冲区，由 {@link #newFrameBuffer(int)} 创建。
+	 */
+	void append(AudioBuffer ab) {
+		append(ab, 0, ab.off[0] / ab.unit);
+	}
+
+	/**
+	 * 将另一个缓冲区中的一段PCM数据追加到此缓冲区并将另一个缓冲区的偏移量复位，其余数据被丢弃。用于无缝播放时去掉编码器在文件开头和末尾补的样本。
+	 * 此缓冲区填满时写入音频输出对象，追加的数据可以跨越此缓冲区的末尾。
+	 *
+	 * @param ab
+	 *            存放一帧PCM数据的缓冲区，由 {@link #newFrameBuffer(int)} 创建。
+	 * @param from
+	 *            第一个追加的样本在ab中的序号，各声道的样本交替排列、一起计数。
+	 * @param to
+	 *            最后一个追加的样本之后的序号。
+	 */
+	void append(AudioBuffer ab, int from, int to) {
+		int len, i, o;
+		while (from < to) {
+			len = Math.min(to - from, (size - off[0]) / unit);
+			o = off[0];
+			switch (mode) {
+			case SHORTS:
+				System.arraycopy(ab.shortbuf, from, shortbuf, o, len);
+				break;
+			case FLOATS:
+				System.arraycopy(ab.floatbuf, from, floatbuf, o, len);
+				break;
+			case BUFFER_PCM16:
+				for (i = from; i < from + len; i++, o += 2)
+					buffer.putShort(base + o, ab.shortbuf[i]);
+				break;
+			case BUFFER_FLOAT:
+				for (i = from; i < from + len; i++, o += 4)
+					buffer.putFloat(base + o, ab.floatbuf[i]);
+				break;
+			default:
+				System.arraycopy(ab.pcmbuf, from << 1, pcmbuf, o, len << 1);
+			}
+			from += len;
+			off[0] += len * unit;
+			off[1] = off[0] + unit;
+			output();
+		}
+		ab.off[0] = 0;
+		ab.off[1] = ab.unit;
+	}
+
+	/**
+	 * 记录缓冲区偏移量，以后调用 {@link #rewind()} 丢弃之后写入的PCM数据。
+	 */
+	void mark() {
+		mark0 = off[0];
+		mark1 = off[1];
+	}
+
+	/**
+	 * 将缓冲区偏移量恢复为调用 {@link #mark()} 时的值。
+	 */
+	void rewind() {
+		off[0] = mark0;
+		off[1] = mark1;
+	}
+
+	/**
+	 * 丢弃缓冲区中的PCM数据，将缓冲区偏移量复位。
+	 */
+	void clear() {
+		off[0] = 0;
+		off[1] = unit;
+	}
+
 	/**
 	 * 音频输出缓冲区的全部内容刷向音频输出对象并将缓冲区偏移量复位。在解码完一个文件的最后一帧后调用此方法，将缓冲区剩余内容写向音频输出对象。
 	 */
 	public void flush() {
+		flush(true);
+	}
+
+	/**
+	 * 音频输出缓冲区的全部内容刷向音频输出对象并将缓冲区偏移量复位。
+	 *
+	 * @param drain
+	 *            是否调用 {@link IAudio#drain()} 等待音频输出对象播放完已写入的数据。无缝播放时指定为false，
+	 *            下一个文件的PCM数据紧接着写入。
+	 */
+	public void flush(boolean drain) {
 		if(audio != null) {
-			audio.write(pcmbuf, off[0]);
-			audio.drain();
+			write(off[0]);
+			if (drain)
+				audio.drain();
 		}
 		off[0] = 0;
-		off[1] = 2;
+		off[1] = unit;
 	}
 }
@@ -164,6 +164,13 @@ public class BitStream {
 		return endPos;
 	}
 
+	/**
+	 * 清空缓冲区。
+	 */
+	public void reset() {
+		endPos = bytePos = bitPos = 0;
+	}
+
 	/**
 	 * 缓冲区丢弃n字节，缓冲区比特指针复位。
 	 * 
@@ -20,30 +20,157 @@
 */
 package jmp123.decoder;
 
+import java.util.Arrays;
+
 /**
  * 用于MPEG-1/MPEG-2/MPEG-2.5 Audio Layer Ⅲ 主数据(main_data)解码时读位流并对哈夫曼数据解码。
+ * <p>
+ * 位流缓冲区（bit reservoir）是环形缓冲区，{@link #append(byte[], int, int)} 在尾部循环填入主数据，
+ * 不再把未处理的数据移动到缓冲区首。缓冲区尾部空出的extra字节存放缓冲区首部extra字节的副本，读位流时越过缓冲区尾部不必回绕，
+ * 每解码完一个声道的哈夫曼数据后把读位置折回到缓冲区内。
  */
 public final class BitStreamMainData extends BitStream {
 	// 用于哈夫曼解码的大值区
-	private int[] lin;		// lin[0..15]=0
-	private short[][] htbv;
+	private static final int[] lin;		// lin[0..15]=0
+	private static final short[][] htbv;
 	private int[] region;	// 某一码表解码用于解码主数据的区域
 
 	// 用于解码小值区
-	private short[] htc0, htc1;
+	private static final short[] htc0, htc1;
+
+	/**
+	 * 哈夫曼解码时逐层遍历码树，每次读2比特（小值区4比特）。
+	 */
+	public static final int HUFF_TREE = 0;
+
+	/**
+	 * 哈夫曼解码时查表（默认）：用码字的前 LUT_BITS 比特直接查第一级表，码长超过 LUT_BITS 的少数码字再查一次第二级表。
+	 * 查找表由码树生成，解码结果和 {@link #HUFF_TREE} 相同。
+	 */
+	public static final int HUFF_LOOKUP = 1;
+
+	/*
+	 * 第一级查找表的索引位数，必须是偶数（码树每层2比特）。最长的码字19比特，第二级表的索引不超过10比特。
+	 */
+	private static final int LUT_BITS = 10;
+
+	/*
+	 * 查找表，和htbv、htc0、htc1对应。
+	 * 表项大于等于0时和码树的叶结点相同：hlen<<8 | x<<4 | y；小于0时为 -(第二级表的偏移量<<4 | 第二级表的索引位数)。
+	 */
+	private static final int[][] LUT_BV;
+	private static final int[] LUT_C0, LUT_C1;
+
+	/*
+	 * 使用的查找表。HUFF_TREE时为null。
+	 */
+	private int[][] lutbv;
+	private int[] lutc0, lutc1;
+
+	private final int size, extra;	// 环形缓冲区长度和尾部副本的长度
+	private int tail;	// 下一次填入的位置
+	private int filled;	// 缓冲区中已填入的字节数，不超过size
 
 	/**
 	 * 创建一个位流BitStreamMainData对象，位流的缓冲区大小len指定，位流的缓冲区尾部空出的长度由extra指定。
+	 * 哈夫曼解码方式默认为 {@link #HUFF_LOOKUP}，指定系统属性 <code>jmp123.huffman=tree</code> 时为 {@link #HUFF_TREE}。
 	 * 
 	 * @param len
-	 *            缓冲区可访问长度。
+	 *            缓冲区可访问长度，必须是2的幂。
 	 * @param extra
-	 *            缓冲区尾部空出的字节数。
+	 *            缓冲区尾部空出的字节数，不小于一个声道的哈夫曼数据长度(part2_3_length最大为2^12位)加上读位流时预读的字节数。
 	 * @see BitStream #BitStream(int, int)
 	 */
 	public BitStreamMainData(int len, int extra) {
+		this(len, extra, "tree".equals(System.getProperty("jmp123.huffman")) ? HUFF_TREE : HUFF_LOOKUP);
+	}
+
+	/**
+	 * 用指定的哈夫曼解码方式创建位流BitStreamMainData对象。
+	 * 
+	 * @param len
+	 *            缓冲区可访问长度。
+	 * @param extra
+	 *            缓冲区尾部空出的字节数。
+	 * @param huffman
+	 *            哈夫曼解码方式：{@link #HUFF_TREE} 或 {@link #HUFF_LOOKUP}。
+	 */
+	public BitStreamMainData(int len, int extra, int huffman) {
 		super(len, extra);
-		initHuffTable();
+		if (huffman != HUFF_TREE && huffman != HUFF_LOOKUP)
+			throw new IllegalArgumentException("huffman=" + huffman);
+		if ((len & (len - 1)) != 0 || extra > len)
+			throw new IllegalArgumentException("len=" + len + ", extra=" + extra);
+		size = len;
+		this.extra = extra;
+		region = new int[3];
+		if (huffman == HUFF_LOOKUP) {
+			lutbv = LUT_BV;
+			lutc0 = LUT_C0;
+			lutc1 = LUT_C1;
+		}
+	}
+
+	/**
+	 * 向环形缓冲区添加len字节。缓冲区已满时覆盖最早填入的数据。
+	 * 
+	 * @param b
+	 *            源数据。
+	 * @param off
+	 *            源数据偏移量。
+	 * @param len
+	 *            源数据长度，不超过缓冲区长度。
+	 * @return 填充到缓冲区的字节数。
+	 */
+	@Override
+	public int append(byte[] b, int off, int len) {
+		if (len > size)
+			len = size;
+		int n = Math.min(len, size - tail);
+		put(b, off, tail, n);
+		put(b, off + n, 0, len - n);
+		tail = (tail + len) & (size - 1);
+		filled = Math.min(size, filled + len);
+		return len;
+	}
+
+	/*
+	 * 不回绕地填入len字节，同时更新缓冲区尾部的副本。
+	 */
+	private void put(byte[] b, int off, int pos, int len) {
+		System.arraycopy(b, off, bitReservoir, pos, len);
+		if (pos < extra)
+			System.arraycopy(b, off, bitReservoir, size + pos, Math.min(len, extra - pos));
+	}
+
+	/**
+	 * 将读位置设为最后填入的数据之前n字节处，比特指针复位。用于按main_data_begin定位主数据的开始位置。
+	 * 
+	 * @param n
+	 *            字节数，不超过 {@link #getSize()}。
+	 */
+	public void seekBack(int n) {
+		bytePos = (tail - n) & (size - 1);
+		bitPos = 0;
+	}
+
+	/**
+	 * 获取缓冲区已经填入的字节数。
+	 * 
+	 * @return 已填入的字节数，不超过缓冲区长度。
+	 */
+	@Override
+	public int getSize() {
+		return filled;
+	}
+
+	/**
+	 * 清空缓冲区。
+	 */
+	@Override
+	public void reset() {
+		super.reset();
+		tail = filled = 0;
 	}
 
 	/**
@@ -56,8 +183,18 @@ public final class BitStreamMainData extends BitStream {
 	 * @return 576减去rzone区长度。
 	 */
 	public int decodeHuff(Layer3.ChannelInformation ci, int[] hv) {
+		return decodeHuff(ci.part2_3_length - ci.part2_length, ci.big_values, ci.region1Start, ci.region2Start,
+				ci.table_select, ci.count1table_select, hv);
+	}
+
+	/*
+	 * 从当前位置开始解码part3len比特哈夫曼编码的数据，参数和 Layer3.ChannelInformation 的同名变量对应。
+	 */
+	int decodeHuff(int part3len, int bigValues, int region1Start, int region2Start, int[] tableSelect,
+			int count1Table, int[] hv) {
 		int tmp, linbits, maxidx, idx = 0;
 		short[] htab;
+		int[] lut;
 		byte[] b = bitReservoir;
 
 		/*
@@ -66,10 +203,9 @@ public final class BitStreamMainData extends BitStream {
 		 * num: mask剩余的比特数
 		 * part3len: 哈夫曼编码的主数据(main_data)的比特数
 		 */
-		int part3len = ci.part2_3_length - ci.part2_length;
-		int x = ci.region1Start;	// region1
-		int y = ci.region2Start;	// region2
-		int i = ci.big_values << 1;	// bv
+		int x = region1Start;	// region1
+		int y = region2Start;	// region2
+		int i = bigValues << 1;	// bv
 		if(i > 574)
 			i = 574; // 错误的big_value置为0 ?
 		if(x < i) {
@@ -98,8 +234,9 @@ public final class BitStreamMainData extends BitStream {
 		 */
 		for (i = 0; i < 3; i++) {
 			maxidx = region[i];
-			tmp = ci.table_select[i];
+			tmp = tableSelect[i];
 			htab = htbv[tmp];
+			lut = lutbv == null ? null : lutbv[tmp];
 			linbits = lin[tmp];
 			while (idx < maxidx) {
 				if (part3len + num <= 0) { //检测位流是否有错误
@@ -112,11 +249,19 @@ public final class BitStreamMainData extends BitStream {
 					num += 8;
 					part3len -= 8;
 				}
-				tmp = mask;
-				y = htab[tmp >>> 30];
-				while (y < 0) {
-					tmp <<= 2;
-					y = htab[(tmp >>> 30) - y];
+				if (lut != null) {
+					y = lut[mask >>> (32 - LUT_BITS)];
+					if (y < 0) { // 码长超过LUT_BITS，用后续比特查第二级表
+						y = -y;
+						y = lut[(y >> 4) + ((mask << LUT_BITS) >>> (32 - (y & 0xf)))];
+					}
+				} else {
+					tmp = mask;
+					y = htab[tmp >>> 30];
+					while (y < 0) {
+						tmp <<= 2;
+						y = htab[(tmp >>> 30) - y];
+					}
 				}
 				x = y >> 8; // x暂存hlen
 				num -= x;
@@ -164,18 +309,23 @@ public final class BitStreamMainData extends BitStream {
 		/*
 		 * 4. 解码count1区
 		 */
-		htab = (ci.count1table_select == 0) ? htc0 : htc1;
+		htab = (count1Table == 0) ? htc0 : htc1;
+		lut = lutbv == null ? null : (count1Table == 0) ? lutc0 : lutc1;
 		while (idx < 572) {
 			while (num < 10) { // 6(max hlen)+4(signed bit)
 				mask |= (b[bytePos++] & 0xff) << (24 - num);
 				num += 8;
 				part3len -= 8;
 			}
-			tmp = mask;
-			y = htab[tmp >>> 28];
-			while (y < 0) {
-				tmp <<= 4;
-				y = htab[(tmp >>> 28) - y];
+			if (lut != null)
+				y = lut[mask >>> 26];
+			else {
+				tmp = mask;
+				y = htab[tmp >>> 28];
+				while (y < 0) {
+					tmp <<= 4;
+					y = htab[(tmp >>> 28) - y];
+				}
 			}
 
 			x = y >> 8; // hlen
@@ -240,11 +390,98 @@ public final class BitStreamMainData extends BitStream {
 			getBits9(part3len);
 		}
 
+		// 读位置越过缓冲区尾部时折回，下一个声道的数据不超过尾部副本的长度
+		if (bytePos >= size)
+			bytePos -= size;
+
 		return nozeroIndex;
 	}
 
 	//-------------------------------------------------------------------------
-	private void initHuffTable() {
+	/*
+	 * 由码树生成查找表。几个码表号共用同一码树时也共用同一查找表。
+	 */
+	private static int[][] buildLookup(short[][] trees) {
+		int[][] lut = new int[32][];
+		for (int i = 0; i < 32; i++) {
+			for (int j = 0; j < i && lut[i] == null; j++)
+				if (trees[j] == trees[i])
+					lut[i] = lut[j];
+			if (lut[i] == null)
+				lut[i] = buildLookup(trees[i]);
+		}
+		return lut;
+	}
+
+	/*
+	 * 大值区码树的查找表。第一级表1<<LUT_BITS项，用前LUT_BITS比特遍历码树得到；遍历LUT_BITS比特后仍未到达叶结点时，
+	 * 以该结点为根的子树生成一个第二级表，接在查找表的后部。
+	 */
+	private static int[] buildLookup(short[] htab) {
+		int size = 1 << LUT_BITS, len = size;
+		int[] lut = new int[size];
+		int v, w, tmp, n, y, bits;
+		for (v = 0; v < size; v++) {
+			tmp = v << (32 - LUT_BITS);
+			y = htab[tmp >>> 30];
+			for (n = 2; y < 0 && n < LUT_BITS; n += 2) {
+				tmp <<= 2;
+				y = htab[(tmp >>> 30) - y];
+			}
+			if (y >= 0) {
+				lut[v] = y;
+				continue;
+			}
+
+			// 第二级表
+			bits = depth(htab, -y);
+			lut = Arrays.copyOf(lut, len + (1 << bits));
+			for (w = 0; w < 1 << bits; w++) {
+				tmp = w << (32 - bits);
+				n = htab[(tmp >>> 30) - y];
+				while (n < 0) {
+					tmp <<= 2;
+					n = htab[(tmp >>> 30) - n];
+				}
+				lut[len + w] = n;
+			}
+			lut[v] = -(len << 4 | bits);
+			len += 1 << bits;
+		}
+		return lut;
+	}
+
+	/*
+	 * 以htab[base..base+3]为根的子树的深度，单位“比特”。
+	 */
+	private static int depth(short[] htab, int base) {
+		int d = 0;
+		for (int i = base; i < base + 4; i++)
+			if (htab[i] < 0)
+				d = Math.max(d, depth(htab, -htab[i]));
+		return d + 2;
+	}
+
+	/*
+	 * 小值区码树的查找表，最长的码字6比特，用6比特直接查表。
+	 */
+	private static int[] buildCount1Lookup(short[] htab) {
+		int[] lut = new int[64];
+		int tmp, y;
+		for (int v = 0; v < 64; v++) {
+			tmp = v << 26;
+			y = htab[tmp >>> 28];
+			while (y < 0) {
+				tmp <<= 4;
+				y = htab[(tmp >>> 28) - y];
+			}
+			lut[v] = y;
+		}
+		return lut;
+	}
+
+	// 码表和查找表由所有解码器共用，只在加载类时初始化一次
+	static {
 		// 码表 htbvx[]: 16个数组共2752元素
 		short htbv0[] = { 0, 0, 0, 0 };
 
@@ -463,7 +700,6 @@ public final class BitStreamMainData extends BitStream {
 		htc1 = new short[] {	//16
 			1039,1038,1037,1036,1035,1034,1033,1032,1031,1030,1029,1028,1027,1026,1025,1024};
 	
-		region = new int[3];
 		lin = new int[32];
 		htbv = new short[32][];
 		htbv[0] = htbv0; // hlen=0
@@ -500,5 +736,9 @@ public final class BitStreamMainData extends BitStream {
 		lin[29] = 9;
 		lin[30] = 11;
 		lin[31] = 13;
+
+		LUT_BV = buildLookup(htbv);
+		LUT_C0 = buildCount1Lookup(htc0);
+		LUT_C1 = buildCount1Lookup(htc1);
 	}
 }
\ No newline at end of file
@@ -21,6 +21,8 @@
 
 package jmp123.decoder;
 
+import java.util.Arrays;
+
 /**
  * 帧同步及帧头信息解码。
  */
@@ -158,7 +160,7 @@ public final class Header {
 		// 初始化，使可重入
 		sync = false;
 		trackFrames = 0;
-		sideinfosize = tocNumber = tocPer = tocFactor = framecounter = 0;
+		sideinfosize = tocNumber = tocPer = tocFactor = tocFrames = tocBase = framecounter = 0;
 		vbrtoc = null;
 		strBitRate = null;
 		progress = null;
@@ -501,9 +503,13 @@ public final class Header {
 	private StringBuilder vbrinfo;
 	private byte[] vbrtoc;
 	private int tocNumber, tocPer, tocFactor;
+	private int tocFrames;	//VBRI: 每个TOC表项的帧数; Xing: 0
+	private int tocBase;	//TOC第一个表项相对于第一帧帧头的偏移量
 	private String strBitRate;
+	private int encDelay, encPadding;	//LAME标签中的编码器延迟和填充，单位“样本”；没有LAME标签时为-1
 
-	private StringBuilder progress;
+	private byte[] progress;	// 进度条
+	private byte[] progressLine;	// 控制台输出的一行
 	private int progress_index;
 
 	/**
@@ -524,6 +530,34 @@ public final class Header {
 		return framecounter;
 	}
 
+	/**
+	 * 定位后指定当前帧的序号。
+	 * 
+	 * @param frames
+	 *            当前帧的序号，和 {@link #getFrames()} 的返回值含义相同：定位到文件的第一帧时为1。
+	 */
+	public void setFrames(int frames) {
+		framecounter = frames;
+	}
+
+	/**
+	 * 获取LAME标签中的编码器延迟，即编码器在音乐数据之前补的样本数。
+	 * 
+	 * @return 每个声道的样本数。没有LAME标签时返回-1。
+	 */
+	public int getEncoderDelay() {
+		return encDelay;
+	}
+
+	/**
+	 * 获取LAME标签中编码器在音乐数据之后补的样本数，最后一帧不足一帧时补齐。
+	 * 
+	 * @return 每个声道的样本数。没有LAME标签时返回-1。
+	 */
+	public int getEncoderPadding() {
+		return encPadding;
+	}
+
 	/**
 	 * 获取当前文件的音轨的总帧数。
 	 * 
@@ -574,6 +608,7 @@ public final class Header {
 	 */
 	private void parseVBR(byte[] b, int off) {
 		vbrinfo = null;
+		encDelay = encPadding = -1;
 		final int maxOff = off + framesize - 4;
 		if (maxOff >= b.length)
 			return;
@@ -701,7 +736,14 @@ public final class Header {
 		}
 
 		//Encoder delays: 3-byte
+		//前12位是编码器在开头补的样本数(encoder delay)，后12位是在末尾补的样本数(padding)
+		encDelay = ((b[off] & 0xff) << 4) | ((b[off + 1] & 0xff) >> 4);
+		encPadding = ((b[off + 1] & 0xf) << 8) | (b[off + 2] & 0xff);
 		off += 3;
+		vbrinfo.append("\nencoder delay: ");
+		vbrinfo.append(encDelay);
+		vbrinfo.append(", padding: ");
+		vbrinfo.append(encPadding);
 
 		//Misc: 1-byte
 		off++;
@@ -780,6 +822,8 @@ public final class Header {
 		int toc_frames = byte2short(b, off + 24); // 每个TOC表项的帧数
 		vbrinfo.append("\n   toc frames: ");
 		vbrinfo.append(toc_frames);
+		tocFrames = Math.max(toc_frames, 1);
+		tocBase = framesize; // VBRI的表项从VBRI帧之后开始计数
 
 		off += 26;
 		return off;
@@ -821,9 +865,83 @@ public final class Header {
 		tocNumber = 100;//TOC共100个表项
 		tocPer = 1;		//每个表项1字节
 		tocFactor = 1;
+		tocFrames = 0;
+		tocBase = 0;
 		return off;
 	}
 
+	/**
+	 * 获取VBR标签（Xing/Info或VBRI）中是否有可用于定位的目录表（TOC）。
+	 * 
+	 * @return 有TOC返回true。
+	 */
+	public boolean hasTOC() {
+		return vbrtoc != null && trackLength > 0;
+	}
+
+	/**
+	 * 计算播放进度对应的位置。有TOC时查TOC并在相邻表项之间线性插值，否则按固定位率计算。
+	 * 在第一帧完成帧同步后调用。
+	 * 
+	 * @param percent
+	 *            播放进度，范围0..1。
+	 * @return 相对于第一帧（VBR标签所在的帧）帧头的偏移量，单位“字节”。从该位置调用 {@link #syncFrame(byte[], int, int)}
+	 *         查找帧同步字。
+	 */
+	public long getSeekOffset(float percent) {
+		percent = percent < 0 ? 0 : (percent > 1 ? 1 : percent);
+		if (!hasTOC())
+			return (long) (percent * trackLength);
+
+		if (tocFrames == 0) {
+			// Xing: 表项i为进度i%处的位置占trackLength的比例(单位1/256)
+			float p = percent * 100;
+			int a = Math.min((int) p, 99);
+			float fa = vbrtoc[a] & 0xff;
+			float fb = a < 99 ? vbrtoc[a + 1] & 0xff : 256;
+			return (long) ((fa + (fb - fa) * (p - a)) / 256 * trackLength);
+		}
+
+		// VBRI: 表项i为第i个tocFrames帧的字节数
+		float f = percent * trackFrames / tocFrames;
+		long pos = tocBase;
+		for (int i = 0; i < tocNumber; i++) {
+			int size = tocEntry(i);
+			if (i + 1 > f)
+				return pos + (long) (size * (f - i));
+			pos += size;
+		}
+		return pos;
+	}
+
+	/**
+	 * 计算播放时间对应的位置。
+	 * 
+	 * @param seconds
+	 *            播放时间，单位“秒”。
+	 * @return 相对于第一帧帧头的偏移量，单位“字节”。
+	 * @see #getSeekOffset(float)
+	 */
+	public long getTimeOffset(float seconds) {
+		return duration > 0 ? getSeekOffset(seconds / duration) : 0;
+	}
+
+	private int tocEntry(int i) {
+		int v = 0;
+		for (int k = i * tocPer; k < (i + 1) * tocPer; k++)
+			v = (v << 8) | (vbrtoc[k] & 0xff);
+		return v * tocFactor;
+	}
+
+	/**
+	 * 获取帧头（含CRC）的长度。
+	 * 
+	 * @return 4或6，单位“字节”。
+	 */
+	public int getHeaderSize() {
+		return framesize - sideinfosize - maindatasize;
+	}
+
 	/**
 	 * 在控制台打印帧头信息（的一部分）。
 	 */
@@ -871,13 +989,53 @@ public final class Header {
 		int m = (int)(t / 60);
 		float s = t - 60 * m;
 		int i = ((int)(100f * framecounter / trackFrames + 0.5) << 2) / 10;
-		if(progress == null)
-			progress = new StringBuilder(">----------------------------------------");
+		if(progress == null) {
+			progress = new byte[41];
+			progress[0] = '>';
+			Arrays.fill(progress, 1, 41, (byte) '-');
+			progressLine = new byte[80];
+		}
 		if(i == progress_index) {
-			progress.replace(i-1, i+1, "=>");
+			progress[i - 1] = '=';
+			progress[i] = '>';
 			progress_index++;
 		}
-		System.out.printf("\r#%-5d [%-41s] %02d:%05.2f ",framecounter, progress, m, s);
+
+		// 和 printf("\r#%-5d [%-41s] %02d:%05.2f ") 相同的格式。每次播放进度都要打印，不用printf以免分配内存
+		byte[] b = progressLine;
+		b[0] = '\r';
+		b[1] = '#';
+		int pos = putDigits(b, 2, framecounter, 1);
+		while (pos < 7)
+			b[pos++] = ' ';
+		b[pos++] = ' ';
+		b[pos++] = '[';
+		System.arraycopy(progress, 0, b, pos, 41);
+		pos += 41;
+		b[pos++] = ']';
+		b[pos++] = ' ';
+		pos = putDigits(b, pos, m, 2);
+		b[pos++] = ':';
+		i = (int) (s * 100 + 0.5f);
+		pos = putDigits(b, pos, i / 100, 2);
+		b[pos++] = '.';
+		pos = putDigits(b, pos, i % 100, 2);
+		b[pos++] = ' ';
+		System.out.write(b, 0, pos);
+	}
+
+	/*
+	 * 在b[pos]写入非负整数v的十进制数字，不足width位时左边补0，返回写入后的位置。
+	 */
+	private static int putDigits(byte[] b, int pos, int v, int width) {
+		int n = 1;
+		for (int t = v; t >= 10; t /= 10)
+			n++;
+		if (n < width)
+			n = width;
+		for (int i = pos + n - 1; i >= pos; i--, v /= 10)
+			b[i] = (byte) ('0' + v % 10);
+		return pos + n;
 	}
 
 }
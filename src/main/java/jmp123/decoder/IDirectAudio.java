@@ -0,0 +1,81 @@
+/*
+ * IDirectAudio.java -- 直接写入调用者缓冲区的音频输出接口
+ */
+package jmp123.decoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 由调用者提供PCM缓冲区的音频输出接口。多相合成滤波的输出直接写入调用者的 {@link ByteBuffer}（可以是直接缓冲区或内存映射的文件），
+ * 或者以 <code>short[]</code>/<code>float[]</code> 的形式交给调用者，不再经过 {@link IAudio#write(byte[], int)} 的字节数组。
+ * <p>
+ * 样本格式由 {@link #getSampleFormat()} 指定：16位有符号整数，或者32位浮点数。浮点样本的范围是[-1.0, 1.0)，不限幅，供下游混音使用。
+ * 多声道的样本交替排列。
+ * <p>
+ * 音频输出对象实现了这个接口时，{@link AudioBuffer} 在构造时调用 {@link #getBuffer(int)}：
+ * <ul>
+ * <li>返回一个ByteBuffer，PCM数据从它的position开始按它的字节顺序写入，写满后调用 {@link #write(ByteBuffer, int)}，再调用
+ * {@link #getBuffer(int)} 获取下一个缓冲区；</li>
+ * <li>返回null，PCM数据写入解码器内部的数组，写满后调用 {@link #write(short[], int)} 或 {@link #write(float[], int)}。</li>
+ * </ul>
+ */
+public interface IDirectAudio extends IAudio {
+	/**
+	 * 16位有符号整数样本。
+	 */
+	public static final int FORMAT_PCM16 = 0;
+
+	/**
+	 * 32位浮点样本，范围[-1.0, 1.0)。
+	 */
+	public static final int FORMAT_FLOAT = 1;
+
+	/**
+	 * 获取样本格式。
+	 *
+	 * @return {@link #FORMAT_PCM16} 或 {@link #FORMAT_FLOAT}。
+	 */
+	public int getSampleFormat();
+
+	/**
+	 * 获取用于存放下一段PCM数据的缓冲区。
+	 *
+	 * @param size
+	 *            下一段PCM数据的长度，单位“字节”。返回的缓冲区从position开始至少要有size字节的剩余空间。
+	 * @return 调用者提供的缓冲区。返回null表示使用数组形式的输出。
+	 */
+	public ByteBuffer getBuffer(int size);
+
+	/**
+	 * 缓冲区中从position开始的size字节PCM数据已写好。解码器不修改缓冲区的position和limit，由实现者自行处理。
+	 *
+	 * @param buf
+	 *            {@link #getBuffer(int)} 返回的缓冲区。
+	 * @param size
+	 *            PCM数据的长度，单位“字节”。
+	 * @return 写入的字节数。
+	 */
+	public int write(ByteBuffer buf, int size);
+
+	/**
+	 * 写入16位整数样本。数组属于解码器，方法返回后会被覆盖。
+	 *
+	 * @param b
+	 *            样本。
+	 * @param len
+	 *            样本数（各声道样本数之和）。
+	 * @return 写入的样本数。
+	 */
+	public int write(short[] b, int len);
+
+	/**
+	 * 写入浮点样本。数组属于解码器，方法返回后会被覆盖。
+	 *
+	 * @param b
+	 *            样本。
+	 * @param len
+	 *            样本数（各声道样本数之和）。
+	 * @return 写入的样本数。
+	 */
+	public int write(float[] b, int len);
+}
@@ -8,6 +8,8 @@ package jmp123.decoder;
 public abstract class Layer123 {
 	protected Synthesis filter;
 	private AudioBuffer audioBuf;
+	private boolean muted;
+	private final int format; // 创建时的版本、层、采样率和声道数，见 accepts(Header)
 
 	/**
 	 * 创建一个指定头信息和音频输出的帧解码器。
@@ -20,6 +22,36 @@ public abstract class Layer123 {
 	public Layer123(Header h, IAudio audio) {
 		audioBuf = new AudioBuffer(audio, 4 * h.getPcmSize());
 		filter = new Synthesis(audioBuf, h.getChannels());
+		format = format(h);
+	}
+
+	private static int format(Header h) {
+		return h.getVersion() << 8 | h.getLayer() << 4 | h.getSamplingFrequency() << 2 | h.getChannels();
+	}
+
+	/**
+	 * 判断能否用此解码器解码另一个文件。解码器的缓冲区和查找表由创建时的帧头信息决定，MPEG版本、层、采样率和声道数都相同才能复用。
+	 * PCM数据直接写入音频输出对象提供的ByteBuffer时不复用，音频输出对象重新打开后原来的缓冲区可能已失效。
+	 * 
+	 * @param h
+	 *            另一个文件第一帧的帧头信息。
+	 * @return 能复用返回true。
+	 * @see #restart()
+	 */
+	public boolean accepts(Header h) {
+		return format(h) == format && audioBuf.mode != AudioBuffer.BUFFER_PCM16
+				&& audioBuf.mode != AudioBuffer.BUFFER_FLOAT;
+	}
+
+	/**
+	 * 复用此解码器解码另一个文件。丢弃全部跨帧的解码状态和音频输出缓冲区中的数据，此后解码的结果和新创建的解码器相同，
+	 * 但不必重新分配缓冲区。应在 {@link #close()} 之后调用，调用者应先用 {@link #accepts(Header)} 判断能否复用。
+	 */
+	public void restart() {
+		reset();
+		filter.reset();
+		audioBuf.clear();
+		muted = false;
 	}
 
 	/**
@@ -40,7 +72,85 @@ public abstract class Layer123 {
 	 * @see AudioBuffer#output()
 	 */
 	public void outputAudio() {
-		audioBuf.output();
+		if (!muted)
+			audioBuf.output();
+	}
+
+	/**
+	 * 解码一帧但不输出PCM数据。定位或快进后用这个方法解码落点之前的几帧，重建位流缓冲区（bit reservoir）、
+	 * IMDCT重叠相加和多相合成滤波FIFO等跨帧的解码状态，使落点之后的输出没有杂音。
+	 * 
+	 * @param b
+	 *            源数据缓冲区。
+	 * @param off
+	 *            开始解码字节处的偏移量。
+	 * @return 源数据缓冲区新的偏移量。
+	 * @see #decodeFrame(byte[], int)
+	 */
+	public int primeFrame(byte[] b, int off) {
+		audioBuf.mark();
+		muted = true;
+		try {
+			return decodeFrame(b, off);
+		} finally {
+			muted = false;
+			audioBuf.rewind();
+		}
+	}
+
+	/**
+	 * 将另一个缓冲区中的一帧PCM数据追加到音频输出缓冲区。用于多相合成滤波不直接写音频输出缓冲区的解码器。
+	 * 
+	 * @param ab
+	 *            存放一帧PCM数据的缓冲区。
+	 * @see AudioBuffer#output()
+	 */
+	protected void outputAudio(AudioBuffer ab) {
+		audioBuf.append(ab);
+	}
+
+	/**
+	 * 将另一个缓冲区中一帧PCM数据的一段追加到音频输出缓冲区，其余数据被丢弃。
+	 * 
+	 * @param ab
+	 *            存放一帧PCM数据的缓冲区。
+	 * @param from
+	 *            第一个输出的样本的序号，各声道的样本交替排列、一起计数。
+	 * @param to
+	 *            最后一个输出的样本之后的序号。
+	 * @see AudioBuffer#append(AudioBuffer, int, int)
+	 */
+	protected void outputAudio(AudioBuffer ab, int from, int to) {
+		audioBuf.append(ab, from, to);
+	}
+
+	/**
+	 * 创建和音频输出缓冲区格式相同、存放一帧PCM数据的缓冲区，用 {@link #outputAudio(AudioBuffer)} 输出。
+	 * 
+	 * @param size
+	 *            缓冲区长度，单位“字节”，按16位样本计算。
+	 * @return 新的缓冲区。
+	 */
+	AudioBuffer newFrameBuffer(int size) {
+		return audioBuf.newFrameBuffer(size);
+	}
+
+	/**
+	 * 定位（跳到文件的另一位置）后调用，丢弃和前面的帧相关的解码状态。
+	 */
+	public void reset() {
+	}
+
+	/**
+	 * 指定无缝播放时输出的样本范围，范围之外的样本被丢弃。默认不丢弃样本。只有 Layer Ⅲ 文件的LAME标签记录了编码器延迟和填充，
+	 * 其它层的解码器忽略这个设置。
+	 * 
+	 * @param start
+	 *            第一个输出的样本在文件中的序号，每个声道单独计数，文件第一帧的第一个样本为0。
+	 * @param end
+	 *            最后一个输出的样本之后的序号。
+	 */
+	public void setTrim(long start, long end) {
 	}
 
 	/**
@@ -49,8 +159,19 @@ public abstract class Layer123 {
 	 * @see AudioBuffer#flush()
 	 */
 	public void close() {
+		close(true);
+	}
+
+	/**
+	 * 音频输出缓冲区的全部内容刷向音频输出对象并将缓冲区偏移量复位。
+	 * 
+	 * @param drain
+	 *            是否等待音频输出对象播放完已写入的数据。无缝播放时指定为false。
+	 * @see AudioBuffer#flush(boolean)
+	 */
+	public void close(boolean drain) {
 		// System.out.println("maxPCM=" + filter.getMaxPCM());
-		audioBuf.flush();
+		audioBuf.flush(drain);
 	}
 
 }
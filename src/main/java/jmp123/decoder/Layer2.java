@@ -42,6 +42,7 @@ public final class Layer2 extends Layer123 {
 	private byte[] group;			//[17]
 	private int[] samplecode;		//[3]
 	private float[][][] syin;		//[2][3][32]
+	private int bitrateIndex;		// 创建时的码率，决定aidx和sblimit
 
 	// Layer1也用到factor[]
 	// ISO/IEC 11172-3 Table 3-B.1
@@ -146,6 +147,7 @@ public final class Layer2 extends Layer123 {
 		syin = new float[2][3][32];
 
 		//aidx,sblimit...
+		bitrateIndex = header.getBitrateIndex();
 		if(header.getVersion() == Header.MPEG2) {
 			aidx = 4;
 			sblimit = 30;
@@ -158,6 +160,14 @@ public final class Layer2 extends Layer123 {
 		}
 	}
 
+	/**
+	 * 子带数（sblimit）由创建时的码率决定，码率也相同才能复用。
+	 * @see Layer123#accepts(Header)
+	 */
+	public boolean accepts(Header h) {
+		return super.accepts(h) && h.getBitrateIndex() == bitrateIndex;
+	}
+
 	private void requantization(int index, int gr, int ch, int sb) {
 		int nb, s, c;
 		int nlevels = cq_steps[index];
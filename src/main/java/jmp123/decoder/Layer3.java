@@ -20,6 +20,10 @@
 */
 package jmp123.decoder;
 
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * 解码Layer Ⅲ。
  */
@@ -36,7 +40,36 @@ public final class Layer3 extends Layer123 {
 	private int[] sfbIndexShort;
 	private boolean isMPEG1;
 	private SynthesisConcurrent filterCh0, filterCh1;
-	private int semaphore;
+
+	/**
+	 * 默认的环形队列深度。
+	 */
+	public static final int DEFAULT_DEPTH = 4;
+
+	/**
+	 * IMDCT使用原来的实现（参考实现）：原地计算，结果写回数组后再读出。
+	 */
+	public static final int IMDCT_REFERENCE = 0;
+
+	/**
+	 * IMDCT使用快速实现（默认）：运算和参考实现相同，输出逐位相同，中间结果保存在局部变量中，加窗和重叠相加在同一次遍历中完成。
+	 */
+	public static final int IMDCT_FAST = 1;
+
+	/*
+	 * IMDCT的实现，IMDCT_REFERENCE或IMDCT_FAST。指定系统属性 jmp123.imdct=reference 时为IMDCT_REFERENCE。
+	 */
+	private final int imdct;
+	private int depth;
+	private AudioBuffer[] pcmRing; // [depth]，每帧多相合成滤波输出的PCM
+	private long frames, outputFrames; // 已提交多相合成滤波的帧数、已输出的帧数
+	private long firstFrame; // 复用解码器时frames的值，帧数统计从这一帧开始
+	private long[] ringFrame; // [depth]，队列中每一帧在文件中的序号
+	private boolean[] ringMuted; // [depth]，队列中每一帧是否是预解码的帧，预解码的帧不输出
+	private long trimStart, trimEnd = Long.MAX_VALUE; // 无缝播放时输出的样本范围，见 setTrim
+	private boolean priming;
+	private volatile Thread waiter;
+	private long stalls, stallNanos, occupancySum;
 
 	/**
 	 * 创建一个指定头信息和音频输出的 Layer Ⅲ 帧解码器。
@@ -47,189 +80,151 @@ public final class Layer3 extends Layer123 {
 	 *            音频输出对象。
 	 */
 	public Layer3(Header h, IAudio audio) {
+		this(h, audio, SynthesisConcurrent.sharedPool(), DEFAULT_DEPTH);
+	}
+
+	/**
+	 * 创建一个指定头信息、音频输出和多相合成滤波执行方式的 Layer Ⅲ 帧解码器。
+	 * 
+	 * @param h
+	 *            已经解码的帧头信息。
+	 * @param audio
+	 *            音频输出对象。
+	 * @param executor
+	 *            执行多相合成滤波的 {@link Executor}，例如 {@link SynthesisConcurrent#sharedPool()}、
+	 *            {@link SynthesisConcurrent#virtualThreads()} 或 {@link SynthesisConcurrent#INLINE}。
+	 * @param depth
+	 *            解码和多相合成滤波之间环形队列的深度，即解码最多可以领先多相合成滤波的帧数，不小于2。
+	 */
+	public Layer3(Header h, IAudio audio, Executor executor, int depth) {
 		super(h, audio);
 		header = h;
+		if (depth < 2)
+			throw new IllegalArgumentException("depth < 2");
+		this.depth = depth;
+		imdct = "reference".equals(System.getProperty("jmp123.imdct")) ? IMDCT_REFERENCE : IMDCT_FAST;
 
 		isMPEG1 = header.getVersion() == Header.MPEG1 ? true : false;
 		granules = isMPEG1 ? 2 : 1;
 		channels = header.getChannels();
 
-		semaphore = channels;
-		maindataStream = new BitStreamMainData(4096, 512);
+		maindataStream = new BitStreamMainData(4096, 1024);
 		scfsi = new int[channels];
 		bsSI = new BitStream(0, 0);
 		scalefacLong = new int[channels][23];
 		scalefacShort = new int[channels][3 * 13];
 		hv = new int[32 * 18 + 4];
-		widthLong = new int[22];
-		widthShort = new int[13];
 		channelInfo = new ChannelInformation[granules][channels];
 		for(int gr = 0; gr < granules; gr++)
 			for(int ch = 0; ch < channels; ch++)
 				channelInfo[gr][ch] = new ChannelInformation();
 
-		filterCh0 = new SynthesisConcurrent(this, 0); //ch=0
-		new Thread(filterCh0, "synthesis_left").start();
-		xrch0 = filterCh0.getBuffer();
+		filterCh0 = new SynthesisConcurrent(this, 0, executor, depth); //ch=0
 		preBlckCh0 = new float[32 * 18];
 		if (channels == 2) {
-			filterCh1 = new SynthesisConcurrent(this, 1); //ch=1
-			new Thread(filterCh1, "synthesis_right").start();
-			xrch1 = filterCh1.getBuffer();
+			filterCh1 = new SynthesisConcurrent(this, 1, executor, depth); //ch=1
 			preBlckCh1 = new float[32*18];
 		}
-
-		int i;
-
-		// 用于查表求 v^(4/3)，v是经哈夫曼解码出的一个(正)值，该值的范围是0..8191
-		floatPowIS = new float[8207];
-		for (i = 0; i < 8207; i++)
-			floatPowIS[i] = (float) Math.pow(i, 4.0 / 3.0);
-
-		// 用于查表求 2^(-0.25 * i)
-		// 按公式短块时i最大值: 210 - 0   + 8 * 7 + 4 * 15 + 2 = 328
-		// 长块或短块时i最小值: 210 - 255 + 0     + 0      + 0 = -45
-		// 查表法时下标范围为0..328+45.
-		floatPow2 = new float[328 + 46];
-		for (i = 0; i < 374; i++)
-			floatPow2[i] = (float) Math.pow(2.0, -0.25 * (i - 45));
+		pcmRing = new AudioBuffer[depth];
+		ringFrame = new long[depth];
+		ringMuted = new boolean[depth];
+		for (int k = 0; k < depth; k++)
+			pcmRing[k] = newFrameBuffer(h.getPcmSize());
 
 		//---------------------------------------------------------------------
 		//待解码文件的不同特征用到不同的变量.初始化:
 		//---------------------------------------------------------------------
 		int sfreq = header.getSamplingFrequency();
 		sfreq += isMPEG1 ? 0 : ((header.getVersion() == Header.MPEG2) ? 3 : 6);
+		sfbIndexLong = SFB_INDEX_LONG[sfreq];
+		sfbIndexShort = SFB_INDEX_SHORT[sfreq];
+		widthLong = WIDTH_LONG[sfreq];
+		widthShort = WIDTH_SHORT[sfreq];
+		bandWidthShort = BAND_WIDTH_SHORT[sfreq];
+		bandWidthMixed = BAND_WIDTH_MIXED[sfreq];
+	}
 
-		// ANNEX B,Table 3-B.8. Layer III scalefactor bands
-		switch (sfreq) {
-		case 0:
-			// MPEG-1, sampling_frequency=0, 44.1kHz
-			sfbIndexLong = new int[] { 0, 4, 8, 12, 16, 20, 24, 30, 36, 44,
-					52, 62, 74, 90, 110, 134, 162, 196, 238, 288, 342, 418, 576 };
-			sfbIndexShort = new int[] { 0, 4, 8, 12, 16, 22, 30, 40, 52, 66,
-					84, 106, 136, 192 };
-			break;
-		case 1:
-			// MPEG-1, sampling_frequency=1, 48kHz
-			sfbIndexLong = new int[] { 0, 4, 8, 12, 16, 20, 24, 30, 36, 42,
-					50, 60, 72, 88, 106, 128, 156, 190, 230, 276, 330, 384, 576 };
-			sfbIndexShort = new int[] { 0, 4, 8, 12, 16, 22, 28, 38, 50, 64,
-					80, 100, 126, 192 };
-			break;
-		case 2:
-			// MPEG-1, sampling_frequency=2, 32kHz
-			sfbIndexLong = new int[] { 0, 4, 8, 12, 16, 20, 24, 30, 36, 44,
-					54, 66, 82, 102, 126, 156, 194, 240, 296, 364, 448, 550, 576 };
-			sfbIndexShort = new int[] { 0, 4, 8, 12, 16, 22, 30, 42, 58, 78,
-					104, 138, 180, 192 };
-			break;
-
-		case 3:
-			// MPEG-2, sampling_frequency=0, 22.05kHz
-			sfbIndexLong = new int[] { 0, 6, 12, 18, 24, 30, 36, 44, 54, 66,
-					80, 96, 116, 140, 168, 200, 238, 284, 336, 396, 464, 522, 576 };
-			sfbIndexShort = new int[] { 0, 4, 8, 12, 18, 24, 32, 42, 56, 74,
-					100, 132, 174, 192 };
-			break;
-		case 4:
-			// MPEG-2, sampling_frequency=1, 24kHz
-			sfbIndexLong = new int[] { 0, 6, 12, 18, 24, 30, 36, 44, 54, 66,
-					80, 96, 114, 136, 162, 194, 232, 278, 330, 394, 464, 540, 576 };
-			sfbIndexShort = new int[] { 0, 4, 8, 12, 18, 26, 36, 48, 62, 80,
-					104, 136, 180, 192 };
-			break;
-		case 5:
-			// MPEG-2, sampling_frequency=2, 16kHz
-			sfbIndexLong = new int[] { 0, 6, 12, 18, 24, 30, 36, 44, 54, 66,
-					80, 96, 116, 140, 168, 200, 238, 284, 336, 396, 464, 522, 576 };
-			sfbIndexShort = new int[] { 0, 4, 8, 12, 18, 26, 36, 48, 62, 80,
-					104, 134, 174, 192 };
-			break;
-		case 6:
-			// MPEG-2.5, sampling_frequency=0, 11.025kHz
-			sfbIndexLong = new int[] { 0, 6, 12, 18, 24, 30, 36, 44, 54, 66,
-					80, 96, 116, 140, 168, 200, 238, 284, 336, 396, 464, 522, 576 };
-			sfbIndexShort = new int[] { 0, 4, 8, 12, 18, 26, 36, 48, 62, 80,
-					104, 134, 174, 192 };
-			break;
-		case 7:
-			// MPEG-2.5, sampling_frequency=1, 12kHz
-			sfbIndexLong = new int[] { 0, 6, 12, 18, 24, 30, 36, 44, 54, 66,
-					80, 96, 116, 140, 168, 200, 238, 284, 336, 396, 464, 522, 576 };
-			sfbIndexShort = new int[] { 0, 4, 8, 12, 18, 26, 36, 48, 62, 80,
-					104, 134, 174, 192 };
-			break;
-		case 8:
-			// MPEG-2.5, sampling_frequency=2, 8kHz
-			sfbIndexLong = new int[] { 0, 12, 24, 36, 48, 60, 72, 88, 108, 132,
-					160, 192, 232, 280, 336, 400, 476, 566, 568, 570, 572, 574, 576 };
-			sfbIndexShort = new int[] { 0, 8, 16, 24, 36, 52, 72, 96, 124,
-					160, 162, 164, 166, 192 };
-			break;
-		}
-		for (i = 0; i < 22; i++)
-			widthLong[i] = sfbIndexLong[i + 1] - sfbIndexLong[i];
-		for (i = 0; i < 13; i++)
-			widthShort[i] = sfbIndexShort[i + 1] - sfbIndexShort[i];
-		//-----------------------------------------------------------------
-		if (isMPEG1) {
-			// MPEG-1, intensity_stereo
-			is_coef = new float[] { 0.0f, 0.211324865f, 0.366025404f, 0.5f,
-					0.633974596f, 0.788675135f, 1.0f };
-		} else {
-			// MPEG-2, intensity_stereo
-			lsf_is_coef = new float[][] {
-					{ 0.840896415f, 0.707106781f, 0.594603558f, 0.5f, 0.420448208f,
-						0.353553391f, 0.297301779f, 0.25f, 0.210224104f, 0.176776695f,
-						0.148650889f, 0.125f, 0.105112052f,	0.088388348f, 0.074325445f },
-					{ 0.707106781f, 0.5f, 0.353553391f, 0.25f, 0.176776695f, 0.125f,
-						0.088388348f, 0.0625f, 0.044194174f, 0.03125f, 0.022097087f,
-						0.015625f, 0.011048543f, 0.0078125f, 0.005524272f } };
-			
-			i_slen2 = new int[256];		 // MPEG-2 slen for intensity_stereo
-			n_slen2 = new int[512];		 // MPEG-2 slen for normal mode
-			nr_of_sfb = new byte[][][] {
-					// ISO/IEC 13818-3 subclause 2.4.3.2 nr_of_sfbx x=1..4
-					{ { 6, 5, 5, 5 }, { 6, 5, 7, 3 }, { 11, 10, 0, 0 },
-							{ 7, 7, 7, 0 }, { 6, 6, 6, 3 }, { 8, 8, 5, 0 } },
-					{ { 9, 9, 9, 9 }, { 9, 9, 12, 6 }, { 18, 18, 0, 0 },
-							{ 12, 12, 12, 0 }, { 12, 9, 9, 6 },	{ 15, 12, 9, 0 } },
-					{ { 6, 9, 9, 9 }, { 6, 9, 12, 6 }, { 15, 18, 0, 0 },
-							{ 6, 15, 12, 0 }, { 6, 12, 9, 6 }, { 6, 18, 9, 0 } } };
-
-			// ISO/IEC 13818-3 subclause 2.4.3.2 slenx, x=1..4
-			int j, k, l, n;
-			for (i = 0; i < 5; i++)
-				for (j = 0; j < 6; j++)
-					for (k = 0; k < 6; k++) {
-						n = k + j * 6 + i * 36;
-						i_slen2[n] = i | (j << 3) | (k << 6) | (3 << 12);
-					}
-			for (i = 0; i < 4; i++)
-				for (j = 0; j < 4; j++)
-					for (k = 0; k < 4; k++) {
-						n = k + (j << 2) + (i << 4);
-						i_slen2[n + 180] = i | (j << 3) | (k << 6) | (4 << 12);
-					}
-			for (i = 0; i < 4; i++)
-				for (j = 0; j < 3; j++) {
-					n = j + i * 3;
-					i_slen2[n + 244] = i | (j << 3) | (5 << 12);
-					n_slen2[n + 500] = i | (j << 3) | (2 << 12) | (1 << 15);
-				}
-			for (i = 0; i < 5; i++)
-				for (j = 0; j < 5; j++)
-					for (k = 0; k < 4; k++)
-						for (l = 0; l < 4; l++) {
-							n = l + (k << 2) + (j << 4) + i * 80;
-							n_slen2[n] = i | (j << 3) | (k << 6) | (l << 9);
-						}
-			for (i = 0; i < 5; i++)
-				for (j = 0; j < 5; j++)
-					for (k = 0; k < 4; k++) {
-						n = k + (j << 2) + i * 20;
-						n_slen2[n + 400] = i | (j << 3) | (k << 6) | (1 << 12);
-					}
+	/*
+	 * ANNEX B,Table 3-B.8. Layer III scalefactor bands，下标为sfreq：MPEG-1 0..2，MPEG-2 3..5，MPEG-2.5 6..8。
+	 * 以下各查找表由所有解码器共用，只在加载类时初始化一次。
+	 */
+	private static final int[][] SFB_INDEX_LONG = {
+		// MPEG-1, sampling_frequency=0, 44.1kHz
+		{ 0, 4, 8, 12, 16, 20, 24, 30, 36, 44,
+				52, 62, 74, 90, 110, 134, 162, 196, 238, 288, 342, 418, 576 },
+		// MPEG-1, sampling_frequency=1, 48kHz
+		{ 0, 4, 8, 12, 16, 20, 24, 30, 36, 42,
+				50, 60, 72, 88, 106, 128, 156, 190, 230, 276, 330, 384, 576 },
+		// MPEG-1, sampling_frequency=2, 32kHz
+		{ 0, 4, 8, 12, 16, 20, 24, 30, 36, 44,
+				54, 66, 82, 102, 126, 156, 194, 240, 296, 364, 448, 550, 576 },
+		// MPEG-2, sampling_frequency=0, 22.05kHz
+		{ 0, 6, 12, 18, 24, 30, 36, 44, 54, 66,
+				80, 96, 116, 140, 168, 200, 238, 284, 336, 396, 464, 522, 576 },
+		// MPEG-2, sampling_frequency=1, 24kHz
+		{ 0, 6, 12, 18, 24, 30, 36, 44, 54, 66,
+				80, 96, 114, 136, 162, 194, 232, 278, 330, 394, 464, 540, 576 },
+		// MPEG-2, sampling_frequency=2, 16kHz
+		{ 0, 6, 12, 18, 24, 30, 36, 44, 54, 66,
+				80, 96, 116, 140, 168, 200, 238, 284, 336, 396, 464, 522, 576 },
+		// MPEG-2.5, sampling_frequency=0, 11.025kHz
+		{ 0, 6, 12, 18, 24, 30, 36, 44, 54, 66,
+				80, 96, 116, 140, 168, 200, 238, 284, 336, 396, 464, 522, 576 },
+		// MPEG-2.5, sampling_frequency=1, 12kHz
+		{ 0, 6, 12, 18, 24, 30, 36, 44, 54, 66,
+				80, 96, 116, 140, 168, 200, 238, 284, 336, 396, 464, 522, 576 },
+		// MPEG-2.5, sampling_frequency=2, 8kHz
+		{ 0, 12, 24, 36, 48, 60, 72, 88, 108, 132,
+				160, 192, 232, 280, 336, 400, 476, 566, 568, 570, 572, 574, 576 },
+	};
+	private static final int[][] SFB_INDEX_SHORT = {
+		// MPEG-1, sampling_frequency=0, 44.1kHz
+		{ 0, 4, 8, 12, 16, 22, 30, 40, 52, 66,
+				84, 106, 136, 192 },
+		// MPEG-1, sampling_frequency=1, 48kHz
+		{ 0, 4, 8, 12, 16, 22, 28, 38, 50, 64,
+				80, 100, 126, 192 },
+		// MPEG-1, sampling_frequency=2, 32kHz
+		{ 0, 4, 8, 12, 16, 22, 30, 42, 58, 78,
+				104, 138, 180, 192 },
+		// MPEG-2, sampling_frequency=0, 22.05kHz
+		{ 0, 4, 8, 12, 18, 24, 32, 42, 56, 74,
+				100, 132, 174, 192 },
+		// MPEG-2, sampling_frequency=1, 24kHz
+		{ 0, 4, 8, 12, 18, 26, 36, 48, 62, 80,
+				104, 136, 180, 192 },
+		// MPEG-2, sampling_frequency=2, 16kHz
+		{ 0, 4, 8, 12, 18, 26, 36, 48, 62, 80,
+				104, 134, 174, 192 },
+		// MPEG-2.5, sampling_frequency=0, 11.025kHz
+		{ 0, 4, 8, 12, 18, 26, 36, 48, 62, 80,
+				104, 134, 174, 192 },
+		// MPEG-2.5, sampling_frequency=1, 12kHz
+		{ 0, 4, 8, 12, 18, 26, 36, 48, 62, 80,
+				104, 134, 174, 192 },
+		// MPEG-2.5, sampling_frequency=2, 8kHz
+		{ 0, 8, 16, 24, 36, 52, 72, 96, 124,
+				160, 162, 164, 166, 192 },
+	};
+	static final int[][] WIDTH_LONG = new int[9][22];
+	private static final int[][] WIDTH_SHORT = new int[9][13];
+	/*
+	 * 逆量化时按哈夫曼值的顺序排列的频带宽度: 短块每个频带的3个窗口各占一项; 混合块是8个长块频带和短块的频带3..12。
+	 */
+	static final int[][] BAND_WIDTH_SHORT = new int[9][3 * 13];
+	private static final int[][] BAND_WIDTH_MIXED = new int[9][8 + 3 * 10];
+	static {
+		for (int sfreq = 0; sfreq < 9; sfreq++) {
+			for (int i = 0; i < 22; i++)
+				WIDTH_LONG[sfreq][i] = SFB_INDEX_LONG[sfreq][i + 1] - SFB_INDEX_LONG[sfreq][i];
+			for (int i = 0; i < 13; i++)
+				WIDTH_SHORT[sfreq][i] = SFB_INDEX_SHORT[sfreq][i + 1] - SFB_INDEX_SHORT[sfreq][i];
+			for (int i = 0; i < 3 * 13; i++)
+				BAND_WIDTH_SHORT[sfreq][i] = WIDTH_SHORT[sfreq][i / 3];
+			for (int i = 0; i < 8; i++)
+				BAND_WIDTH_MIXED[sfreq][i] = WIDTH_LONG[sfreq][i];
+			for (int i = 8; i < 8 + 3 * 10; i++)
+				BAND_WIDTH_MIXED[sfreq][i] = WIDTH_SHORT[sfreq][3 + (i - 8) / 3];
 		}
 	}
 
@@ -286,6 +281,7 @@ public final class Layer3 extends Layer123 {
 						ci.region0_count = bsSI.getBits9(4);
 						ci.region1_count = bsSI.getBits9(3);
 						ci.block_type = 0;
+						ci.mixed_block_flag = 0;
 					}
 					ci.preflag = bsSI.get1Bit();
 					ci.scalefac_scale = bsSI.get1Bit();
@@ -345,10 +341,52 @@ public final class Layer3 extends Layer123 {
 	//>>>>SCALE FACTORS========================================================
 	private int[][] scalefacLong;		// [channels][23];
 	private int[][] scalefacShort;		// [channels][13*3];
-	private int[] i_slen2;		// MPEG-2 slen for intensity stereo
-	private int[] n_slen2;		// MPEG-2 slen for 'normal' mode
+	private static final int[] i_slen2 = new int[256];	// MPEG-2 slen for intensity stereo
+	private static final int[] n_slen2 = new int[512];	// MPEG-2 slen for 'normal' mode
 								// slen: 增益因子(scalefactor)比特数
-	private byte[][][] nr_of_sfb;//[3][6][4]
+	// ISO/IEC 13818-3 subclause 2.4.3.2 nr_of_sfbx x=1..4
+	private static final byte[][][] nr_of_sfb = {	//[3][6][4]
+			{ { 6, 5, 5, 5 }, { 6, 5, 7, 3 }, { 11, 10, 0, 0 },
+					{ 7, 7, 7, 0 }, { 6, 6, 6, 3 }, { 8, 8, 5, 0 } },
+			{ { 9, 9, 9, 9 }, { 9, 9, 12, 6 }, { 18, 18, 0, 0 },
+					{ 12, 12, 12, 0 }, { 12, 9, 9, 6 },	{ 15, 12, 9, 0 } },
+			{ { 6, 9, 9, 9 }, { 6, 9, 12, 6 }, { 15, 18, 0, 0 },
+					{ 6, 15, 12, 0 }, { 6, 12, 9, 6 }, { 6, 18, 9, 0 } } };
+	static {
+		// ISO/IEC 13818-3 subclause 2.4.3.2 slenx, x=1..4
+		int i, j, k, l, n;
+		for (i = 0; i < 5; i++)
+			for (j = 0; j < 6; j++)
+				for (k = 0; k < 6; k++) {
+					n = k + j * 6 + i * 36;
+					i_slen2[n] = i | (j << 3) | (k << 6) | (3 << 12);
+				}
+		for (i = 0; i < 4; i++)
+			for (j = 0; j < 4; j++)
+				for (k = 0; k < 4; k++) {
+					n = k + (j << 2) + (i << 4);
+					i_slen2[n + 180] = i | (j << 3) | (k << 6) | (4 << 12);
+				}
+		for (i = 0; i < 4; i++)
+			for (j = 0; j < 3; j++) {
+				n = j + i * 3;
+				i_slen2[n + 244] = i | (j << 3) | (5 << 12);
+				n_slen2[n + 500] = i | (j << 3) | (2 << 12) | (1 << 15);
+			}
+		for (i = 0; i < 5; i++)
+			for (j = 0; j < 5; j++)
+				for (k = 0; k < 4; k++)
+					for (l = 0; l < 4; l++) {
+						n = l + (k << 2) + (j << 4) + i * 80;
+						n_slen2[n] = i | (j << 3) | (k << 6) | (l << 9);
+					}
+		for (i = 0; i < 5; i++)
+			for (j = 0; j < 5; j++)
+				for (k = 0; k < 4; k++) {
+					n = k + (j << 2) + i * 20;
+					n_slen2[n + 400] = i | (j << 3) | (k << 6) | (1 << 12);
+				}
+	}
 
 	// MPEG-2
 	private void getScaleFactors_2(int gr, int ch) {
@@ -409,8 +447,8 @@ public final class Layer3 extends Layer123 {
 	}
 
 	// MPEG-1
-	private int slen0[] = { 0, 0, 0, 0, 3, 1, 1, 1, 2, 2, 2, 3, 3, 3, 4, 4 };
-	private int slen1[] = { 0, 1, 2, 3, 0, 1, 2, 3, 1, 2, 3, 1, 2, 3, 2, 3 };
+	private static final int slen0[] = { 0, 0, 0, 0, 3, 1, 1, 1, 2, 2, 2, 3, 3, 3, 4, 4 };
+	private static final int slen1[] = { 0, 1, 2, 3, 0, 1, 2, 3, 1, 2, 3, 1, 2, 3, 2, 3 };
 
 	private void getScaleFactors_1(int gr, int ch) {
 		final ChannelInformation ci = channelInfo[gr][ch];
@@ -443,6 +481,8 @@ public final class Layer3 extends Layer123 {
 		} else {
 			// LONG types 0,1,3
 			int k = scfsi[ch];
+			if (channelInfo[0][ch].block_type == 2)
+				k = 0; // 有一个粒度组是短块时scfsi应为0，不使用上一粒度组的增益因子
 			if (gr == 0) {
 				ci.part2_length = 10 * (len0 + len1) + len0;
 				for (scf = 0; scf < 11; scf++)
@@ -524,15 +564,38 @@ public final class Layer3 extends Layer123 {
 	//>>>>REQUANTIZATION & REORDER=============================================
 	private float[][] xrch0;	// [maxGr][32*18]
 	private float[][] xrch1;	// [maxGr][32*18]
-	private float[] floatPow2;	// [256 + 118 + 4]
-	private float[] floatPowIS;	// [8207]
+	private static final float[] floatPow2 = new float[328 + 46];
+	private static final float[] floatPowIS = new float[2 * 8206 + 1]; // 带符号, 下标为哈夫曼值加POWIS_ZERO
+	private static final int POWIS_ZERO = 8206;
 	private int[] widthLong;	// [22] 长块的增益因子频带(用一个增益因子逆量化频率线的条数)
 	private int[] widthShort;	// [13] 短块的增益因子频带
+	private int[] bandWidthShort;	// [3*13] 短块每个频带每个窗口的宽度
+	private int[] bandWidthMixed;	// [8+3*10] 混合块
+	private final float[] bandGain = new float[3 * 13]; // 当前粒度组每个频带(短块每个窗口)的增益
+	private final int[] bandNonzero = new int[3 * 13]; // 每个频带的哈夫曼值按位或,非0表示频带内有非零值
 	private int rzeroBandLong;
 	private int[] rzeroBandShort = new int[3];
 
+	static {
+		int i;
+
+		// 用于查表求 sign(v) * |v|^(4/3)，v是经哈夫曼解码出的一个值，|v|的范围是0..8191+15。
+		// 正负值对称存放，逆量化时不必判断符号
+		for (i = 0; i <= POWIS_ZERO; i++)
+			floatPowIS[POWIS_ZERO + i] = (float) Math.pow(i, 4.0 / 3.0);
+		for (i = 1; i <= POWIS_ZERO; i++)
+			floatPowIS[POWIS_ZERO - i] = -floatPowIS[POWIS_ZERO + i];
+
+		// 用于查表求 2^(-0.25 * i)
+		// 按公式短块时i最大值: 210 - 0   + 8 * 7 + 4 * 15 + 2 = 328
+		// 长块或短块时i最小值: 210 - 255 + 0     + 0      + 0 = -45
+		// 查表法时下标范围为0..328+45.
+		for (i = 0; i < 374; i++)
+			floatPow2[i] = (float) Math.pow(2.0, -0.25 * (i - 45));
+	}
+
 	// ISO/IEC 11172-3 ANNEX B,Table 3-B.6. Layer III Preemphasis
-	private int[] pretab = {0,0,0,0,0,0,0,0,0,0,0,1,1,1,1,2,2,3,3,3,2,0};
+	private static final int[] pretab = {0,0,0,0,0,0,0,0,0,0,0,1,1,1,1,2,2,3,3,3,2,0};
 
 	/**
 	 * 逆量化并对短块(纯短块和混合块中的短块)重排序.在逆量化时赋值的变量:<br>
@@ -560,113 +623,123 @@ public final class Layer3 extends Layer123 {
 		final boolean preflag = ci.preflag == 1;
 		final int shift = 1 + ci.scalefac_scale;
 		final int maxi = rzeroIndex[ch];
-		float requVal;
-		int bi=0, sfb = 0, width, pre, val, hvIdx = 0, xri = 0, scf = 0;
-		int xriStart = 0; // 用于计算短块重排序后的下标
+		final float[] gain = bandGain;
+		final int[] nonzero = bandNonzero;
+		final int[] width;
+		int b = 0, sfb = 0, win, longBands, hvIdx, bi;
 		int pow2i = 255 - ci.global_gain;
 
 		if (header.isMS())
 			pow2i += 2; // 若声道模式为ms_stereo,要除以根2
 
-		// pure SHORT blocks:
-		// window_switching_flag=1, block_type=2, mixed_block_flag=0
-
+		// 1. 每个频带(短块每个窗口)的增益, 每粒度组计算一次
 		if (ci.window_switching_flag == 1 && ci.block_type == 2) {
-			rzeroBandShort[0] = rzeroBandShort[1] = rzeroBandShort[2] = -1;
 			if (ci.mixed_block_flag == 1) {
-				/*
-				 * 混合块:
-				 * 混合块的前8个频带是长块。 前8块各用一个增益因子逆量化，这8个增益因子 的频带总和为36，
-				 * 这36条频率线用长块公式逆量化。
-				 */
-				rzeroBandLong = -1;
-				for (; sfb < 8; sfb++) {
-					pre = preflag ? pretab[sfb] : 0;
-					requVal = floatPow2[pow2i + ((l[sfb] + pre) << shift)];
-					width = widthLong[sfb];
-					for (bi = 0; bi < width; bi++) {
-						val = hv[hvIdx]; // 哈夫曼值
-						if (val < 0) {
-							xrch[hvIdx] = -requVal * floatPowIS[-val];
-							rzeroBandLong = sfb;
-						} else if (val > 0) {
-							xrch[hvIdx] = requVal * floatPowIS[val];
-							rzeroBandLong = sfb;
-						} else
-							xrch[hvIdx] = 0;
-						hvIdx++;
-					}
-				}
-
-				/*
-				 * 混合块的后9个频带是被加窗的短块，其每一块同一窗口内3个值的增益因子频带相同。
-				 * 后9块增益因子对应的频率子带值为widthShort[3..11]
-				 */
-				rzeroBandShort[0] = rzeroBandShort[1] = rzeroBandShort[2] = 2;
-				rzeroBandLong++;
+				// 混合块的前8个频带是长块, 后面是频带3..12的短块
+				for (; b < 8; b++)
+					gain[b] = floatPow2[pow2i + ((l[b] + (preflag ? pretab[b] : 0)) << shift)];
+				longBands = 8;
 				sfb = 3;
-				scf = 9;
-				xriStart = 36; // 为短块重排序准备好下标
+				width = bandWidthMixed;
+			} else {
+				longBands = 0;
+				width = bandWidthShort;
 			}
-
-			// 短块(混合块中的短块和纯短块)
 			final int[] s = scalefacShort[ch];
 			final int[] subgain = ci.subblock_gain;
-			subgain[0] <<= 3;
-			subgain[1] <<= 3;
-			subgain[2] <<= 3;
-			int win;
-			for (; hvIdx < maxi; sfb++) {
-				width = widthShort[sfb];
-				for (win = 0; win < 3; win++) {
-					requVal = floatPow2[pow2i + subgain[win] + (s[scf++] << shift)];
-					xri = xriStart + win;
-					for (bi = 0; bi < width; bi++) {
-						val = hv[hvIdx];
-						if (val < 0) {
-							xrch[xri] = -requVal * floatPowIS[-val];
-							rzeroBandShort[win] = sfb;
-						} else if (val > 0) {
-							xrch[xri] = requVal * floatPowIS[val];
-							rzeroBandShort[win] = sfb;
-						} else
-							xrch[xri] = 0;
-						hvIdx++;
-						xri += 3;
-					}
-				}
-				xriStart = xri -2;
+			for (; sfb < 13; sfb++)
+				for (win = 0; win < 3; win++)
+					gain[b++] = floatPow2[pow2i + (subgain[win] << 3) + (s[3 * sfb + win] << shift)];
+		} else {
+			for (; b < 22; b++)
+				gain[b] = floatPow2[pow2i + ((l[b] + (preflag ? pretab[b] : 0)) << shift)];
+			longBands = 22;
+			width = widthLong;
+		}
+
+		// 2. 逆量化
+		hvIdx = requantize(hv, maxi, gain, width, longBands, xrch, nonzero);
+
+		// 3. 有非零值的频带数, 用于强度立体声
+		if (longBands != 22) {
+			// 短块(纯短块和混合块中的短块)
+			rzeroBandShort[0] = rzeroBandShort[1] = rzeroBandShort[2] = (longBands == 0) ? -1 : 2;
+			if (longBands != 0)
+				rzeroBandLong = 0;
+			for (b = bi = 0; bi < hvIdx; bi += width[b++]) {
+				if (nonzero[b] == 0)
+					continue;
+				if (b < longBands)
+					rzeroBandLong = b + 1;
+				else
+					rzeroBandShort[(b - longBands) % 3] = (b - longBands) / 3 + (longBands == 0 ? 0 : 3);
 			}
 			rzeroBandShort[0]++;
 			rzeroBandShort[1]++;
 			rzeroBandShort[2]++;
 			rzeroBandLong++;
 		} else {
-			// 长块
-			xri = -1;
-			for (; hvIdx < maxi; sfb++) {
-				pre = preflag ? pretab[sfb] : 0;
-				requVal = floatPow2[pow2i + ((l[sfb] + pre) << shift)];
-				bi = hvIdx + widthLong[sfb];
-				for (; hvIdx < bi; hvIdx++) {
-					val = hv[hvIdx];
-					if (val < 0) {
-						xrch[hvIdx] = -requVal * floatPowIS[-val];
-						xri = sfb;
-					} else if (val > 0) {
-						xrch[hvIdx] = requVal * floatPowIS[val];
-						xri = sfb;
-					} else
-						xrch[hvIdx] = 0;
-				}
-			}
-			rzeroBandLong = xri + 1;
+			rzeroBandLong = 0;
+			for (b = bi = 0; bi < hvIdx; bi += width[b++])
+				if (nonzero[b] != 0)
+					rzeroBandLong = b + 1;
 		}
 
 		// 不逆量化0值区,置0.
 		for (; hvIdx < 576; hvIdx++)
 			xrch[hvIdx] = 0;
 	}
+
+	/**
+	 * 逆量化一个粒度组一个声道的哈夫曼值，并对短块重排序。每个频带(短块每个窗口)用一个增益乘以查表得到的 sign(v)*|v|^(4/3)，
+	 * 内层循环没有分支。逐个频带处理到包含 hv[maxi-1] 的频带为止；短块每次处理一个频带的3个窗口。
+	 * 
+	 * @param hv 哈夫曼值。
+	 * @param maxi 非零哈夫曼值的个数上限。
+	 * @param gain 每个频带的增益。
+	 * @param width 每个频带的宽度，按哈夫曼值的顺序排列。
+	 * @param longBands 长块频带数：长块22，混合块8，纯短块0。其后是短块频带，每个频带3项。
+	 * @param xr 保存逆量化的输出。
+	 * @param nonzero 输出每个已处理频带的哈夫曼值按位或的结果。
+	 * @return 已处理的哈夫曼值的个数。
+	 */
+	static int requantize(int[] hv, int maxi, float[] gain, int[] width, int longBands, float[] xr,
+			int[] nonzero) {
+		final float[] pow = floatPowIS;
+		int b, hvIdx = 0, end, nz, val, win, w, xri, xriStart;
+		float g;
+
+		// 长块
+		for (b = 0; b < longBands && hvIdx < maxi; b++) {
+			g = gain[b];
+			nz = 0;
+			for (end = hvIdx + width[b]; hvIdx < end; hvIdx++) {
+				val = hv[hvIdx];
+				nz |= val;
+				xr[hvIdx] = g * pow[POWIS_ZERO + val];
+			}
+			nonzero[b] = nz;
+		}
+
+		// 短块: 一个频带内3个窗口的值依次排列, 重排序为按频率线交错排列. 混合块的短块从xr[36]开始
+		xriStart = (longBands == 0) ? 0 : 36;
+		for (; hvIdx < maxi && b < width.length; b += 3) {
+			w = width[b];
+			for (win = 0; win < 3; win++) {
+				g = gain[b + win];
+				nz = 0;
+				xri = xriStart + win;
+				for (end = hvIdx + w; hvIdx < end; hvIdx++, xri += 3) {
+					val = hv[hvIdx];
+					nz |= val;
+					xr[xri] = g * pow[POWIS_ZERO + val];
+				}
+				nonzero[b + win] = nz;
+			}
+			xriStart += 3 * w;
+		}
+		return hvIdx;
+	}
 	//<<<<REQUANTIZATION & REORDER=============================================
 
 	//5.
@@ -676,20 +749,33 @@ public final class Layer3 extends Layer123 {
 	private void ms_stereo(int gr) {
 		final float[] xr0 = xrch0[gr], xr1 = xrch1[gr];
 		final int rzero_xr = (rzeroIndex[0] > rzeroIndex[1]) ? rzeroIndex[0] : rzeroIndex[1];
+		// 右声道是长块时rzeroIndex[1]之后为0: M+0=M, M-0=M, 只需复制. 短块重排序后非零值可能在rzeroIndex[1]之后
+		final int end = (channelInfo[gr][1].block_type != 2) ? rzeroIndex[1] : rzero_xr;
 		int xri;
 		float tmp0, tmp1;
 		
-		for (xri = 0; xri < rzero_xr; xri++) {
+		for (xri = 0; xri < end; xri++) {
 			tmp0 = xr0[xri];
 			tmp1 = xr1[xri];
 			xr0[xri] = tmp0 + tmp1;
 			xr1[xri] = tmp0 - tmp1;
 		}
+		if (end < rzero_xr)
+			System.arraycopy(xr0, end, xr1, end, rzero_xr - end);
 		rzeroIndex[0] = rzeroIndex[1] = rzero_xr; // ...不然可能导致声音细节丢失
 	}
 
-	private float[][] lsf_is_coef;
-	private float[] is_coef;
+	// MPEG-2, intensity_stereo
+	private static final float[][] lsf_is_coef = {
+			{ 0.840896415f, 0.707106781f, 0.594603558f, 0.5f, 0.420448208f,
+				0.353553391f, 0.297301779f, 0.25f, 0.210224104f, 0.176776695f,
+				0.148650889f, 0.125f, 0.105112052f,	0.088388348f, 0.074325445f },
+			{ 0.707106781f, 0.5f, 0.353553391f, 0.25f, 0.176776695f, 0.125f,
+				0.088388348f, 0.0625f, 0.044194174f, 0.03125f, 0.022097087f,
+				0.015625f, 0.011048543f, 0.0078125f, 0.005524272f } };
+	// MPEG-1, intensity_stereo
+	private static final float[] is_coef = { 0.0f, 0.211324865f, 0.366025404f, 0.5f,
+			0.633974596f, 0.788675135f, 1.0f };
 
 	// 解码一个频带强度立体声,MPEG-1
 	private void is_lines_1(int pos, int idx0, int width,int step,int gr) {
@@ -781,9 +867,7 @@ public final class Layer3 extends Layer123 {
 	//>>>>ANTIALIAS============================================================
 
 	private void antialias(int gr, int ch, float[] xrch) {
-		final float[] xr = xrch;
-		int i, maxidx;
-		float bu, bd;
+		int maxidx;
 
 		if (channelInfo[gr][ch].block_type == 2) {
 			if (channelInfo[gr][ch].mixed_block_flag == 0)
@@ -792,46 +876,69 @@ public final class Layer3 extends Layer123 {
 		} else
 			maxidx = rzeroIndex[ch] - 18;
 
-		for (i = 0; i < maxidx; i += 18) {
-			bu = xr[i + 17];
-			bd = xr[i + 18];
-			xr[i + 17] = bu * 0.85749293f + bd * 0.51449576f;
-			xr[i + 18] = bd * 0.85749293f - bu * 0.51449576f;
-			bu = xr[i + 16];
-			bd = xr[i + 19];
-			xr[i + 16] = bu * 0.8817420f + bd * 0.47173197f;
-			xr[i + 19] = bd * 0.8817420f - bu * 0.47173197f;
-			bu = xr[i + 15];
-			bd = xr[i + 20];
-			xr[i + 15] = bu * 0.94962865f + bd * 0.31337745f;
-			xr[i + 20] = bd * 0.94962865f - bu * 0.31337745f;
-			bu = xr[i + 14];
-			bd = xr[i + 21];
-			xr[i + 14] = bu * 0.98331459f + bd * 0.18191320f;
-			xr[i + 21] = bd * 0.98331459f - bu * 0.18191320f;
-			bu = xr[i + 13];
-			bd = xr[i + 22];
-			xr[i + 13] = bu * 0.99551782f + bd * 0.09457419f;
-			xr[i + 22] = bd * 0.99551782f - bu * 0.09457419f;
-			bu = xr[i + 12];
-			bd = xr[i + 23];
-			xr[i + 12] = bu * 0.99916056f + bd * 0.04096558f;
-			xr[i + 23] = bd * 0.99916056f - bu * 0.04096558f;
-			bu = xr[i + 11];
-			bd = xr[i + 24];
-			xr[i + 11] = bu * 0.99989920f + bd * 0.0141986f;
-			xr[i + 24] = bd * 0.99989920f - bu * 0.0141986f;
-			bu = xr[i + 10];
-			bd = xr[i + 25];
-			xr[i + 10] = bu * 0.99999316f + bd * 3.69997467e-3f;
-			xr[i + 25] = bd * 0.99999316f - bu * 3.69997467e-3f;
+		antialias(xrch, maxidx);
+	}
+
+	/*
+	 * 对 0..maxidx 之间的子带边界作抗锯齿处理。
+	 */
+	static void antialias(float[] xr, int maxidx) {
+		for (int i = 0; i < maxidx; i += 18)
+			butterflies(xr, i);
+	}
+
+	/*
+	 * 两个声道都是长块且非零值区相同(M/S处理之后)时, 在同一个循环内对两个声道作抗锯齿处理.
+	 */
+	static void antialias(float[] xr0, float[] xr1, int maxidx) {
+		for (int i = 0; i < maxidx; i += 18) {
+			butterflies(xr0, i);
+			butterflies(xr1, i);
 		}
 	}
+
+	// 子带i/18和i/18+1之间的8个蝶形运算
+	private static void butterflies(float[] xr, int i) {
+		float bu, bd;
+
+		bu = xr[i + 17];
+		bd = xr[i + 18];
+		xr[i + 17] = bu * 0.85749293f + bd * 0.51449576f;
+		xr[i + 18] = bd * 0.85749293f - bu * 0.51449576f;
+		bu = xr[i + 16];
+		bd = xr[i + 19];
+		xr[i + 16] = bu * 0.8817420f + bd * 0.47173197f;
+		xr[i + 19] = bd * 0.8817420f - bu * 0.47173197f;
+		bu = xr[i + 15];
+		bd = xr[i + 20];
+		xr[i + 15] = bu * 0.94962865f + bd * 0.31337745f;
+		xr[i + 20] = bd * 0.94962865f - bu * 0.31337745f;
+		bu = xr[i + 14];
+		bd = xr[i + 21];
+		xr[i + 14] = bu * 0.98331459f + bd * 0.18191320f;
+		xr[i + 21] = bd * 0.98331459f - bu * 0.18191320f;
+		bu = xr[i + 13];
+		bd = xr[i + 22];
+		xr[i + 13] = bu * 0.99551782f + bd * 0.09457419f;
+		xr[i + 22] = bd * 0.99551782f - bu * 0.09457419f;
+		bu = xr[i + 12];
+		bd = xr[i + 23];
+		xr[i + 12] = bu * 0.99916056f + bd * 0.04096558f;
+		xr[i + 23] = bd * 0.99916056f - bu * 0.04096558f;
+		bu = xr[i + 11];
+		bd = xr[i + 24];
+		xr[i + 11] = bu * 0.99989920f + bd * 0.0141986f;
+		xr[i + 24] = bd * 0.99989920f - bu * 0.0141986f;
+		bu = xr[i + 10];
+		bd = xr[i + 25];
+		xr[i + 10] = bu * 0.99999316f + bd * 3.69997467e-3f;
+		xr[i + 25] = bd * 0.99999316f - bu * 3.69997467e-3f;
+	}
 	//<<<<ANTIALIAS============================================================
 
 	//7.
 	//>>>>HYBRID(synthesize via iMDCT)=========================================
-	private float[][] imdctWin = {
+	static final float[][] imdctWin = {
 		{0.0322824f,0.1072064f,0.2014143f,0.3256164f,0.5f,0.7677747f,
 		1.2412229f,2.3319514f,7.7441506f,-8.4512568f,-3.0390580f,-1.9483297f,
 		-1.4748814f,-1.2071068f,-1.0327232f,-0.9085211f,-0.8143131f,-0.7393892f,
@@ -852,7 +959,10 @@ public final class Layer3 extends Layer123 {
 		-0.4319343f,-0.4000996f,-0.3689899f,-0.3381170f,-0.3070072f,-0.2751725f,
 		-0.2420785f,-0.2071068f,-0.1695052f,-0.1283151f,-0.0822624f,-0.0295815f} };
 
-	private void imdct12(float[] xrch, float[] pre, int off) {
+	/*
+	 * 参考实现：12点IMDCT（3个短块），原地计算，加窗和重叠相加在最后一个短块完成。
+	 */
+	static void imdct12(float[] xrch, float[] pre, int off) {
 		final float[] io = xrch;
 		int i,j;
 		float in1,in2,in3,in4;
@@ -964,7 +1074,10 @@ public final class Layer3 extends Layer123 {
 		}
 	}
 
-	private void imdct36(float[] xrch, float[] preBlck, int off, int block_type) {
+	/*
+	 * 参考实现：36点IMDCT，原地计算前缀和。
+	 */
+	static void imdct36(float[] xrch, float[] preBlck, int off, int block_type) {
 		final float[] io = xrch;
 		final float[] pre = preBlck;
 		int i = off;
@@ -1138,6 +1251,235 @@ public final class Layer3 extends Layer123 {
 		pre[i + 17] = out8 * win[35];
 	}
 
+	/*
+	 * 快速实现：36点IMDCT。运算和 imdct36 完全相同（结果逐位相同），但18个输入只读一次、保存在局部变量中，
+	 * 不把前缀和写回数组；加窗、重叠相加和更新重叠缓冲区在同一次遍历中完成。
+	 */
+	static void imdct36Fast(float[] io, float[] pre, int i, float[] win) {
+		float x0 = io[i], x1 = io[i + 1], x2 = io[i + 2], x3 = io[i + 3], x4 = io[i + 4], x5 = io[i + 5];
+		float x6 = io[i + 6], x7 = io[i + 7], x8 = io[i + 8], x9 = io[i + 9], x10 = io[i + 10], x11 = io[i + 11];
+		float x12 = io[i + 12], x13 = io[i + 13], x14 = io[i + 14], x15 = io[i + 15], x16 = io[i + 16], x17 = io[i + 17];
+		float in0, in1, in2, in3, in4, in5, in6, in7, in8, in9, in10, in11, in12, in13, in14, in15, in16, in17;
+		float out0, out1, out2, out3, out4, out5, out6, out7, out8, out9;
+		float out10, out11, out12, out13, out14, out15, out16, out17, tmp;
+
+		// 前缀和，和 imdct36 的求值顺序相同
+		x16 += x15; x17 += x16 + x14;
+		x14 += x13; x15 += x14 + x12;
+		x12 += x11; x13 += x12 + x10;
+		x10 += x9;  x11 += x10 + x8;
+		x8 += x7;   x9 += x8 + x6;
+		x6 += x5;   x7 += x6 + x4;
+		x4 += x3;   x5 += x4 + x2;
+		x2 += x1;   x3 += x2 + x0;
+		x1 += x0;
+
+		// 9-point IDCT on even
+		in0 = x0 + x12 * 0.5f;
+		in1 = x0 - x12;
+		in2 = x8 + x16 - x4;
+		out4 = in1 + in2;
+		in3 = in1 - in2 * 0.5f;
+		in4 = (x10 + x14 - x2) * 0.8660254f;
+		out1 = in3 - in4;
+		out7 = in3 + in4;
+		in5 = (x4 + x8) * 0.9396926f;
+		in6 = (x16 - x8) * 0.1736482f;
+		in7 = -(x4 + x16) * 0.7660444f;
+		in17 = in0 - in5 - in7;
+		in8 = in5 + in0 + in6;
+		in9 = in0 + in7 - in6;
+		in12 = x6 * 0.8660254f;
+		in10 = (x2 + x10) * 0.9848078f;
+		in11 = (x14 - x10) * 0.3420201f;
+		in13 = in10 + in11 + in12;
+		out0 = in8 + in13;
+		out8 = in8 - in13;
+		in14 = -(x2 + x14) * 0.6427876f;
+		in15 = in10 + in14 - in12;
+		in16 = in11 - in14 - in12;
+		out3 = in9 + in15;
+		out5 = in9 - in15;
+		out2 = in17 + in16;
+		out6 = in17 - in16;
+
+		// 9-point IDCT on odd
+		in0 = x1 + x13 * 0.5f;
+		in1 = x1 - x13;
+		in2 = x9 + x17 - x5;
+		out13 = (in1 + in2) * 0.7071068f;
+		in3 = in1 - in2 * 0.5f;
+		in4 = (x11 + x15 - x3) * 0.8660254f;
+		out16 = (in3 - in4) * 0.5176381f;
+		out10 = (in3 + in4) * 1.9318517f;
+		in5 = (x5 + x9) * 0.9396926f;
+		in6 = (x17 - x9) * 0.1736482f;
+		in7 = -(x5 + x17) * 0.7660444f;
+		in17 = in0 - in5 - in7;
+		in8 = in5 + in0 + in6;
+		in9 = in0 + in7 - in6;
+		in12 = x7 * 0.8660254f;
+		in10 = (x3 + x11) * 0.9848078f;
+		in11 = (x15 - x11) * 0.3420201f;
+		in13 = in10 + in11 + in12;
+		out17 = (in8 + in13) * 0.5019099f;
+		out9 = (in8 - in13) * 5.7368566f;
+		in14 = -(x3 + x15) * 0.6427876f;
+		in15 = in10 + in14 - in12;
+		in16 = in11 - in14 - in12;
+		out14 = (in9 + in15) * 0.6103873f;
+		out12 = (in9 - in15) * 0.8717234f;
+		out15 = (in17 + in16) * 0.5516890f;
+		out11 = (in17 - in16) * 1.1831008f;
+
+		// Butterflies on 9-point IDCT's
+		tmp = out0; out0 += out17; out17 = tmp - out17;
+		tmp = out1; out1 += out16; out16 = tmp - out16;
+		tmp = out2; out2 += out15; out15 = tmp - out15;
+		tmp = out3; out3 += out14; out14 = tmp - out14;
+		tmp = out4; out4 += out13; out13 = tmp - out13;
+		tmp = out5; out5 += out12; out12 = tmp - out12;
+		tmp = out6; out6 += out11; out11 = tmp - out11;
+		tmp = out7; out7 += out10; out10 = tmp - out10;
+		tmp = out8; out8 += out9;  out9  = tmp - out9;
+
+		// 加窗、重叠相加
+		io[i] = pre[i] + out9 * win[0];          pre[i] = out8 * win[18];
+		io[i + 1] = pre[i + 1] + out10 * win[1];   pre[i + 1] = out7 * win[19];
+		io[i + 2] = pre[i + 2] + out11 * win[2];   pre[i + 2] = out6 * win[20];
+		io[i + 3] = pre[i + 3] + out12 * win[3];   pre[i + 3] = out5 * win[21];
+		io[i + 4] = pre[i + 4] + out13 * win[4];   pre[i + 4] = out4 * win[22];
+		io[i + 5] = pre[i + 5] + out14 * win[5];   pre[i + 5] = out3 * win[23];
+		io[i + 6] = pre[i + 6] + out15 * win[6];   pre[i + 6] = out2 * win[24];
+		io[i + 7] = pre[i + 7] + out16 * win[7];   pre[i + 7] = out1 * win[25];
+		io[i + 8] = pre[i + 8] + out17 * win[8];   pre[i + 8] = out0 * win[26];
+		io[i + 9] = pre[i + 9] + out17 * win[9];   pre[i + 9] = out0 * win[27];
+		io[i + 10] = pre[i + 10] + out16 * win[10]; pre[i + 10] = out1 * win[28];
+		io[i + 11] = pre[i + 11] + out15 * win[11]; pre[i + 11] = out2 * win[29];
+		io[i + 12] = pre[i + 12] + out14 * win[12]; pre[i + 12] = out3 * win[30];
+		io[i + 13] = pre[i + 13] + out13 * win[13]; pre[i + 13] = out4 * win[31];
+		io[i + 14] = pre[i + 14] + out12 * win[14]; pre[i + 14] = out5 * win[32];
+		io[i + 15] = pre[i + 15] + out11 * win[15]; pre[i + 15] = out6 * win[33];
+		io[i + 16] = pre[i + 16] + out10 * win[16]; pre[i + 16] = out7 * win[34];
+		io[i + 17] = pre[i + 17] + out9 * win[17];  pre[i + 17] = out8 * win[35];
+	}
+
+	/*
+	 * 快速实现：12点IMDCT。运算和 imdct12 完全相同（结果逐位相同），3个短块依次展开，没有循环和分支，
+	 * 输入和中间结果都在局部变量中，最后一次遍历完成重叠相加和更新重叠缓冲区。
+	 */
+	static void imdct12Fast(float[] io, float[] pre, int i) {
+		float x0, x1, x2, x3, x4, x5, in1, in2, in3, in4;
+		float out0, out1, out2, out3, out4, out5, tmp;
+		float out6, out7, out8, out9, out10, out11;
+		float out12, out13, out14, out15, out16, out17;
+		float f0, f1, f2, f3, f4, f5;
+
+		// 短块0
+		x0 = io[i]; x1 = io[i + 3]; x2 = io[i + 6]; x3 = io[i + 9]; x4 = io[i + 12]; x5 = io[i + 15];
+		x4 += x3; x5 += x4 + x2;
+		x2 += x1; x3 += x2 + x0;
+		x1 += x0;
+		out1 = x0 - x4;
+		in3 = x0 + x4 * 0.5f;
+		in4 = x2 * 0.8660254f;
+		out0 = in3 + in4;
+		out2 = in3 - in4;
+		out4 = (x1 - x5) * 0.7071068f;
+		in3 = x1 + x5 * 0.5f;
+		in4 = x3 * 0.8660254f;
+		out5 = (in3 + in4) * 0.5176381f;
+		out3 = (in3 - in4) * 1.9318516f;
+		tmp = out0; out0 += out5; out5 = tmp - out5;
+		tmp = out1; out1 += out4; out4 = tmp - out4;
+		tmp = out2; out2 += out3; out3 = tmp - out3;
+		tmp = out3 * 0.1072064f;
+		out6  = tmp;
+		out7  = out4 * 0.5f;
+		out8  = out5 * 2.3319512f;
+		out9  = -out5 * 3.0390580f;
+		out10 = -out4 * 1.2071068f;
+		out11 = -tmp  * 7.5957541f;
+		f0 = out2 * 0.6248445f;
+		f1 = out1 * 0.5f;
+		f2 = out0 * 0.4000996f;
+		f3 = out0 * 0.3070072f;
+		f4 = out1 * 0.2071068f;
+		f5 = out2 * 0.0822623f;
+
+		// 短块1
+		x0 = io[i + 1]; x1 = io[i + 4]; x2 = io[i + 7]; x3 = io[i + 10]; x4 = io[i + 13]; x5 = io[i + 16];
+		x4 += x3; x5 += x4 + x2;
+		x2 += x1; x3 += x2 + x0;
+		x1 += x0;
+		out1 = x0 - x4;
+		in3 = x0 + x4 * 0.5f;
+		in4 = x2 * 0.8660254f;
+		out0 = in3 + in4;
+		out2 = in3 - in4;
+		out4 = (x1 - x5) * 0.7071068f;
+		in3 = x1 + x5 * 0.5f;
+		in4 = x3 * 0.8660254f;
+		out5 = (in3 + in4) * 0.5176381f;
+		out3 = (in3 - in4) * 1.9318516f;
+		tmp = out0; out0 += out5; out5 = tmp - out5;
+		tmp = out1; out1 += out4; out4 = tmp - out4;
+		tmp = out2; out2 += out3; out3 = tmp - out3;
+		tmp = out3 * 0.1072064f;
+		out12 = tmp - f0;
+		out13 = out4 * 0.5f - f1;
+		out14 = out5 * 2.3319512f - f2;
+		out15 = -out5 * 3.0390580f - f3;
+		out16 = -out4 * 1.2071068f - f4;
+		out17 = -tmp * 7.5957541f - f5;
+		f0 = out2 * 0.6248445f;
+		f1 = out1 * 0.5f;
+		f2 = out0 * 0.4000996f;
+		f3 = out0 * 0.3070072f;
+		f4 = out1 * 0.2071068f;
+		f5 = out2 * 0.0822623f;
+
+		// 短块2
+		x0 = io[i + 2]; x1 = io[i + 5]; x2 = io[i + 8]; x3 = io[i + 11]; x4 = io[i + 14]; x5 = io[i + 17];
+		x4 += x3; x5 += x4 + x2;
+		x2 += x1; x3 += x2 + x0;
+		x1 += x0;
+		out1 = x0 - x4;
+		in3 = x0 + x4 * 0.5f;
+		in4 = x2 * 0.8660254f;
+		out0 = in3 + in4;
+		out2 = in3 - in4;
+		out4 = (x1 - x5) * 0.7071068f;
+		in3 = x1 + x5 * 0.5f;
+		in4 = x3 * 0.8660254f;
+		out5 = (in3 + in4) * 0.5176381f;
+		out3 = (in3 - in4) * 1.9318516f;
+		tmp = out0; out0 += out5; out5 = tmp - out5;
+		tmp = out1; out1 += out4; out4 = tmp - out4;
+		tmp = out2; out2 += out3; out3 = tmp - out3;
+		tmp = out3 * 0.1072064f;
+
+		// 重叠相加
+		io[i] = pre[i];                      pre[i] = tmp - f0;
+		io[i + 1] = pre[i + 1];              pre[i + 1] = out4 * 0.5f - f1;
+		io[i + 2] = pre[i + 2];              pre[i + 2] = out5 * 2.3319512f - f2;
+		io[i + 3] = pre[i + 3];              pre[i + 3] = -out5 * 3.0390580f - f3;
+		io[i + 4] = pre[i + 4];              pre[i + 4] = -out4 * 1.2071068f - f4;
+		io[i + 5] = pre[i + 5];              pre[i + 5] = -tmp * 7.5957541f - f5;
+		io[i + 6] = pre[i + 6] + out6;       pre[i + 6] = -out2 * 0.6248445f;
+		io[i + 7] = pre[i + 7] + out7;       pre[i + 7] = -out1 * 0.5f;
+		io[i + 8] = pre[i + 8] + out8;       pre[i + 8] = -out0 * 0.4000996f;
+		io[i + 9] = pre[i + 9] + out9;       pre[i + 9] = -out0 * 0.3070072f;
+		io[i + 10] = pre[i + 10] + out10;    pre[i + 10] = -out1 * 0.2071068f;
+		io[i + 11] = pre[i + 11] + out11;    pre[i + 11] = -out2 * 0.0822623f;
+		io[i + 12] = pre[i + 12] + out12;    pre[i + 12] = 0;
+		io[i + 13] = pre[i + 13] + out13;    pre[i + 13] = 0;
+		io[i + 14] = pre[i + 14] + out14;    pre[i + 14] = 0;
+		io[i + 15] = pre[i + 15] + out15;    pre[i + 15] = 0;
+		io[i + 16] = pre[i + 16] + out16;    pre[i + 16] = 0;
+		io[i + 17] = pre[i + 17] + out17;    pre[i + 17] = 0;
+	}
+
 	private float[] preBlckCh0; // [32*18],左声道FIFO队列
 	private float[] preBlckCh1; // [32*18],右声道FIFO
 
@@ -1151,7 +1493,12 @@ public final class Layer3 extends Layer123 {
 					&& (ci.mixed_block_flag != 0) && (i < 36)) ? 0
 					: ci.block_type;
 
-			if(block_type == 2)
+			if (imdct == IMDCT_FAST) {
+				if (block_type == 2)
+					imdct12Fast(xrch, preb, i);
+				else
+					imdct36Fast(xrch, preb, i, imdctWin[block_type]);
+			} else if(block_type == 2)
 				imdct12(xrch, preb, i);
 			else
 				imdct36(xrch, preb, i, block_type);
@@ -1189,8 +1536,11 @@ public final class Layer3 extends Layer123 {
 
 	/**
 	 * 解码1帧Layer Ⅲ
+	 * @throws IllegalStateException 多相合成滤波任务抛出了异常。
 	 */
 	public int decodeFrame(byte[] b, int off) {
+		checkSynthesis();
+
 		/*
 		 * part1 : side information
 		 */
@@ -1213,14 +1563,22 @@ public final class Layer3 extends Layer123 {
 		}
 
 		// 丢弃上一帧的填充位
-		int discard = bufSize - maindataStream.getBytePos() - main_data_begin;
-		maindataStream.skipBytes(discard);
+		maindataStream.seekBack(main_data_begin);
 
 		// 主数据添加到位流缓冲区
 		maindataStream.append(b, off, maindataSize);
 		off += maindataSize;
 		//maindataStream.mark();//----debug
 
+		// 等待环形队列中有空闲的缓冲区
+		if (frames - outputFrames >= depth && !waitForSynthesis(frames - depth + 1)) {
+			checkSynthesis();
+			return off;
+		}
+		xrch0 = filterCh0.getBuffer(frames);
+		if (channels == 2)
+			xrch1 = filterCh1.getBuffer(frames);
+
 		for (gr = 0; gr < granules; gr++) {
 			if (isMPEG1)
 				getScaleFactors_1(gr, 0);
@@ -1243,61 +1601,248 @@ public final class Layer3 extends Layer123 {
 					intensity_stereo(gr);
 			}
 
-			antialias(gr, 0, xrch0[gr]);
-			hybrid(gr, 0, xrch0[gr], preBlckCh0);
+			// M/S处理之后两个声道的非零值区相同, 都是长块时在同一个循环内抗锯齿
+			if (channels == 2 && header.isMS() && channelInfo[gr][0].block_type != 2
+					&& channelInfo[gr][1].block_type != 2)
+				antialias(xrch0[gr], xrch1[gr], rzeroIndex[0] - 18);
+			else {
+				antialias(gr, 0, xrch0[gr]);
+				if (channels == 2)
+					antialias(gr, 1, xrch1[gr]);
+			}
 
-			if (channels == 2) {
-				antialias(gr, 1, xrch1[gr]);
+			hybrid(gr, 0, xrch0[gr], preBlckCh0);
+			if (channels == 2)
 				hybrid(gr, 1, xrch1[gr], preBlckCh1);
-			}
 		}
 		// int part2_3_bytes = maindataStream.getMark();//----debug
 		// 可以在这调用maindataStream.skipBits(part2_3_bits & 7)丢弃填充位，
 		// 更好的方法是放在解码下一帧主数据之前处理，如果位流错误，可以顺便纠正。
 
+		// 提交异步多相合成滤波
+		occupancySum += filterCh0.occupancy();
+		// 在提交之前设置，这一帧可能在本方法返回前就已输出。每个缓冲区单独记录，
+		// 连续几次定位时前一次预解码的帧可能仍在队列中
+		ringMuted[(int) (frames % depth)] = priming;
+		ringFrame[(int) (frames % depth)] = header.getFrames() - 1;
+		frames++;
+		filterCh0.submit();
+		if (channels == 2)
+			filterCh1.submit();
+
+		// 输出已完成多相合成滤波的帧
+		outputCompleted();
+
+		return off;
+	}
+
+	/**
+	 * 按顺序输出已完成多相合成滤波的帧。
+	 */
+	private void outputCompleted() {
+		long done = filterCh0.completed();
+		if (channels == 2)
+			done = Math.min(done, filterCh1.completed());
+		AudioBuffer ab;
+		int k;
+		long first;
+		final int n = 576 * granules;
+		while (outputFrames < done) {
+			k = (int) (outputFrames % depth);
+			ab = pcmRing[k];
+			first = ringFrame[k] * n; // 这一帧第一个样本的序号
+			if (ringMuted[k])
+				ab.clear();
+			else if (first >= trimStart && first + n <= trimEnd)
+				outputAudio(ab);
+			else
+				outputAudio(ab, (int) Math.max(0, Math.min(n, trimStart - first)) * channels,
+						(int) Math.max(0, Math.min(n, trimEnd - first)) * channels);
+			outputFrames++;
+		}
+	}
+
+	/**
+	 * 等待直到至少 n 帧已输出。不使用锁：多相合成滤波每完成一帧调用 {@link #submitSynthesis()} 唤醒等待的解码线程。
+	 * 
+	 * @return 等待时被中断或多相合成滤波任务抛出异常返回false。
+	 */
+	private boolean waitForSynthesis(long n) {
+		long begin = System.nanoTime();
+		stalls++;
 		try {
-			synchronized (this) {
-				while(semaphore < channels) // 等待上一帧channels个声道完成多相合成滤波
-					wait();
-				semaphore = 0; // 信号量置0
+			waiter = Thread.currentThread();
+			while (true) {
+				outputCompleted();
+				if (outputFrames >= n)
+					return true;
+				if (Thread.interrupted() || synthesisFailure() != null)
+					return false;
+				LockSupport.park(this);
 			}
-		} catch (InterruptedException e) {
-			close();
-			return off;
+		} finally {
+			waiter = null;
+			stallNanos += System.nanoTime() - begin;
 		}
-		
-		//实现播放
-		outputAudio();
+	}
 
-		// 异步多相合成滤波
-		xrch0 = filterCh0.startSynthesis();
-		if(channels == 2)
-			xrch1 = filterCh1.startSynthesis();
+	private Throwable synthesisFailure() {
+		Throwable e = filterCh0.getFailure();
+		return (e == null && channels == 2) ? filterCh1.getFailure() : e;
+	}
 
-		return off;
+	/*
+	 * 多相合成滤波任务抛出异常时在解码线程中抛出IllegalStateException，以异常为原因。
+	 */
+	private void checkSynthesis() {
+		Throwable e = synthesisFailure();
+		if (e != null)
+			throw new IllegalStateException("Synthesis failed", e);
 	}
 
 	/**
-	 * 关闭帧的解码。如果用多线程并发解码，这些并发的解码线程将被终止。
-	 * @see Layer123#close()
+	 * 解码一帧但不输出PCM数据。这一帧完成多相合成滤波后丢弃其输出。
+	 * @see Layer123#primeFrame(byte[], int)
 	 */
-	public synchronized void close() {
-		semaphore = channels;
-		notify();
-
-		super.close();
+	public int primeFrame(byte[] b, int off) {
+		priming = true;
+		try {
+			return decodeFrame(b, off);
+		} finally {
+			priming = false;
+		}
+	}
 
-		filterCh0.shutdown();
+	/**
+	 * 清空位流缓冲区（bit reservoir）和IMDCT的重叠相加缓冲区。定位后的前几帧引用的主数据不在位流缓冲区中，不被解码。
+	 * @see Layer123#reset()
+	 */
+	public void reset() {
+		maindataStream.reset();
+		Arrays.fill(preBlckCh0, 0);
 		if (channels == 2)
-			filterCh1.shutdown();
+			Arrays.fill(preBlckCh1, 0);
+	}
+
+	/**
+	 * 还要求所有已提交的帧都已完成多相合成滤波。解码时被中断的解码器，多相合成滤波线程可能仍在写它的缓冲区，不能复用。
+	 * @see Layer123#accepts(Header)
+	 */
+	public boolean accepts(Header h) {
+		return super.accepts(h) && filterCh0.completed() == frames
+				&& (channels == 1 || filterCh1.completed() == frames);
+	}
+
+	/**
+	 * 丢弃尚未输出的帧，队列统计数据重新开始计算。环形队列的帧序号继续递增，和多相合成滤波线程无需同步。
+	 * @see Layer123#restart()
+	 */
+	public void restart() {
+		super.restart();
+		// 没有在位流中出现的增益因子沿用上一粒度的值，新创建的解码器中为0
+		for (int ch = 0; ch < channels; ch++) {
+			Arrays.fill(scalefacLong[ch], 0);
+			Arrays.fill(scalefacShort[ch], 0);
+		}
+		for (AudioBuffer ab : pcmRing)
+			ab.clear();
+		outputFrames = firstFrame = frames;
+		stalls = stallNanos = occupancySum = 0;
+		trimStart = 0;
+		trimEnd = Long.MAX_VALUE;
+	}
+
+	/**
+	 * 第 n 帧的样本序号从 n * 576 * granules 开始，帧序号由 {@link Header#getFrames()} 得到。
+	 * @see Layer123#setTrim(long, long)
+	 */
+	public void setTrim(long start, long end) {
+		trimStart = start;
+		trimEnd = end;
+	}
+
+	/**
+	 * 关闭帧的解码。等待正在进行的多相合成滤波完成并输出后刷新音频输出缓冲区。
+	 * @see Layer123#close(boolean)
+	 */
+	public void close(boolean drain) {
+		// 等待最后几帧完成多相合成滤波，否则它们的PCM数据可能在刷新缓冲区之后才写入
+		waitForSynthesis(frames);
+		super.close(drain);
+	}
+
+	/**
+	 * 滤波线程完成一帧的滤波任务后调用该方法，唤醒等待空闲缓冲区的解码线程。
+	 */
+	public void submitSynthesis() {
+		Thread t = waiter;
+		if (t != null)
+			LockSupport.unpark(t);
 	}
 
 	/**
-	 * 滤波线程完成一次的滤波任务后向调用者提交结果。滤波线程完成一次滤波任务后调用该方法。
+	 * 获取第 frame 帧多相合成滤波输出PCM数据的缓冲区。
+	 */
+	AudioBuffer getPcmBuffer(long frame) {
+		return pcmRing[(int) (frame % depth)];
+	}
+
+	/**
+	 * 获取解码和多相合成滤波之间环形队列的深度。
+	 * 
+	 * @return 队列深度。
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * 获取已提交多相合成滤波的帧数。
+	 * 
+	 * @return 帧数。
+	 */
+	public long getSubmittedFrames() {
+		return frames - firstFrame;
+	}
+
+	/**
+	 * 获取解码线程因队列已满而等待的次数。这个值和帧数接近时说明解码线程总在等待多相合成滤波，瓶颈在多相合成滤波。
+	 * 
+	 * @return 等待次数。
+	 */
+	public long getStalls() {
+		return stalls;
+	}
+
+	/**
+	 * 获取解码线程因队列已满而等待的总时间。
+	 * 
+	 * @return 等待时间，单位“纳秒”。
+	 */
+	public long getStallNanos() {
+		return stallNanos;
+	}
+
+	/**
+	 * 获取提交一帧时队列中尚未完成多相合成滤波的平均帧数（左声道）。接近队列深度说明多相合成滤波是瓶颈，接近0说明解码是瓶颈。
+	 * 
+	 * @return 队列平均占用数。
+	 */
+	public double getAverageOccupancy() {
+		long n = frames - firstFrame;
+		return n == 0 ? 0 : (double) occupancySum / n;
+	}
+
+	/**
+	 * 获取指定声道多相合成滤波任务因队列为空而结束的次数。
+	 * 
+	 * @param ch
+	 *            声道：0或1。
+	 * @return 空闲次数。
+	 * @see SynthesisConcurrent#getIdleCount()
 	 */
-	public synchronized void submitSynthesis() {
-		if(++semaphore == channels)
-			notify();
+	public long getIdleCount(int ch) {
+		return ch == 0 ? filterCh0.getIdleCount() : filterCh1.getIdleCount();
 	}
 
 	/**
@@ -19,6 +19,8 @@
 */
 package jmp123.decoder;
 
+import java.util.Arrays;
+
 /**
  * 子带多相合成滤波。
  */
@@ -40,9 +42,33 @@ public class Synthesis {
 	 * fifobuf的偏移量，用它完成FIFO队列的移位操作。
 	 */
 	private int[] fifoIndex;
+
+	/*
+	 * 连续写入FIFO队列的全0矩阵运算结果的组数，最大为16。等于16时FIFO队列全为0，加窗运算的结果也全为0。
+	 */
+	private int[] silence;
 	
 	private int maxpcm; //----debug
 
+	/*
+	 * 向量化的加窗运算，为null时使用标量代码。
+	 */
+	private SynthesisWindow window, scalar;
+	private float[][] sums; // [channels][32]，两个声道可能在不同线程中同时滤波
+
+	private static final boolean VECTOR_SUPPORTED;
+	static {
+		boolean supported = false;
+		try {
+			Class.forName("jdk.incubator.vector.FloatVector");
+			Class.forName("jmp123.decoder.VectorWindow");
+			supported = true;
+		} catch (Throwable e) {
+			// JDK版本低于17、未指定 --add-modules jdk.incubator.vector 或未编译VectorWindow
+		}
+		VECTOR_SUPPORTED = supported;
+	}
+
 	/**
 	 * 子带多相合成滤波构造器。
 	 * 
@@ -57,6 +83,73 @@ public class Synthesis {
 		step = (channels == 2) ? 4 : 2;
 		fifobuf = new float[channels][1024];
 		fifoIndex = new int[channels];
+		silence = new int[channels];
+		Arrays.fill(silence, 16);
+		sums = new float[channels][32];
+		if (!"scalar".equals(System.getProperty("jmp123.synthesis")))
+			setVectorEnabled(true);
+	}
+
+	/**
+	 * 清空多相合成滤波的FIFO队列。复用解码器解码另一个文件之前调用。
+	 */
+	void reset() {
+		for (int ch = 0; ch < fifobuf.length; ch++) {
+			Arrays.fill(fifobuf[ch], 0);
+			fifoIndex[ch] = 0;
+			silence[ch] = 16;
+		}
+	}
+
+	/**
+	 * 获取运行环境是否支持向量化的加窗运算。需要JDK 17及以上版本并在运行时指定 <code>--add-modules jdk.incubator.vector</code>。
+	 * 
+	 * @return 支持返回true。
+	 */
+	public static boolean isVectorSupported() {
+		return VECTOR_SUPPORTED;
+	}
+
+	/**
+	 * 指定是否使用向量化的加窗运算。向量化实现和标量代码的输出逐位相同。运行环境支持时默认使用向量化实现，
+	 * 系统属性 <code>jmp123.synthesis=scalar</code> 可以禁止使用。
+	 * 
+	 * @param enable
+	 *            true表示使用向量化实现。
+	 * @return 实际是否使用向量化实现。运行环境不支持时返回false。
+	 */
+	public boolean setVectorEnabled(boolean enable) {
+		window = null;
+		if (enable && VECTOR_SUPPORTED) {
+			try {
+				window = (SynthesisWindow) Class.forName("jmp123.decoder.VectorWindow")
+						.getDeclaredConstructor(float[][].class).newInstance((Object) dewin);
+			} catch (Exception e) {
+			}
+		}
+		return window != null;
+	}
+
+	/*
+	 * 和switch语句中的标量代码运算顺序相同的加窗运算，用于向量化实现不可用时输出其它格式。
+	 */
+	private SynthesisWindow scalarWindow() {
+		if (scalar == null) {
+			scalar = new SynthesisWindow() {
+				public void dewindow(float[] fifo, int index, float[] out) {
+					float sum, win[];
+					int i, k;
+					for (i = 0; i < 32; i++) {
+						win = dewin[i];
+						sum = win[0] * fifo[i + index];
+						for (k = 1; k < 16; k++)
+							sum += win[k] * fifo[i + ((index + (k << 6) + ((k & 1) << 5)) & 0x3FF)];
+						out[i] = sum;
+					}
+				}
+			};
+		}
+		return scalar;
 	}
 
 	/**
@@ -76,17 +169,77 @@ public class Synthesis {
 	 *            当前的声道。左声道0，右声道1。
 	 */
 	public void synthesisSubBand (float[] samples, int ch) {
-		final float[] fifo = fifobuf[ch];
-		final byte[] pcmbuf = audioBuf.pcmbuf;
+		synthesisSubBand(samples, ch, audioBuf);
+	}
+
+	/**
+	 * 一个子带多相合成滤波，输出的PCM写入指定的缓冲区。输入全为0时不作矩阵运算，直接向FIFO队列写入0；
+	 * FIFO队列全为0时也不作加窗运算，直接输出静音。
+	 * 
+	 * @param samples
+	 *            源数据，为32个样本值。
+	 * @param ch
+	 *            当前的声道。左声道0，右声道1。
+	 * @param ab
+	 *            接收PCM数据的缓冲区。
+	 */
+	void synthesisSubBand(float[] samples, int ch, AudioBuffer ab) {
+		final float[] fifo = fifobuf[ch], sums = this.sums[ch];
+		final byte[] pcmbuf = ab.pcmbuf;
 		float sum, win[];
-		int i, pcmi, off = audioBuf.off[ch];
+		int i, pcmi, off = ab.off[ch];
 
 		//1. Shift
 		fifoIndex[ch] = (fifoIndex[ch] - 64) & 0x3FF;
 		//960,896,832,768,704,640,576,512,448,384,320,256,192,128,64,0
 
 		//2. Matrixing
-		dct32to64(samples, fifo, fifoIndex[ch]);
+		for (i = 0; i < 32 && samples[i] == 0; i++)
+			;
+		if (i < 32) {
+			silence[ch] = 0;
+			dct32to64(samples, fifo, fifoIndex[ch]);
+		} else if (silence[ch] < 16) {
+			// 输入全为0，矩阵运算的结果也全为0
+			Arrays.fill(fifo, fifoIndex[ch], fifoIndex[ch] + 64, 0);
+			silence[ch]++;
+		}
+
+		if (silence[ch] == 16) {
+			//3-5. FIFO队列全为0，输出静音
+			if (ab.mode != AudioBuffer.BYTES) {
+				Arrays.fill(sums, 0);
+				ab.store(sums, ch, step >> 1);
+				return;
+			}
+			for (i = 0; i < 32; i++, off += step)
+				pcmbuf[off] = pcmbuf[off + 1] = 0;
+			ab.off[ch] = off;
+			return;
+		}
+
+		if (ab.mode != AudioBuffer.BYTES) {
+			//3-5. 输出16位整数以外的格式或写入调用者的缓冲区
+			(window != null ? window : scalarWindow()).dewindow(fifo, fifoIndex[ch], sums);
+			ab.store(sums, ch, step >> 1);
+			return;
+		}
+
+		if (window != null) {
+			//3-4. 向量化加窗运算
+			window.dewindow(fifo, fifoIndex[ch], sums);
+
+			//5. Calculate and output 32 samples
+			for (i = 0; i < 32; i++, off += step) {
+				sum = sums[i];
+				pcmi = sum > 32767 ? 32767 : (sum < -32768 ? -32768 : (int)sum);
+				pcmbuf[off] = (byte)pcmi;
+				pcmbuf[off + 1] = (byte)(pcmi >>> 8);
+				if(pcmi > maxpcm) maxpcm = pcmi;
+			}
+			ab.off[ch] = off;
+			return;
+		}
 
 		//3. Build the U vector
 		//4. Dewindowing
@@ -509,7 +662,7 @@ public class Synthesis {
 			}
 			break;
 		}
-		audioBuf.off[ch] = off;
+		ab.off[ch] = off;
 	}
 
 	/**
@@ -518,7 +671,7 @@ public class Synthesis {
 	 * @param dest 暂存输出值的长度为1024个元素的FIFO队列。
 	 * @param off FIFO队列的偏移量。一个子带一次矩阵运算输出64个值连续存储到FIFO队列，存储的起始位置由off指定。
 	 */
-	private void dct32to64(float[] src, float[] dest, int off) {
+	void dct32to64(float[] src, float[] dest, int off) {
 		final float[] in = src, out = dest;
 		final int i = off;
 		float in0,in1,in2,in3,in4,in5,in6,in7,in8,in9,in10,in11,in12,in13,in14,in15;
@@ -3,6 +3,11 @@
  */
 package jmp123.decoder;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * 一个声道多相频率倒置和多相合成滤波。用于两个声道并发运算。<p>
  * 由于大量浮点运算，多相合成滤波耗时最多。解码一帧2声道MP3，实测多相合成滤波耗时占60%以上，若并发运算可提高解码速度。<p>
@@ -14,13 +19,37 @@ package jmp123.decoder;
  * <tr><td align="left" colspan="4">注(1) CPU：双核2.93GHz / JDK： sun 1.6.0_27
  * <p>(2) 基础测试是一个比较复杂的问题，本次测结果试并不一定是问题的最终结论。</td></tr>
  * </table>
+ * <p>
+ * 每帧的多相合成滤波作为一个任务提交给 {@link Executor} 执行，不再为每个声道创建专用线程。可以使用多个解码器共享的线程池
+ * {@link #sharedPool()}、虚拟线程 {@link #virtualThreads()}，或在解码线程中串行执行的 {@link #INLINE}。
+ * <p>
+ * 解码线程（生产者）和多相合成滤波任务（消费者）之间用一个无锁的单生产者/单消费者环形队列传递每帧的xr数据，
+ * 队列深度即解码线程最多可以领先多相合成滤波的帧数。
  */
 public final class SynthesisConcurrent implements Runnable {
+	/**
+	 * 在调用 {@link #submit()} 的线程中直接执行多相合成滤波，即单线程串行解码。
+	 */
+	public static final Executor INLINE = new Executor() {
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private static Executor sharedPool, virtualThreads;
+
 	private int ch;
 	private float[] samples;
-	private float[][] preXR, curXR; // 和调用者并发运算用双缓冲
+	private float[][][] ring; // [depth][granules][32*18]
+	private int depth;
 	private Layer3 owner;
-	private boolean pause, alive;
+	private Executor executor;
+
+	// head: 已提交的帧数，只由生产者写；tail: 已完成多相合成滤波的帧数，只由消费者写
+	private volatile long head, tail;
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private volatile long idleCount;
+	private volatile Throwable failure;
 
 	/**
 	 * 构造SynthesisConcurrent实例。便于调用者实现多相合成滤波并发运算。
@@ -29,97 +58,207 @@ public final class SynthesisConcurrent implements Runnable {
 	 *            拥有此多相合成滤波器的对象。
 	 * @param ch
 	 *            指定的声道：0或1。
+	 * @param executor
+	 *            执行多相合成滤波任务的 {@link Executor}。
+	 * @param depth
+	 *            环形队列深度，不小于2。
 	 */
-	public SynthesisConcurrent(Layer3 owner, int ch) {
+	public SynthesisConcurrent(Layer3 owner, int ch, Executor executor, int depth) {
 		this.owner = owner;
 		this.ch = ch;
-		alive = pause = true;
+		this.executor = executor;
+		this.depth = depth;
 		samples = new float[32];
-		preXR = new float[owner.granules][32 * 18];
-		curXR = new float[owner.granules][32 * 18];
+		ring = new float[depth][owner.granules][32 * 18];
 	}
 
 	/**
-	 * 交换缓冲区并唤醒SynthesisConcurrent线程。
+	 * 获取多个解码器共享的线程池。线程数等于可用的处理器数（至少2个），线程为守护线程。
 	 * 
-	 * @return 一个空闲的缓冲区，该缓冲区用于使用SynthesisConcurrent线程的对象在逆量化、抗锯齿和IMDCT时暂存数据。
+	 * @return 共享的线程池。
+	 */
+	public static synchronized Executor sharedPool() {
+		if (sharedPool == null)
+			sharedPool = new Pool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+		return sharedPool;
+	}
+
+	/*
+	 * 共享线程池。ThreadPoolExecutor每提交一个任务分配一个队列结点，工作线程等待任务时还要分配条件队列的结点；
+	 * 这里任务存放在定长的数组中，用wait/notify同步，提交和执行任务都不分配内存。队列满时在提交任务的线程中执行。
 	 */
-	public float[][] startSynthesis() {
-		// 1. 交换缓冲区
-		float[][] p = preXR;
-		preXR = curXR;
-		curXR = p;
-
-		// 2. 通知run()干活
-		synchronized (this) {
-			pause = false;
-			notify();
+	private static final class Pool implements Executor {
+		private final Runnable[] queue = new Runnable[256];
+		private int first, count;
+
+		Pool(int threads) {
+			for (int i = 1; i <= threads; i++) {
+				Thread t = new Thread(new Runnable() {
+					public void run() {
+						work();
+					}
+				}, "synthesis-" + i);
+				t.setDaemon(true);
+				t.start();
+			}
 		}
 
-		// 3. 返回"空闲的"缓冲区，该缓冲区内的数据已被run()方法使用完毕
-		return preXR;
+		public void execute(Runnable command) {
+			synchronized (this) {
+				if (count < queue.length) {
+					queue[(first + count++) & (queue.length - 1)] = command;
+					notify();
+					return;
+				}
+			}
+			command.run();
+		}
+
+		private void work() {
+			Runnable r;
+			Thread t = Thread.currentThread();
+			while (true) {
+				synchronized (this) {
+					try {
+						while (count == 0)
+							wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+					r = queue[first];
+					queue[first] = null;
+					first = (first + 1) & (queue.length - 1);
+					count--;
+				}
+				try {
+					r.run();
+				} catch (RuntimeException e) {
+					t.getUncaughtExceptionHandler().uncaughtException(t, e);
+				}
+			}
+		}
 	}
 
 	/**
-	 * 获取一个空闲的缓冲区。
+	 * 获取每个任务使用一个虚拟线程的 {@link Executor}。需要JDK 21或更新的版本，在旧版本的JDK上返回 {@link #sharedPool()}。
 	 * 
+	 * @return 使用虚拟线程的Executor。
+	 */
+	public static synchronized Executor virtualThreads() {
+		if (virtualThreads == null) {
+			try {
+				virtualThreads = (ExecutorService) Executors.class
+						.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (Exception e) {
+				virtualThreads = sharedPool(); // 只查找一次
+			}
+		}
+		return virtualThreads;
+	}
+
+	/**
+	 * 获取第 frame 帧使用的缓冲区。调用者应确保该帧和已完成多相合成滤波的帧相差小于队列深度，即 frame - {@link #completed()} &lt; depth。
+	 * 
+	 * @param frame
+	 *            帧序号，即已提交的帧数。
 	 * @return 一个空闲的缓冲区，该缓冲区用于使用SynthesisConcurrent的对象在逆量化、抗锯齿和IMDCT时暂存数据。
 	 */
-	public float[][] getBuffer() {
-		return preXR;
+	public float[][] getBuffer(long frame) {
+		return ring[(int) (frame % depth)];
 	}
 
 	/**
-	 * 关闭SynthesisConcurrent线程。
+	 * 提交已填好的一帧数据。如果多相合成滤波任务没有在运行，向 {@link Executor} 提交一个任务。任务抛出过异常后不再提交。
 	 */
-	public synchronized void shutdown() {
-		alive = pause = false;
-		notify();
+	public void submit() {
+		head = head + 1;
+		if (failure == null && scheduled.compareAndSet(false, true))
+			executor.execute(this);
 	}
 
 	/**
-	 * 使用SynthesisConcurrent的对象创建一个线程时，启动该线程将导致在独立执行的线程中调用SynthesisConcurrent的 run
-	 * 方法进行异步多相合成滤波。
+	 * 获取已完成多相合成滤波的帧数。
+	 * 
+	 * @return 已完成的帧数。
+	 */
+	public long completed() {
+		return tail;
+	}
+
+	/**
+	 * 获取队列中等待或正在进行多相合成滤波的帧数。
+	 * 
+	 * @return 队列占用数。
+	 */
+	public int occupancy() {
+		return (int) (head - tail);
+	}
+
+	/**
+	 * 获取多相合成滤波任务因队列为空而结束的次数。这个值和帧数接近时说明多相合成滤波总在等待解码线程，瓶颈在解码线程。
+	 * 
+	 * @return 消费者空闲的次数。
+	 */
+	public long getIdleCount() {
+		return idleCount;
+	}
+
+	/**
+	 * 获取多相合成滤波任务抛出的异常。任务抛出异常后不再推进已完成的帧数，拥有者应停止等待。
+	 * 
+	 * @return 任务抛出的异常；没有异常返回null。
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	/**
+	 * 对队列中已提交的帧依次进行多相合成滤波，每完成一帧通知拥有者。队列为空时结束。由 {@link Executor} 调用。
 	 */
 	public void run() {
+		long t;
+		do {
+			t = tail;
+			try {
+				while (t < head) {
+					synthesis(ring[(int) (t % depth)], owner.getPcmBuffer(t));
+					tail = ++t;
+					owner.submitSynthesis();
+				}
+				idleCount++;
+			} catch (Throwable e) {
+				// 记录异常并唤醒等待的解码线程，否则它会一直等待这一帧完成
+				failure = e;
+				owner.submitSynthesis();
+				throw e;
+			} finally {
+				scheduled.set(false);
+			}
+			// 在清除标志之后生产者可能又提交了帧但没有提交任务
+		} while (t < head && scheduled.compareAndSet(false, true));
+	}
+
+	private void synthesis(float[][] xrch, AudioBuffer pcm) {
 		int gr, sub, ss, i;
 		int granules = owner.granules;
 		Synthesis filter = owner.filter;
 		float[] xr;
 
-		try {
-			while (alive) {
-				// 1. 休息
-				synchronized (this) {
-					while (pause)
-						wait();
-					pause = true;
-				}
+		for (gr = 0; gr < granules; gr++) {
+			xr = xrch[gr];
+			for (ss = 0; ss < 18; ss += 2) {
+				for (i = ss, sub = 0; sub < 32; sub++, i += 18)
+					samples[sub] = xr[i];
+				filter.synthesisSubBand(samples, ch, pcm);
 
-				// 2. 干活
-				for (gr = 0; gr < granules; gr++) {
-					xr = curXR[gr];
-					for (ss = 0; ss < 18; ss += 2) {
-						for (i = ss, sub = 0; sub < 32; sub++, i += 18)
-							samples[sub] = xr[i];
-						filter.synthesisSubBand(samples, ch);
-
-						for (i = ss + 1, sub = 0; sub < 32; sub += 2, i += 36) {
-							samples[sub] = xr[i];
-
-							// 多相频率倒置(INVERSE QUANTIZE SAMPLES)
-							samples[sub + 1] = -xr[i + 18];
-						}
-						filter.synthesisSubBand(samples, ch);
-					}
-				}
+				for (i = ss + 1, sub = 0; sub < 32; sub += 2, i += 36) {
+					samples[sub] = xr[i];
 
-				// 3. 提交结果
-				owner.submitSynthesis();
+					// 多相频率倒置(INVERSE QUANTIZE SAMPLES)
+					samples[sub + 1] = -xr[i + 18];
+				}
+				filter.synthesisSubBand(samples, ch, pcm);
 			}
-		} catch (InterruptedException e) {
-			//e.printStackTrace();
 		}
-		//System.out.println(Thread.currentThread().getName() + " shutdown. ");
 	}
 }
@@ -0,0 +1,22 @@
+/*
+ * SynthesisWindow.java -- 多相合成滤波加窗运算
+ */
+package jmp123.decoder;
+
+/**
+ * 多相合成滤波加窗运算（Build the U vector、Dewindowing）的可替换实现。{@link Synthesis} 默认用标量代码完成加窗运算，
+ * 运行环境支持时可以改用这个接口的向量化实现。
+ */
+interface SynthesisWindow {
+	/**
+	 * 用FIFO队列中的数据计算一个子带的32个输出样本。输出值未限幅。
+	 * 
+	 * @param fifo
+	 *            长度为1024个元素的FIFO队列。
+	 * @param index
+	 *            FIFO队列的偏移量，为64的整数倍。
+	 * @param out
+	 *            长度为32的输出缓冲区。
+	 */
+	void dewindow(float[] fifo, int index, float[] out);
+}
@@ -9,11 +9,19 @@ import org.websoft.util.ProcessBarTimer;
 import org.websoft.widget.ListPane;
 
 import jmp123.PlayBack;
+import jmp123.decoder.Header;
 import jmp123.decoder.IAudio;
 
 public class PlayListThread extends Thread {
+	/**
+	 * 当前文件剩余的播放时间少于这个值（单位“秒”）时开始预读下一个文件。
+	 */
+	public static final int PREFETCH_SECONDS = 10;
+
 	private volatile boolean interrupted;
-	private PlayBack playback;
+	private volatile PlayBack playback;
+	private PlayBack spare;          //预读下一个文件，和playback交替使用
+	private Prefetcher prefetcher;
 	private ListPane playlist;
 	private JSlider progressBar;
 	private JSlider volumeBar;
@@ -27,6 +35,9 @@ public class PlayListThread extends Thread {
 	public PlayListThread(ListPane playlist, IAudio audio, JSlider progressBar, JSlider volumeBar) {
 		this.playlist = playlist;
 		playback = new PlayBack(audio);
+		playback.setGapless(true);
+		spare = new PlayBack(audio);
+		spare.setGapless(true);
 		setName("playlist_thread");
 		this.progressBar = progressBar;
 		this.volumeBar = volumeBar;
@@ -154,7 +165,8 @@ public class PlayListThread extends Thread {
 //			System.out.println(filename);//##
 
 			try {
-				if (playback.open(filename, item.toString())) {
+				if (open(curIndex, item)) {
+					prefetch();
 //					playback.getID3Tag().printTag();
 //					playback.getHeader().printHeaderInfo();
 					currentFrames = playback.getHeader().getTrackFrames();
@@ -180,8 +192,117 @@ public class PlayListThread extends Thread {
 				}
 			}
 		}
+		if (prefetcher != null)
+			prefetcher.cancel();
+		// 无缝播放时播放每个文件后不关闭音频输出
+		playback.closeAudio();
 		//System.out.println("jmp123.gui.PlayListThread.run() ret.");
 	}
+
+	/*
+	 * 打开第index个文件。已经预读了这个文件时改用预读它的PlayBack，否则取消预读。
+	 */
+	private boolean open(int index, PlayListItem item) throws IOException {
+		Prefetcher p = prefetcher;
+		prefetcher = null;
+		if (p != null) {
+			if (p.index == index && p.item == item && p.await()) {
+				synchronized (this) {
+					spare = playback;
+					playback = p.target;
+				}
+				return playback.openAudio();
+			}
+			p.cancel();
+		}
+		return playback.open(item.getPath(), item.toString());
+	}
+
+	/*
+	 * 在后台预读播放列表中的下一个文件。
+	 */
+	private void prefetch() {
+		int index = playlist.peekNextIndex();
+		if (index == -1)
+			return;
+		prefetcher = new Prefetcher(spare, index, playlist.getPlayListItem(index), playback.getHeader());
+		prefetcher.start();
+	}
+
+	/**
+	 * 预读下一个文件：当前文件快播放完时打开下一个文件，解析标签信息和帧头。网络文件在此时开始缓冲，切换文件时不必再等待。
+	 */
+	private static final class Prefetcher extends Thread {
+		private final PlayBack target;
+		private final int index;
+		private final PlayListItem item;
+		private final Header current; // 正在播放的文件的帧头
+		private boolean now, cancelled, done, ready;
+
+		Prefetcher(PlayBack target, int index, PlayListItem item, Header current) {
+			this.target = target;
+			this.index = index;
+			this.item = item;
+			this.current = current;
+			setName("prefetch_thread");
+			setDaemon(true);
+		}
+
+		public void run() {
+			boolean ok = false;
+			try {
+				synchronized (this) {
+					while (!now && !cancelled
+							&& current.getDuration() - current.getElapse() > PREFETCH_SECONDS)
+						wait(500);
+					if (cancelled)
+						return;
+				}
+				ok = target.prepare(item.getPath(), item.toString());
+			} catch (InterruptedException e) {
+			} catch (IOException e) {
+				// 播放到这个文件时再打开一次
+			} finally {
+				synchronized (this) {
+					ready = ok;
+					done = true;
+					notifyAll();
+				}
+			}
+		}
+
+		/*
+		 * 立即开始预读（如果尚未开始）并等待预读完成。
+		 */
+		synchronized boolean await() {
+			now = true;
+			notifyAll();
+			try {
+				while (!done)
+					wait();
+			} catch (InterruptedException e) {
+				return false;
+			}
+			return ready;
+		}
+
+		/*
+		 * 取消预读并关闭已预读的文件。
+		 */
+		void cancel() {
+			synchronized (this) {
+				cancelled = true;
+				notifyAll();
+			}
+			interrupt(); // 中断网络文件的缓冲
+			target.stop();
+			try {
+				join();
+			} catch (InterruptedException e) {
+			}
+			target.close();
+		}
+	}
 }
 
 
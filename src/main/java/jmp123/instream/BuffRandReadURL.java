@@ -22,30 +22,47 @@
 */
 package jmp123.instream;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.util.Arrays;
 
 import jmp123.decoder.IAudio;
 
 /**
  * 读取网络文件，带缓冲区。
+ * <p>
+ * 文件按 {@link #BLOCKLEN} 字节分块下载，第k块存放在环形缓冲区的第 k % BLOCKS 个块中，缓冲区存放从读取位置开始的 BLOCKS 块。
+ * 服务器支持按范围读取（HTTP Range）时用多个连接同时下载不同的块，并且可以随机读取定位；否则用一个连接按顺序下载，不能定位。
+ * 连接数由系统属性 <code>jmp123.http.connections</code> 指定，默认为4。
+ * <p>
+ * 读取时只等待从读取位置开始连续缓冲了要读的字节数（至少一块），写线程在后台继续填满缓冲区，
+ * 开始播放和定位之后不必等缓冲区填满。
  */
 public class BuffRandReadURL extends RandomRead {
 	private static final int BLOCKLEN = 4096 * 8; //32K
-	private static final int BUFLEN = BLOCKLEN << 4;
+	private static final int BLOCKS = 16;
+	private static final int BUFLEN = BLOCKLEN * BLOCKS;
 	private static final int OFFMASK = BUFLEN - 1;
-	private static final int BUFFERSIZE = BUFLEN - BLOCKLEN;
-	private int offset;  // 相对于文件首的偏移量
-	private byte[] lock; // 读和写(缓冲)互斥
-	private byte[] buf;  // 同时作写线程同步锁
-	private int bufsize; // buf已填充的字节数
+	private static final int BUFFERSIZE = BUFLEN - BLOCKLEN; // 一次最多读取的字节数
+	private static final int MINBUFFERED = BLOCKLEN; // 等待缓冲时至少缓冲的字节数
+	private static final int CONNECTIONS = Math.max(1, Integer.getInteger("jmp123.http.connections", 4));
+	private long offset; // 相对于文件首的偏移量
+	private byte[] lock; // 读和写(缓冲)互斥，同时作读写线程同步锁
+	private byte[] buf;
+	private long[] slotBlock; // 缓冲区每一块存放的块号，-1表示空闲
+	private int[] slotFill;   // 缓冲区每一块已下载的字节数
+	private long nextBlock;   // 下一个要下载的块号
+	private int generation;   // 每次定位后加1，写线程丢弃定位之前开始下载的块
 	private boolean acceptRanges; // true: 目标文件可随机读取定位
-	private volatile boolean eof; // true: 文件已经下载完.
+	private volatile boolean eof; // true: 已关闭或下载出错，不再下载.
 	private IAudio audio;
+	private URL url;
 	private HttpConnection connection;
+	private Writer[] writers;
 
 	/**
 	 * 创建一个读取网络文件的对象。并不会由audio指定的音频输出对象产生任何音频输出，仅仅使用audio定时刷新并显示缓冲等信息。
@@ -55,6 +72,9 @@ public class BuffRandReadURL extends RandomRead {
 		this.audio = audio;
 		buf = new byte[BUFLEN];
 		lock = new byte[0];
+		slotBlock = new long[BLOCKS];
+		slotFill = new int[BLOCKS];
+		Arrays.fill(slotBlock, -1);
 		connection = new HttpConnection();
 	}
 
@@ -67,7 +87,9 @@ public class BuffRandReadURL extends RandomRead {
 		if(audio != null && title != null)
 			audio.refreshMessage(title);
 
-		connection.open(new URL(spec), null);
+		// 请求第一块，服务器支持按范围读取时返回206
+		url = new URL(spec);
+		connection.open(url, null, 0, BLOCKLEN - 1);
 		int code = connection.getResponseCode();
 		if (code < 200 || code >= 300)
 			return printErrMsg("URL Connection Fails. ResponseCode: " + code
@@ -77,20 +99,31 @@ public class BuffRandReadURL extends RandomRead {
 		if(s2 == null || s2.startsWith("audio") == false)
 			return printErrMsg("Illegal Content-Type: " + s2);*/
 
-		if ((length = connection.getContentLength()) <= 0)
+		acceptRanges = code == 206;
+		if ((length = connection.getCompleteLength()) <= 0)
 			return printErrMsg("Failed to get file length.");
 
 		System.out.println("\nPLAY>> " + s1);
 
-		acceptRanges = "bytes".equals(connection.getHeaderField("Accept-Ranges"));
 		//if(!acceptRanges)
 		//	System.out.println(url.getHost() + ": not support multi-threaded downloads.");
 
-		// 创建"写"线程
-		Writer w = new Writer();
-		w.setName("writer_thrad");
-		w.setPriority(Thread.NORM_PRIORITY + 2);
-		w.start();
+		// 创建"写"线程，第一个写线程接着读取已打开的连接，下载第一块
+		writers = new Writer[acceptRanges ? CONNECTIONS : 1];
+		for (int i = 0; i < writers.length; i++) {
+			writers[i] = new Writer();
+			writers[i].setName("writer_thread-" + i);
+			writers[i].setPriority(Thread.NORM_PRIORITY + 2);
+		}
+		writers[0].attach(connection, 0, acceptRanges ? Math.min(BLOCKLEN, length) : length);
+		synchronized (lock) {
+			writers[0].block = nextBlock++;
+			writers[0].blockGen = generation;
+			slotBlock[0] = 0;
+			slotFill[0] = 0;
+		}
+		for (Writer w : writers)
+			w.start();
 
 		return true;
 	}
@@ -104,10 +137,13 @@ public class BuffRandReadURL extends RandomRead {
 
 	public int read(byte[] b, int off, int len) {
 		// 1.等待缓冲区有足够内容可读
+		int bufsize;
+		if (len > BUFFERSIZE)
+			len = BUFFERSIZE;
 		synchronized (lock) {
-			while (bufsize < len && !eof) {
+			while ((bufsize = buffered()) < len && !eof && offset + bufsize < length) {
 				try {
-					waitForBuffering();
+					waitForBuffering(len);
 				} catch (InterruptedException e) {
 					return -1;
 				}
@@ -119,37 +155,61 @@ public class BuffRandReadURL extends RandomRead {
 		}
 
 		// 2.从缓冲区读取
-		int srcOff = offset & OFFMASK;
+		int srcOff = (int) (offset & OFFMASK);
 		int bytes = BUFLEN - srcOff;
 		if (bytes < len) {
 			System.arraycopy(buf, srcOff, b, off, bytes);
 			System.arraycopy(buf, 0, b, off + bytes, len - bytes);
 		} else
 			System.arraycopy(buf, srcOff, b, off, len);
-		synchronized (lock) {
-			bufsize -= len;
-		}
-		offset += len;
 
 		// 3.通知"写"线程
-		synchronized (buf) {
-			buf.notify();
+		synchronized (lock) {
+			offset += len;
+			lock.notifyAll();
 		}
 
 		return len;
 	}
 
-	private void waitForBuffering() throws InterruptedException {
+	/*
+	 * 从读取位置开始连续已下载的字节数。调用者持有lock。
+	 */
+	private int buffered() {
+		long k = offset / BLOCKLEN;
+		int i, s, n = 0;
+		for (i = 0; i < BLOCKS; i++, k++) {
+			s = (int) (k % BLOCKS);
+			if (slotBlock[s] != k)
+				break;
+			n += slotFill[s];
+			if (slotFill[s] < blockLength(k))
+				break;
+		}
+		return Math.max(0, n - (int) (offset % BLOCKLEN));
+	}
+
+	private int blockLength(long k) {
+		return (int) Math.min(BLOCKLEN, length - k * BLOCKLEN);
+	}
+
+	/*
+	 * 等待从读取位置开始连续缓冲至少len字节（不少于MINBUFFERED字节）或到达文件末尾。调用者持有lock。
+	 */
+	private void waitForBuffering(int len) throws InterruptedException {
 		String msg;
 		float kbps;
-		long t, t1 = System.currentTimeMillis();
-		while (bufsize < BUFFERSIZE && !eof) {
+		int bufsize, target = Math.max(len, MINBUFFERED);
+		long t, t1 = System.currentTimeMillis(), next = 200;
+		while ((bufsize = buffered()) < target && !eof && offset + bufsize < length) {
 			lock.wait();
-			if((t = System.currentTimeMillis() - t1) < 200)
+			// 每次读到数据都会被唤醒，每200毫秒才刷新一次消息，避免频繁格式化字符串
+			if((t = System.currentTimeMillis() - t1) < next)
 				continue;
-			kbps = (float) (BUFLEN >> 10) * 1000 / t;
+			next = t + 200;
+			kbps = (float) (bufsize >> 10) * 1000 / t;
 			msg = String.format("\rbuffered: %6.2f%%, %6.02fKB/s ",
-					100f * bufsize / BUFLEN, kbps);
+					100f * bufsize / target, kbps);
 			if(audio != null)
 				audio.refreshMessage(msg);
 			else
@@ -170,95 +230,181 @@ public class BuffRandReadURL extends RandomRead {
 	public void close() {
 		// 结束Writer线程
 		eof = true;
-		synchronized (buf) {
-			buf.notify();
+		synchronized (lock) {
+			lock.notifyAll();
 		}
 
-		try {
-			connection.close();
-		} catch (IOException e) {
+		// 正在下载的块剩余不多时让写线程读完，连接放回空闲连接池，下一个文件可以复用；否则关闭连接，中断阻塞的下载
+		if (writers == null) {
+			try {
+				connection.close();
+			} catch (IOException e) {
+			}
+		} else {
+			for (Writer w : writers)
+				if (w.end - w.pos > BLOCKLEN)
+					w.detach();
 		}
 	}
 
-	public boolean seek(long pos) {
+	public boolean seek(long pos) throws IOException {
 		if(acceptRanges == false)
 			return false;
-		// 尚未完善随机读取定位...
-		return false;
+		if (pos < 0)
+			throw new IOException("Negative seek offset: " + pos);
+		synchronized (lock) {
+			long k = pos / BLOCKLEN;
+			offset = pos;
+			// 目标位置已在缓冲区内时保留缓冲的内容，否则丢弃所有块，从目标位置所在的块开始下载
+			if (slotBlock[(int) (k % BLOCKS)] != k || nextBlock > k + BLOCKS) {
+				generation++;
+				Arrays.fill(slotBlock, -1);
+				nextBlock = k;
+			}
+			lock.notifyAll();
+		}
+		return true;
 	}
 
 	//=========================================================================
+	/*
+	 * 写线程：取得下一个要下载的块并下载。服务器支持按范围读取时每一块用一个Range请求下载，多个写线程同时下载相邻的块。
+	 */
 	private class Writer extends Thread {
+		private HttpConnection conn;
+		private InputStream instream;
+		private volatile long pos, end; // 当前连接下一个读到的字节和响应内容之后的位置
+		private long block = -1; // 已分配给此线程、尚未开始下载的块
+		private int blockGen;
+		private byte[] b = new byte[4096];
 
-		public void run() {
-			int len, off = 0, rema = 0, retry = 0;
-			long bytes = 0;
-			InputStream instream = connection.getInputStream();
-			if(instream == null)
-				return;
+		/*
+		 * 接着读取已打开的连接，它的响应内容是文件中[first, last)的数据。
+		 */
+		synchronized void attach(HttpConnection c, long first, long last) {
+			conn = c;
+			instream = c.getInputStream();
+			pos = first;
+			end = last;
+		}
+
+		/*
+		 * 关闭当前连接，下载被阻塞时及时返回。
+		 */
+		synchronized void detach() {
+			if (conn != null) {
+				try {
+					conn.close();
+				} catch (IOException e) {
+				}
+			}
+			conn = null;
+			instream = null;
+		}
+
+		/*
+		 * 请求文件中[first, last)的数据。
+		 */
+		private void request(long first, long last) throws IOException {
+			detach();
+			if (eof)
+				throw new EOFException();
+			HttpConnection c = new HttpConnection();
+			attach(c, first, last);
+			if (eof) {
+				detach();
+				throw new EOFException();
+			}
+			c.open(url, null, first, last - 1);
+			if (c.getResponseCode() != 206)
+				throw new IOException("Range request fails. ResponseCode: " + c.getResponseCode());
+			instream = c.getInputStream();
+		}
 
+		public void run() {
+			long k;
+			int gen, s;
 			try {
 				while (!eof) {
 					// 1.等待空闲块
-					if (retry == 0) {
-						while(!eof) {
-							synchronized (lock) {
-								if(bufsize <= BUFFERSIZE)
-									break;
-							}
-							synchronized (buf) {
-								buf.wait();
-							}
-						}
-						off &= OFFMASK;
-						rema = BLOCKLEN;
-					}
-
-					// 2.下载一块,超时重试10次
-					try {
-						while (rema > 0 && !eof) {
-							len = (rema < 4096) ? rema : 4096; // 每次读几K合适?
-							if ((len = instream.read(buf, off, len)) == -1) {
-								eof = true;
-								break;
-							}
-							rema -= len;
-							off += len;
-							if((bytes += len) >= length) {
-								eof = true;
+					synchronized (lock) {
+						if (block < 0) {
+							while (!eof && (nextBlock * BLOCKLEN >= length || nextBlock >= offset / BLOCKLEN + BLOCKS))
+								lock.wait();
+							if (eof)
 								break;
-							}
-							//System.out.printf("bytes=%,d  len=%d  rema=%d\n", bytes, len, rema);
+							block = nextBlock++;
+							blockGen = generation;
+							s = (int) (block % BLOCKS);
+							slotBlock[s] = block;
+							slotFill[s] = 0;
 						}
-					} catch (SocketTimeoutException e) {
-						retry++;
-						System.out.printf("[B# %,d] Timeout, retry=%d\n",bytes, retry);
-						if (retry < 10)
-							continue;
-						System.out.printf("B# %,d: out of retries. Giving up.\n", bytes);
-						eof = true; // 终止下载
+						k = block;
+						gen = blockGen;
+						block = -1;
 					}
-					retry = 0;
+					s = (int) (k % BLOCKS);
 
-					// 3.通知读线程
-					synchronized (lock) {
-						bufsize += BLOCKLEN - rema;
-						lock.notify();
-					}
+					// 2.下载一块
+					download(k, gen, s);
 				}
 			} catch (Exception e) {
-				System.out.println("BuffRandReadURL.Writer.run(): " + e.toString());
+				if (!eof)
+					System.out.println("BuffRandReadURL.Writer.run(): " + e.toString());
 			} finally {
+				// 一个写线程出错时终止下载
 				eof = true;
 				synchronized (lock) {
-					lock.notify();
+					lock.notifyAll();
 				}
+				detach();
+			}
+			//System.out.println("\nBuffRandReadURL.Writer.run() ret.");
+		}
+
+		/*
+		 * 下载第k块，超时重试10次。定位后丢弃这一块。
+		 */
+		private void download(long k, int gen, int s) throws IOException {
+			long first = k * BLOCKLEN;
+			int len, fill = 0, retry = 0, blocklen = blockLength(k);
+			while (fill < blocklen) {
 				try {
-					instream.close();
-				} catch (IOException e) {
+					if (instream == null || pos != first + fill) {
+						if (!acceptRanges)
+							throw new IOException("Range requests are not supported.");
+						request(first + fill, first + blocklen);
+					}
+					len = Math.min(b.length, blocklen - fill);
+					if ((len = instream.read(b, 0, len)) == -1)
+						throw new EOFException("Unexpected end of stream at " + pos);
+					pos += len;
+					if (pos == end)
+						detach(); // 响应内容已读完，连接放回空闲连接池
+				} catch (SocketTimeoutException e) {
+					if (eof)
+						throw e;
+					retry++;
+					System.out.printf("[B# %,d] Timeout, retry=%d\n", first + fill, retry);
+					if (retry < 10) {
+						if (acceptRanges)
+							detach(); // 重新请求
+						continue;
+					}
+					System.out.printf("B# %,d: out of retries. Giving up.\n", first + fill);
+					throw e;
+				}
+
+				// 3.通知读线程
+				synchronized (lock) {
+					if (gen != generation)
+						return;
+					System.arraycopy(b, 0, buf, (int) ((first + fill) & OFFMASK), len);
+					fill += len;
+					slotFill[s] = fill;
+					lock.notifyAll();
 				}
 			}
-			//System.out.println("\nBuffRandReadURL.Writer.run() ret.");
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,236 @@
+/*
+ * FrameIndex.java -- 帧索引（定位表）及其磁盘缓存
+ */
+package jmp123.instream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+
+import jmp123.decoder.Header;
+import jmp123.decoder.ID3Tag;
+
+/**
+ * 本地MPEG音频文件的帧索引，记录每一帧在文件中的位置，用于按帧号直接定位（{@link RandomRead#seek(long)}）。
+ * <p>
+ * 索引由只解码帧头的扫描得到，帧序号和 {@link jmp123.PlayBack} 从文件开头逐帧调用 {@link Header#syncFrame(byte[], int, int)}
+ * 得到的帧序号相同。每一帧记录的位置是查找该帧的帧同步字时的起始位置，即上一帧的结束位置。
+ * <p>
+ * 索引以紧凑的二进制格式缓存在磁盘上（相邻两帧位置的差值用变长整数存储），用文件长度和最后修改时间判断缓存是否有效。
+ * 缓存目录由系统属性 <code>jmp123.index.dir</code> 指定，默认为 <code>~/.jmp123/index</code>。
+ */
+public final class FrameIndex {
+	private static final int MAGIC = 0x4A334958; // "J3IX"
+	private static final int VERSION = 1;
+	private static final int BUFLEN = 8192;
+
+	private final long[] offsets;
+
+	private FrameIndex(long[] offsets) {
+		this.offsets = offsets;
+	}
+
+	/**
+	 * 获取文件的帧索引。缓存有效时从缓存读取，否则扫描文件并写入缓存。写缓存失败不影响返回的索引。
+	 * 扫描要读完整个文件，不要在解码线程中调用。
+	 *
+	 * @param name
+	 *            本地文件名。
+	 * @return 帧索引。
+	 * @throws IOException
+	 *             读文件时发生I/O错误。
+	 */
+	public static FrameIndex forFile(String name) throws IOException {
+		File file = new File(name).getAbsoluteFile();
+		long length = file.length(), mtime = file.lastModified();
+		File cache = cacheFile(file);
+		FrameIndex index = load(cache, file.getPath(), length, mtime);
+		if (index == null) {
+			index = scan(name);
+			try {
+				index.save(cache, file.getPath(), length, mtime);
+			} catch (IOException e) {
+				// 缓存目录不可写时下次打开这个文件再扫描
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * 扫描文件，只解码帧头，建立帧索引。和 {@link jmp123.PlayBack} 相同，系统属性 <code>jmp123.mmap=false</code> 时不用内存映射读文件。
+	 *
+	 * @param name
+	 *            本地文件名。
+	 * @return 帧索引。
+	 * @throws IOException
+	 *             读文件时发生I/O错误，或者扫描线程被中断（{@link InterruptedIOException}）。
+	 */
+	public static FrameIndex scan(String name) throws IOException {
+		RandomRead in;
+		if ("false".equals(System.getProperty("jmp123.mmap")))
+			in = new BuffRandReadFile();
+		else
+			in = new MappedRandReadFile();
+		try {
+			in.open(name, null);
+			byte[] buf = new byte[BUFLEN];
+			long base = 0; // buf[0]在文件中的位置
+			int off = 0, len, chunk;
+			int maxOff = Math.max(0, in.read(buf, 0, BUFLEN));
+
+			// 和PlayBack相同，跳过ID3 v2标签
+			int tagSize = new ID3Tag().checkID3V2(buf, 0);
+			if (tagSize > maxOff) {
+				in.seek(base = tagSize);
+				maxOff = Math.max(0, in.read(buf, 0, BUFLEN));
+			} else if (tagSize > 10)
+				off = tagSize;
+
+			Header h = new Header();
+			h.initialize(in.length(), 0);
+			long[] pos = new long[1024];
+			int n = 0;
+			while (true) {
+				chunk = 0;
+				while (h.syncFrame(buf, off, maxOff) == false) {
+					off = h.offset();
+					len = maxOff - off;
+					System.arraycopy(buf, off, buf, 0, len);
+					base += off;
+					maxOff = len + in.read(buf, len, off);
+					off = 0;
+					if (maxOff <= len || (chunk += BUFLEN) > 0x10000)
+						return new FrameIndex(Arrays.copyOf(pos, n));
+				}
+				if ((n & 0x3FF) == 0 && Thread.currentThread().isInterrupted())
+					throw new InterruptedIOException("Frame index scan interrupted");
+				if (n == pos.length)
+					pos = Arrays.copyOf(pos, n << 1);
+				pos[n++] = base + off;
+				off = h.offset() + h.getSideInfoSize() + h.getMainDataSize();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * 获取帧数。
+	 *
+	 * @return 索引中的帧数。
+	 */
+	public int getFrames() {
+		return offsets.length;
+	}
+
+	/**
+	 * 获取一帧的位置。从该位置开始调用 {@link Header#syncFrame(byte[], int, int)} 得到这一帧。
+	 *
+	 * @param frame
+	 *            帧序号，从0开始。
+	 * @return 相对于文件开头的偏移量，单位“字节”。
+	 */
+	public long getOffset(int frame) {
+		return offsets[frame];
+	}
+
+	private static File cacheFile(File file) {
+		String dir = System.getProperty("jmp123.index.dir");
+		if (dir == null)
+			dir = System.getProperty("user.home") + File.separator + ".jmp123" + File.separator + "index";
+		String key = Integer.toHexString(file.getPath().hashCode()) + "-" + Long.toHexString(file.length());
+		return new File(dir, key + ".idx");
+	}
+
+	/*
+	 * 读取缓存。缓存不存在、损坏或已失效时返回null。
+	 */
+	private static FrameIndex load(File cache, String path, long length, long mtime) {
+		if (!cache.isFile())
+			return null;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(cache)));
+			if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION)
+				return null;
+			if (!in.readUTF().equals(path) || in.readLong() != length || in.readLong() != mtime)
+				return null;
+			int n = in.readInt();
+			if (n < 0)
+				return null;
+			long[] offsets = new long[n];
+			long pos = 0;
+			for (int i = 0; i < n; i++)
+				offsets[i] = pos += readVarLong(in);
+			return new FrameIndex(offsets);
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {}
+			}
+		}
+	}
+
+	/*
+	 * 写入缓存。先写临时文件再改名，避免其它线程读到不完整的缓存。
+	 */
+	private void save(File cache, String path, long length, long mtime) throws IOException {
+		File dir = cache.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Cannot create " + dir);
+		File tmp = File.createTempFile("idx", ".tmp", dir);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeUTF(path);
+			out.writeLong(length);
+			out.writeLong(mtime);
+			out.writeInt(offsets.length);
+			long pos = 0;
+			for (long off : offsets) {
+				writeVarLong(out, off - pos);
+				pos = off;
+			}
+		} finally {
+			out.close();
+		}
+		cache.delete();
+		if (!tmp.renameTo(cache)) {
+			tmp.delete();
+			throw new IOException("Cannot rename " + tmp);
+		}
+	}
+
+	private static void writeVarLong(DataOutputStream out, long v) throws IOException {
+		while ((v & ~0x7FL) != 0) {
+			out.writeByte((int) (v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte((int) v);
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long v = 0;
+		int b, shift = 0;
+		do {
+			if (shift > 63)
+				throw new EOFException("Malformed index");
+			b = in.readUnsignedByte();
+			v |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return v;
+	}
+}
@@ -1,39 +1,64 @@
 package jmp123.instream;
 
+import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.TreeMap;
 
 /**
  * HttpConnection是java.net.HttpURLConnection的“缩水版”。
  * 由于网络原因I/O发生阻塞时调用 {@link #close()} 能及时响应用户的中断。
- * 
+ * <p>
+ * 响应内容按 content-length 头字段或分块传输编码（chunked）读取。响应内容读完后调用 {@link #close()}，服务器允许时连接放回
+ * 该主机的空闲连接池，下一次打开同一主机的文件时不必重新建立TCP连接。每个主机最多保留 {@link #MAX_IDLE} 个空闲连接，
+ * 空闲超过 {@link #KEEP_ALIVE} 毫秒的连接被关闭。
  */
 public class HttpConnection {
-	private Socket socket;
-	private InputStream instream;
-	private HashMap<String, String> map;
+	/**
+	 * 每个主机最多保留的空闲连接数。
+	 */
+	public static final int MAX_IDLE = 4;
+
+	/**
+	 * 空闲连接的保留时间，单位“毫秒”。
+	 */
+	public static final long KEEP_ALIVE = 15000;
+
+	private static final int TIMEOUT = 5000;
+
+	// 空闲连接池，键为"主机:端口"
+	private static final HashMap<String, ArrayDeque<Link>> pool = new HashMap<String, ArrayDeque<Link>>();
+
+	private Link link;
+	private boolean closed;
+	private Body instream;
+	private TreeMap<String, String> map;
 	private String response;
 	private String StatusLine;
 	private int ResponseCode;
 	private String ResponseMessage;
 	private long ContentLength;
+	private long CompleteLength;
+	private boolean keepAlive; // 服务器允许复用连接
 
 	/**
 	 * 构造一个连接。
 	 */
 	public HttpConnection() {
-		socket = new Socket();
-		map = new HashMap<String, String>();
+		map = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
 	}
 
 	/**
 	 * 打开 指定的Socket连接并解析HTTP响应头。
-	 * 
+	 *
 	 * @param location
 	 *            目标URL。
 	 * @param referer
@@ -48,6 +73,27 @@ public class HttpConnection {
 	 *             发生I/O错误。
 	 */
 	public void open(URL location, String referer) throws IOException {
+		open(location, referer, -1, -1);
+	}
+
+	/**
+	 * 打开 指定的Socket连接，请求目标文件的一段内容（HTTP Range）并解析HTTP响应头。服务器支持按范围读取时响应码为206，
+	 * 否则为200并返回整个文件。
+	 * <p>
+	 * 优先使用空闲连接池中同一主机的连接；空闲连接已被服务器关闭时改用新的连接重试一次。
+	 *
+	 * @param location
+	 *            目标URL。
+	 * @param referer
+	 *            引用网址。
+	 * @param first
+	 *            第一个字节的位置，相对于文件首。指定为-1时请求整个文件。
+	 * @param last
+	 *            最后一个字节的位置。指定为-1时请求到文件末尾。
+	 * @throws IOException
+	 *             发生I/O错误或连接超时。
+	 */
+	public void open(URL location, String referer, long first, long last) throws IOException {
 		String host = location.getHost();
 		if (referer == null)
 			referer = "http://" + host + "/";
@@ -55,33 +101,60 @@ public class HttpConnection {
 		int port = location.getPort();
 		if (port == -1)
 			port = 80;
-
-		socket.setSoTimeout(5000);
-		//socket.setReceiveBufferSize(32 * 1024);
-		socket.connect(new InetSocketAddress(host, port), 5000);
-		PrintWriter pw = new PrintWriter(socket.getOutputStream(), true);
+		String key = host + ":" + port;
 
 		// 构建HTTP请求头
-		pw.println("GET " + path + " HTTP/1.1");
-		pw.println("Host: " + host);
-		pw.println("Referer: " + referer);
-		pw.println("Accept: */*");
-		pw.println("User-Agent: Mozilla/4.0 (compatible; MSIE 6.0; Windows NT 5.1)");
-		// pw.println("Range: bytes=" + startpos + "-");
-		pw.println("Connection: Keep-Alive");
-		pw.println();
+		StringBuilder sb = new StringBuilder();
+		sb.append("GET ").append(path).append(" HTTP/1.1\r\n");
+		sb.append("Host: ").append(host).append("\r\n");
+		sb.append("Referer: ").append(referer).append("\r\n");
+		sb.append("Accept: */*\r\n");
+		sb.append("User-Agent: Mozilla/4.0 (compatible; MSIE 6.0; Windows NT 5.1)\r\n");
+		if (first >= 0)
+			sb.append("Range: bytes=").append(first).append('-').append(last >= 0 ? Long.toString(last) : "").append("\r\n");
+		sb.append("Connection: Keep-Alive\r\n\r\n");
+		byte[] request = sb.toString().getBytes("ISO-8859-1");
 
-		instream = socket.getInputStream();
+		Link l = take(key);
+		while (true) {
+			boolean reused = l != null;
+			if (l == null)
+				l = new Link(key);
+			synchronized (this) {
+				if (closed) {
+					l.socket.close();
+					throw new IOException("Connection closed.");
+				}
+				link = l;
+			}
+			try {
+				if (!reused)
+					l.connect(host, port);
+				l.out.write(request);
+				l.out.flush();
+				getResponse(l.in);
+				return;
+			} catch (IOException e) {
+				l.socket.close();
+				// 服务器可能已经关闭了空闲连接，用新连接重试
+				if (!reused || isClosed())
+					throw e;
+				l = null;
+			}
+		}
+	}
 
-		getResponse();
+	private synchronized boolean isClosed() {
+		return closed;
 	}
 
-	private void getResponse() throws IOException {
+	private void getResponse(InputStream in) throws IOException {
 		// 获取HTTP响应头
 		byte[] b = new byte[4096];
 		int off, val, endcode = 0;
+		map.clear();
 		for (off = 0; off < 4096 && endcode != 0x0d0a0d0a; off++) {
-			if((val = instream.read()) == -1)
+			if((val = in.read()) == -1)
 				break;
 			b[off] = (byte) val;
 			endcode <<= 8;
@@ -103,9 +176,9 @@ public class HttpConnection {
 
 		String[] pair;
 		for (String line : header) {
-			pair = line.split(": ");
+			pair = line.split(":", 2);
 			if (pair.length == 2)
-				map.put(pair[0], pair[1]);
+				map.put(pair[0].trim(), pair[1].trim());
 		}
 
 		try {
@@ -113,6 +186,36 @@ public class HttpConnection {
 		} catch (NumberFormatException e) {
 			ContentLength = -1;
 		}
+
+		// Content-Range: bytes first-last/complete-length
+		CompleteLength = ContentLength;
+		String range = map.get("Content-Range");
+		if (ResponseCode == 206 && range != null) {
+			try {
+				CompleteLength = Long.parseLong(range.substring(range.lastIndexOf('/') + 1).trim());
+			} catch (NumberFormatException e) {
+				CompleteLength = -1;
+			}
+		}
+
+		// HTTP/1.1默认复用连接，HTTP/1.0需要服务器指定 Connection: keep-alive
+		String conn = map.get("Connection");
+		if (StatusLine.startsWith("HTTP/1.1"))
+			keepAlive = conn == null || !conn.equalsIgnoreCase("close");
+		else
+			keepAlive = conn != null && conn.equalsIgnoreCase("keep-alive");
+
+		String te = map.get("Transfer-Encoding");
+		if (te != null && te.toLowerCase().endsWith("chunked")) {
+			instream = new Body(in, -1, true);
+			ContentLength = -1;
+		} else if (ContentLength >= 0 || ResponseCode == 204 || ResponseCode == 304)
+			instream = new Body(in, Math.max(0, ContentLength), false);
+		else {
+			// 没有指定长度，响应内容到连接关闭为止
+			instream = new Body(in, -1, false);
+			keepAlive = false;
+		}
 	}
 
 	// StatusLine = HTTP-Version SPACE Response-Code SPACE Reason-Phrase
@@ -132,8 +235,8 @@ public class HttpConnection {
 	}
 
 	/**
-	 * 获取从此打开的连接读取的输入流。
-	 * 
+	 * 获取从此打开的连接读取的输入流。输入流只返回响应内容，读完响应内容后返回-1。
+	 *
 	 * @return 打开的连接读入的输入流。
 	 */
 	public InputStream getInputStream() {
@@ -142,7 +245,7 @@ public class HttpConnection {
 
 	/**
 	 * 获取响应码。
-	 * 
+	 *
 	 * @return 以整数形式返回响应码。
 	 */
 	public int getResponseCode() {
@@ -151,16 +254,25 @@ public class HttpConnection {
 
 	/**
 	 * 获取 content-length 头字段的值。
-	 * 
-	 * @return 返回 content-length 头字段的值。
+	 *
+	 * @return 返回 content-length 头字段的值。没有这个头字段或使用分块传输编码时返回-1。
 	 */
 	public long getContentLength() {
 		return ContentLength;
 	}
 
+	/**
+	 * 获取目标文件的长度。响应码为206时由 content-range 头字段得到，否则和 {@link #getContentLength()} 相同。
+	 *
+	 * @return 目标文件的长度，未知时返回-1。
+	 */
+	public long getCompleteLength() {
+		return CompleteLength;
+	}
+
 	/**
 	 * 获取HTTP响应的简短描述信息。
-	 * 
+	 *
 	 * @return 响应的简短描述信息。
 	 */
 	public String getResponseMessage() {
@@ -169,9 +281,9 @@ public class HttpConnection {
 
 	/**
 	 * 返回指定的HTTP响应头字段的值。
-	 * 
+	 *
 	 * @param key
-	 *            头字段的名称。
+	 *            头字段的名称，不区分大小写。
 	 * @return 指定的头字段的值，或者如果头中没有这样一个字段，则返回 null。
 	 */
 	public String getHeaderField(String key) {
@@ -187,11 +299,192 @@ public class HttpConnection {
 	}
 
 	/**
-	 * 关闭连接并清除（已经获取的）HTTP响应头。
+	 * 关闭连接并清除（已经获取的）HTTP响应头。响应内容已经读完并且服务器允许复用连接时，连接放回空闲连接池；否则关闭Socket，
+	 * 其它线程中阻塞的读取立即返回。
 	 * @throws IOException 关闭Socket时发生I/O错误。
 	 */
 	public void close() throws IOException {
+		Link l;
+		synchronized (this) {
+			closed = true;
+			l = link;
+			link = null;
+		}
 		map.clear();
-		socket.close();
+		if (l == null)
+			return;
+		if (keepAlive && instream != null && instream.complete)
+			release(l);
+		else
+			l.socket.close();
+	}
+
+	/*
+	 * 从空闲连接池取出一个连接，顺带关闭超时的连接。
+	 */
+	private static Link take(String key) {
+		long now = System.currentTimeMillis();
+		synchronized (pool) {
+			ArrayDeque<Link> idle = pool.get(key);
+			if (idle == null)
+				return null;
+			Link l;
+			while ((l = idle.pollLast()) != null) {
+				if (now - l.idleSince < KEEP_ALIVE)
+					return l;
+				l.close();
+			}
+			return null;
+		}
+	}
+
+	/*
+	 * 连接放回空闲连接池，超过 MAX_IDLE 个时关闭最早放回的连接。
+	 */
+	private static void release(Link l) {
+		long now = System.currentTimeMillis();
+		synchronized (pool) {
+			ArrayDeque<Link> idle = pool.get(l.key);
+			if (idle == null)
+				pool.put(l.key, idle = new ArrayDeque<Link>());
+			for (Iterator<Link> it = idle.iterator(); it.hasNext();) {
+				Link old = it.next();
+				if (now - old.idleSince >= KEEP_ALIVE) {
+					it.remove();
+					old.close();
+				}
+			}
+			if (idle.size() == MAX_IDLE)
+				idle.pollFirst().close();
+			l.idleSince = now;
+			idle.addLast(l);
+		}
+	}
+
+	/**
+	 * 关闭空闲连接池中的所有连接。
+	 */
+	public static void closeIdle() {
+		synchronized (pool) {
+			for (ArrayDeque<Link> idle : pool.values())
+				for (Link l : idle)
+					l.close();
+			pool.clear();
+		}
+	}
+
+	/*
+	 * 一个TCP连接。
+	 */
+	private static final class Link {
+		final String key;
+		final Socket socket;
+		InputStream in;
+		OutputStream out;
+		long idleSince;
+
+		Link(String key) {
+			this.key = key;
+			socket = new Socket();
+		}
+
+		void connect(String host, int port) throws IOException {
+			socket.setSoTimeout(TIMEOUT);
+			//socket.setReceiveBufferSize(32 * 1024);
+			socket.connect(new InetSocketAddress(host, port), TIMEOUT);
+			in = new BufferedInputStream(socket.getInputStream(), 8192);
+			out = socket.getOutputStream();
+		}
+
+		void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/*
+	 * 响应内容：按长度读取、按分块传输编码读取或读到连接关闭。
+	 */
+	private static final class Body extends InputStream {
+		private final InputStream in;
+		private final boolean chunked;
+		private long remaining; // 当前块（或整个响应内容）剩余的字节数，-1表示读到连接关闭
+		private boolean complete; // 响应内容已经读完
+
+		Body(InputStream in, long length, boolean chunked) throws IOException {
+			this.in = in;
+			this.chunked = chunked;
+			remaining = length;
+			if (chunked)
+				nextChunk();
+			else
+				complete = length == 0;
+		}
+
+		/*
+		 * 读取块长度行 chunk-size [; chunk-ext] CRLF；最后一块（长度为0）之后跳过trailer。
+		 */
+		private void nextChunk() throws IOException {
+			String line = readLine();
+			int semi = line.indexOf(';');
+			try {
+				remaining = Long.parseLong((semi < 0 ? line : line.substring(0, semi)).trim(), 16);
+			} catch (NumberFormatException e) {
+				throw new IOException("Illegal chunk size: " + line);
+			}
+			if (remaining == 0) {
+				while (readLine().length() > 0)
+					;
+				complete = true;
+			}
+		}
+
+		private String readLine() throws IOException {
+			StringBuilder sb = new StringBuilder();
+			int c;
+			while ((c = in.read()) != '\n') {
+				if (c == -1)
+					throw new EOFException("Unexpected end of chunked stream.");
+				if (c != '\r')
+					sb.append((char) c);
+			}
+			return sb.toString();
+		}
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (complete)
+				return -1;
+			if (len == 0)
+				return 0;
+			if (remaining >= 0 && len > remaining)
+				len = (int) remaining;
+			int n = in.read(b, off, len);
+			if (n == -1) {
+				if (remaining >= 0)
+					throw new EOFException("Unexpected end of stream.");
+				complete = true;
+				return -1;
+			}
+			if (remaining >= 0 && (remaining -= n) == 0) {
+				if (chunked) {
+					readLine(); // 块数据之后的CRLF
+					nextChunk();
+				} else
+					complete = true;
+			}
+			return n;
+		}
+
+		public int available() throws IOException {
+			int n = in.available();
+			return remaining >= 0 && n > remaining ? (int) remaining : n;
+		}
 	}
 }
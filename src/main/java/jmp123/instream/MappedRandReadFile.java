@@ -0,0 +1,84 @@
+/*
+ * MappedRandReadFile.java -- 用内存映射随机读取本地文件
+ */
+package jmp123.instream;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 用内存映射（{@link FileChannel#map}）读取本地文件。{@link #read(byte[], int, int)} 直接从映射区复制数据，不产生read系统调用。
+ * <p>
+ * 文件长度超过2GB或者文件系统不支持内存映射时，改用 {@link RandomAccessFile} 读取，和 {@link BuffRandReadFile} 相同。
+ * 映射区在对象被垃圾回收时才解除映射，在此之前某些平台（如Windows）不能删除或改写该文件。
+ */
+public final class MappedRandReadFile extends RandomRead {
+	private volatile MappedByteBuffer map;
+	private RandomAccessFile rafIn;
+	private long pos;
+
+	public boolean open(String name, String title) throws IOException {
+		rafIn = new RandomAccessFile(name, "r");
+		length = rafIn.length();
+		pos = 0;
+		if (length <= Integer.MAX_VALUE) {
+			try {
+				map = rafIn.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+			} catch (IOException e) {
+				return true;
+			}
+			// 关闭文件不影响已建立的映射
+			rafIn.close();
+			rafIn = null;
+		}
+		return true;
+	}
+
+	public int read(byte b[], int off, int len) throws IOException {
+		MappedByteBuffer m = map;
+		if (m == null) {
+			if (rafIn == null)
+				throw new IOException("Stream Closed");
+			return rafIn.read(b, off, len); // 已关闭时抛出IOException
+		}
+		if (pos >= length)
+			return -1;
+		len = (int) Math.min(len, length - pos);
+		((Buffer) m).position((int) pos); // Java 9以上的MappedByteBuffer.position在Java 8中不存在
+		m.get(b, off, len);
+		pos += len;
+		return len;
+	}
+
+	public boolean seek(long pos) throws IOException {
+		if (map == null) {
+			if (rafIn == null)
+				throw new IOException("Stream Closed");
+			rafIn.seek(pos);
+		} else if (pos < 0)
+			throw new IOException("Negative seek offset");
+		this.pos = pos;
+		return true;
+	}
+
+	/**
+	 * 是否使用内存映射读取。
+	 * 
+	 * @return 已建立内存映射返回true。
+	 */
+	public boolean isMapped() {
+		return map != null;
+	}
+
+	public void close() {
+		map = null;
+		if (rafIn != null) {
+			try {
+				rafIn.close();
+			} catch (IOException e) {}
+		}
+	}
+}
@@ -38,10 +38,23 @@ public class Audio implements IAudio {
 	/**音量控制器 */
 	private FloatControl volControl;
 
+	/**
+	 * 打开源数据行。源数据行已打开并且格式相同时继续使用它，无缝播放时前一个文件末尾的数据和这个文件开头的数据在同一个源数据行中连续播放。
+	 * 格式不同时先播放完已写入的数据再关闭原来的源数据行。
+	 */
 	@Override
 	public boolean open(Header h, String artist) {
 		AudioFormat af = new AudioFormat(h.getSamplingRate(), 16,
 				h.getChannels(), true, false);
+		if (dateline != null && dateline.isOpen()) {
+			if (dateline.getFormat().matches(af)) {
+				dateline.start(); // 可能在暂停时切换到这个文件
+				return true;
+			}
+			if (dateline.isRunning())
+				dateline.drain();
+			dateline.close();
+		}
 		try {
 			dateline = (SourceDataLine) AudioSystem.getSourceDataLine(af);
 			dateline.open(af, 8 * h.getPcmSize());
@@ -0,0 +1,301 @@
+/*
+ * FileAudio.java -- 音频输出到文件
+ */
+package jmp123.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import javax.sound.sampled.FloatControl;
+
+import jmp123.decoder.Header;
+import jmp123.decoder.IAudio;
+import jmp123.decoder.IDirectAudio;
+
+/**
+ * 将解码得到的PCM数据写入文件。输出格式为WAV（RIFF头 + 小端PCM）或不带文件头的原始PCM，样本为16位整数或32位浮点数。
+ * <p>
+ * 解码器把PCM数据直接写入本对象的直接缓冲区（{@link IDirectAudio}），再由 {@link FileChannel} 写入文件。
+ * {@link IAudio} 的方法不抛出I/O异常，写文件时发生的异常由 {@link #getException()} 返回。
+ */
+public class FileAudio implements IDirectAudio {
+	private static final int WAV_HEADER_SIZE = 44;
+	private static final int WAV_FLOAT_HEADER_SIZE = 58; // fmt块多2字节cbSize, 另有12字节的fact块
+
+	private File file;
+	private final boolean wav;
+	private final int format;
+	private RandomAccessFile out;
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	private IOException exception;
+	private long dataSize;
+	private int rate, channels; // 写入WAV文件头
+
+	/**
+	 * 创建一个文件音频输出对象。
+	 *
+	 * @param file
+	 *            输出文件。在 {@link #open(Header, String)} 时创建或覆盖。
+	 * @param wav
+	 *            指定为true输出WAV文件，否则输出原始PCM。
+	 */
+	public FileAudio(File file, boolean wav) {
+		this(file, wav, FORMAT_PCM16);
+	}
+
+	/**
+	 * 创建一个指定样本格式的文件音频输出对象。
+	 *
+	 * @param file
+	 *            输出文件。在 {@link #open(Header, String)} 时创建或覆盖。
+	 * @param wav
+	 *            指定为true输出WAV文件，否则输出原始PCM。
+	 * @param format
+	 *            样本格式：{@link IDirectAudio#FORMAT_PCM16} 或 {@link IDirectAudio#FORMAT_FLOAT}。
+	 */
+	public FileAudio(File file, boolean wav, int format) {
+		if (format != FORMAT_PCM16 && format != FORMAT_FLOAT)
+			throw new IllegalArgumentException("format=" + format);
+		this.file = file;
+		this.wav = wav;
+		this.format = format;
+	}
+
+	/**
+	 * 指定下一次 {@link #open(Header, String)} 时写入的文件。同一个对象可以依次写多个文件，写下一个文件之前应调用 {@link #close()}。
+	 *
+	 * @param file
+	 *            输出文件。
+	 */
+	public void setFile(File file) {
+		this.file = file;
+	}
+
+	@Override
+	public boolean open(Header h, String artist) {
+		dataSize = 0;
+		exception = null;
+		rate = h.getSamplingRate();
+		channels = h.getChannels();
+		try {
+			out = new RandomAccessFile(file, "rw");
+			out.setLength(0);
+			channel = out.getChannel();
+			if (wav)
+				out.write(wavHeader(rate, channels, format, 0));
+		} catch (IOException e) {
+			exception = e;
+			close();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * 原样写入PCM数据，数据应已是本对象的样本格式。
+	 */
+	@Override
+	public int write(byte[] b, int size) {
+		if (out == null || exception != null)
+			return 0;
+		try {
+			out.write(b, 0, size);
+			dataSize += size;
+		} catch (IOException e) {
+			exception = e;
+			return 0;
+		}
+		return size;
+	}
+
+	@Override
+	public int getSampleFormat() {
+		return format;
+	}
+
+	/**
+	 * 返回本对象的直接缓冲区，字节顺序为小端。
+	 */
+	@Override
+	public ByteBuffer getBuffer(int size) {
+		if (buffer == null || buffer.capacity() < size)
+			buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+		((Buffer) buffer).clear(); // 经Buffer调用, Java 8没有ByteBuffer.clear()
+		return buffer;
+	}
+
+	@Override
+	public int write(ByteBuffer buf, int size) {
+		if (channel == null || exception != null)
+			return 0;
+		((Buffer) buf).limit(buf.position() + size);
+		try {
+			while (buf.hasRemaining())
+				channel.write(buf);
+			dataSize += size;
+		} catch (IOException e) {
+			exception = e;
+			return 0;
+		}
+		return size;
+	}
+
+	@Override
+	public int write(short[] b, int len) {
+		ByteBuffer buf = getBuffer(len << 1);
+		buf.asShortBuffer().put(b, 0, len);
+		return write(buf, len << 1) >> 1;
+	}
+
+	@Override
+	public int write(float[] b, int len) {
+		ByteBuffer buf = getBuffer(len << 2);
+		buf.asFloatBuffer().put(b, 0, len);
+		return write(buf, len << 2) >> 2;
+	}
+
+	/**
+	 * 写入文件头中的数据长度并关闭文件。
+	 */
+	@Override
+	public void close() {
+		if (out == null)
+			return;
+		try {
+			if (wav && exception == null) {
+				// 重写文件头, 其中的RIFF块长度、fact块的样本数和data块长度由数据长度决定
+				out.seek(0);
+				out.write(wavHeader(rate, channels, format, dataSize));
+			}
+		} catch (IOException e) {
+			exception = e;
+		} finally {
+			try {
+				out.close();
+			} catch (IOException e) {
+			}
+			out = null;
+			channel = null;
+		}
+	}
+
+	/**
+	 * 获取已写入的PCM数据长度，不含文件头。
+	 *
+	 * @return PCM数据长度，单位“字节”。
+	 */
+	public long getDataSize() {
+		return dataSize;
+	}
+
+	/**
+	 * 获取写文件时发生的异常。
+	 *
+	 * @return 未发生异常返回null。
+	 */
+	public IOException getException() {
+		return exception;
+	}
+
+	/**
+	 * 生成WAV文件头。
+	 *
+	 * @param rate
+	 *            采样率。
+	 * @param channels
+	 *            声道数。
+	 * @param dataSize
+	 *            PCM数据长度，单位“字节”。
+	 * @return 44字节的RIFF/WAVE文件头。
+	 */
+	public static byte[] wavHeader(int rate, int channels, long dataSize) {
+		return wavHeader(rate, channels, FORMAT_PCM16, dataSize);
+	}
+
+	/**
+	 * 生成指定样本格式的WAV文件头。浮点样本的格式标记为3（WAVE_FORMAT_IEEE_FLOAT），按非PCM格式的要求
+	 * fmt块带cbSize（为0），并在data块之前加fact块记录每个声道的样本数。
+	 *
+	 * @param rate
+	 *            采样率。
+	 * @param channels
+	 *            声道数。
+	 * @param format
+	 *            样本格式：{@link IDirectAudio#FORMAT_PCM16} 或 {@link IDirectAudio#FORMAT_FLOAT}。
+	 * @param dataSize
+	 *            PCM数据长度，单位“字节”。文件头中的长度是32位无符号数，超过4GB时记为0xFFFFFFFF。
+	 * @return RIFF/WAVE文件头：16位整数样本44字节，浮点样本58字节。
+	 */
+	public static byte[] wavHeader(int rate, int channels, int format, long dataSize) {
+		final boolean f = format == FORMAT_FLOAT;
+		byte[] b = new byte[f ? WAV_FLOAT_HEADER_SIZE : WAV_HEADER_SIZE];
+		int bits = f ? 32 : 16;
+		int blockAlign = channels * bits / 8;
+		int fmtSize = f ? 18 : 16;
+		int o = 20 + fmtSize; // fmt块之后
+		put(b, 0, "RIFF");
+		System.arraycopy(uintLE(b.length - 8 + dataSize), 0, b, 4, 4);
+		put(b, 8, "WAVE");
+		put(b, 12, "fmt ");
+		System.arraycopy(intLE(fmtSize), 0, b, 16, 4);
+		b[20] = (byte) (f ? 3 : 1); // PCM或IEEE浮点
+		b[22] = (byte) channels;
+		System.arraycopy(intLE(rate), 0, b, 24, 4);
+		System.arraycopy(intLE(rate * blockAlign), 0, b, 28, 4);
+		b[32] = (byte) blockAlign;
+		b[34] = (byte) bits; // 位深度
+		if (f) {
+			// b[36..37]: cbSize = 0
+			put(b, o, "fact");
+			System.arraycopy(intLE(4), 0, b, o + 4, 4);
+			System.arraycopy(uintLE(dataSize / blockAlign), 0, b, o + 8, 4);
+			o += 12;
+		}
+		put(b, o, "data");
+		System.arraycopy(uintLE(dataSize), 0, b, o + 4, 4);
+		return b;
+	}
+
+	private static void put(byte[] b, int off, String s) {
+		for (int i = 0; i < 4; i++)
+			b[off + i] = (byte) s.charAt(i);
+	}
+
+	private static byte[] intLE(int v) {
+		return new byte[] { (byte) v, (byte) (v >> 8), (byte) (v >> 16), (byte) (v >> 24) };
+	}
+
+	/*
+	 * 32位无符号数，超出范围时取最大值。
+	 */
+	private static byte[] uintLE(long v) {
+		return intLE((int) Math.min(v, 0xFFFFFFFFL));
+	}
+
+	@Override
+	public void start(boolean b) {
+	}
+
+	@Override
+	public void drain() {
+	}
+
+	@Override
+	public void refreshMessage(String msg) {
+	}
+
+	@Override
+	public void setLineGain(float gain) {
+	}
+
+	@Override
+	public FloatControl getFloatControl() {
+		return null;
+	}
+}
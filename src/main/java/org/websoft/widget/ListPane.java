@@ -28,6 +28,7 @@ public class ListPane extends JPanel {
 	private int curIndex = -1; //当前正在播放的文件
 	private int nextIndex; //下一播放的文件
 	private int playMode = 2;   //播放模式，默认为顺序播放
+	private int plannedIndex = -1; //随机播放时预先选定的下一个文件，见peekNextIndex
 	
 	public ListPane(int width, int height) {
 		setOpaque(false);
@@ -108,6 +109,7 @@ public class ListPane extends JPanel {
 	public synchronized void clear() {
 		nextIndex = 0;
 		curIndex = -1;
+		plannedIndex = -1;
 		dataListModel.clear();
 	}
 	
@@ -129,7 +131,9 @@ public class ListPane extends JPanel {
 		if (nextIndex == -1) {
 			switch(playMode) {
 			case 1: break;     //不改变
-			case 3: curIndex = (int)(Math.random()*count); break; //任意的
+			case 3: //任意的
+				curIndex = (plannedIndex >= 0 && plannedIndex < count) ? plannedIndex : (int)(Math.random()*count);
+				break;
 				default: curIndex = (curIndex + 1 == count) ? 0 : curIndex + 1; break;
 			}
 		}
@@ -137,6 +141,7 @@ public class ListPane extends JPanel {
 			curIndex = nextIndex;
 			nextIndex = -1;
 		}
+		plannedIndex = -1;
 
 		for (i = 0; i < count; i++) {
 			PlayListItem item = (PlayListItem) dataListModel.get(curIndex);
@@ -153,6 +158,43 @@ public class ListPane extends JPanel {
 		return -1;
 	}
 	
+	/**
+	 * 预测下一个播放的文件，不改变当前播放的文件。用于在播放当前文件时预读下一个文件。随机播放时预先选定下一个文件，
+	 * 之后调用 {@link #getNextIndex()} 返回同一个文件。
+	 * 
+	 * @return 下一个播放的文件的列表索引。无法预测时返回-1。
+	 */
+	public synchronized int peekNextIndex() {
+		int i, idx, count = dataListModel.getSize();
+		if (count == 0)
+			return -1;
+		if (nextIndex != -1)
+			idx = nextIndex;
+		else {
+			switch(playMode) {
+			case 1: idx = curIndex; break;
+			case 3:
+				if (plannedIndex < 0 || plannedIndex >= count)
+					plannedIndex = (int)(Math.random()*count);
+				idx = plannedIndex;
+				break;
+			default: idx = (curIndex + 1 == count) ? 0 : curIndex + 1; break;
+			}
+		}
+		if (idx < 0 || idx >= count)
+			return -1;
+
+		// 和getNextIndex()相同，跳过不可用的文件。单曲循环和随机播放时遇到不可用的文件不预测
+		for (i = 0; i < count; i++) {
+			if (((PlayListItem) dataListModel.get(idx)).available())
+				return idx;
+			if (playMode == 1 || playMode == 3)
+				return -1;
+			idx = (idx + 1 == count) ? 0 : idx + 1;
+		}
+		return -1;
+	}
+
 	/**
 	 * 用于设置播放的模式
 	 * @param
@@ -254,7 +254,8 @@ public class SpectrumPane extends JPanel implements IAudio, AlbumReceiver {
 //			albumThread = new AlbumThread(this, artist);
 //			albumThread.start();
 //		}
-		theAudio = new Audio();
+		if (theAudio == null)
+			theAudio = new Audio();
 		return theAudio.open(h, null);
 	}
 
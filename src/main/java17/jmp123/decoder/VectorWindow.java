@@ -0,0 +1,55 @@
+/*
+ * VectorWindow.java -- 用Vector API实现多相合成滤波加窗运算
+ */
+package jmp123.decoder;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 用 <code>jdk.incubator.vector</code> 实现多相合成滤波加窗运算。32个输出样本按向量长度分组并行计算，
+ * 每个样本仍按和标量代码相同的顺序做16次乘法和加法（不使用FMA），所以结果和标量代码逐位相同。
+ * <p>
+ * 需要JDK 17及以上版本并在运行时指定 <code>--add-modules jdk.incubator.vector</code>，否则 {@link Synthesis} 使用标量代码。
+ */
+final class VectorWindow implements SynthesisWindow {
+	/*
+	 * 一行只有32个元素，向量长度不能超过32个float，例如2048位的SVE改用512位。
+	 */
+	private static final VectorSpecies<Float> SPECIES = (FloatVector.SPECIES_PREFERRED.length() <= 32)
+			? FloatVector.SPECIES_PREFERRED : FloatVector.SPECIES_512;
+
+	/*
+	 * 转置的dewin，[16][32]。
+	 */
+	private final float[][] win;
+
+	/*
+	 * 每个FIFO偏移量对应的16个U向量偏移量，[16][16]。
+	 */
+	private final int[][] base;
+
+	VectorWindow(float[][] dewin) {
+		win = new float[16][32];
+		for (int i = 0; i < 32; i++)
+			for (int k = 0; k < 16; k++)
+				win[k][i] = dewin[i][k];
+
+		base = new int[16][16];
+		for (int f = 0; f < 16; f++)
+			for (int k = 0; k < 16; k++)
+				base[f][k] = ((f << 6) + (k << 6) + ((k & 1) << 5)) & 0x3FF;
+	}
+
+	public void dewindow(float[] fifo, int index, float[] out) {
+		final int[] u = base[index >> 6];
+		final int len = SPECIES.length();
+		FloatVector sum;
+		for (int i = 0; i < 32; i += len) {
+			sum = FloatVector.fromArray(SPECIES, win[0], i).mul(FloatVector.fromArray(SPECIES, fifo, u[0] + i));
+			for (int k = 1; k < 16; k++)
+				sum = sum.add(FloatVector.fromArray(SPECIES, win[k], i).mul(FloatVector.fromArray(SPECIES, fifo, u[k] + i)));
+			sum.intoArray(out, i);
+		}
+	}
+}
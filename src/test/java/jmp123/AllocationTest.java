@@ -0,0 +1,174 @@
+/*
+ * AllocationTest.java -- 检查稳定解码时是否分配内存
+ */
+package jmp123;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+import javax.sound.sampled.FloatControl;
+
+import junit.framework.TestCase;
+
+import jmp123.bench.Fixtures;
+import jmp123.decoder.Header;
+import jmp123.decoder.IAudio;
+import jmp123.decoder.SynthesisConcurrent;
+
+/**
+ * 用 {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long[])} 检查 {@link PlayBack#start(boolean)}
+ * 稳定解码时是否在堆上分配内存。长时间播放时，解码线程和多相合成滤波线程的内存分配引起的GC停顿会造成声音断续。
+ * <p>
+ * 每个测试文件先完整解码一次（预热），再解码几次，统计除去开头和结尾各 {@link #MARGIN} 次音频输出以外的区间内，
+ * 解码线程和每个多相合成滤波线程分配的字节数，每个线程都应为0。开头和结尾包括创建解码器和关闭解码器，不属于稳定解码。
+ * 多相合成滤波分别在共享线程池和解码线程中执行，解码时打印播放进度（输出被丢弃）。
+ * <p>
+ * JVM不支持统计线程分配的内存时不作检查。
+ */
+public class AllocationTest extends TestCase {
+	/**
+	 * 开头和结尾不统计的音频输出次数。
+	 */
+	public static final int MARGIN = 8;
+
+	private static final int RUNS = 3;
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public void testSteadyState() throws IOException {
+		if (!THREADS.isThreadAllocatedMemorySupported()) {
+			System.err.println("AllocationTest skipped: thread allocated memory is not supported");
+			return;
+		}
+		THREADS.setThreadAllocatedMemoryEnabled(true);
+
+		File dir = new File(Fixtures.DEFAULT_DIR);
+		for (Fixtures.Spec spec : Fixtures.Spec.values()) {
+			String path = Fixtures.create(spec, dir).getPath();
+			check(spec + " pool", path, SynthesisConcurrent.sharedPool());
+			check(spec + " inline", path, SynthesisConcurrent.INLINE);
+		}
+	}
+
+	/*
+	 * 预热后再解码 RUNS 次，每个线程取稳定阶段分配的字节数的最小值。统计本身偶尔多分配几百字节（在JIT编译之前），
+	 * 每帧都分配内存时每次统计的结果都大于0。
+	 */
+	private static void check(String name, String path, Executor executor) throws IOException {
+		Probe probe = new Probe();
+		decode(path, executor, probe);
+		probe.first = MARGIN;
+		probe.last = probe.writes - MARGIN;
+		assertTrue(name + ": file too short", probe.last > probe.first);
+		long[] ids = decodingThreads();
+		probe.threads = ids;
+		long[] min = new long[ids.length];
+		Arrays.fill(min, Long.MAX_VALUE);
+		for (int k = 0; k < RUNS; k++) {
+			probe.calibrate();
+			decode(path, executor, probe);
+			for (int i = 0; i < ids.length; i++) {
+				long bytes = probe.end[i] - probe.begin[i];
+				if (ids[i] == Thread.currentThread().getId())
+					bytes -= probe.overhead;
+				min[i] = Math.min(min[i], bytes);
+			}
+		}
+		for (int i = 0; i < ids.length; i++) {
+			ThreadInfo info = THREADS.getThreadInfo(ids[i]);
+			assertEquals(name + ": " + (info != null ? info.getThreadName() : "thread " + ids[i]), 0, min[i]);
+		}
+	}
+
+	/*
+	 * 解码线程（当前线程）和共享线程池中的多相合成滤波线程。其它线程（如JVM的Reference Handler）偶尔分配内存，和解码无关。
+	 */
+	private static long[] decodingThreads() {
+		long[] ids = THREADS.getAllThreadIds();
+		int n = 0;
+		for (ThreadInfo info : THREADS.getThreadInfo(ids))
+			if (info != null && (info.getThreadId() == Thread.currentThread().getId()
+					|| info.getThreadName().startsWith("synthesis-")))
+				ids[n++] = info.getThreadId();
+		return Arrays.copyOf(ids, n);
+	}
+
+	private static void decode(String path, Executor executor, Probe probe) throws IOException {
+		probe.writes = 0;
+		PlayBack playback = new PlayBack(probe);
+		playback.setSynthesisExecutor(executor);
+		assertTrue(path, playback.open(path, null));
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+		try {
+			playback.start(true);
+		} finally {
+			System.setOut(out);
+		}
+		playback.close();
+	}
+
+	/*
+	 * 在第first次和第last次音频输出时统计各线程已分配的字节数。
+	 */
+	private static final class Probe implements IAudio {
+		int writes, first = -1, last = -1;
+		long[] threads, begin, end;
+		long overhead;
+
+		/*
+		 * 统计本身在当前线程分配的字节数（返回的数组）。
+		 */
+		void calibrate() {
+			long[] a = THREADS.getThreadAllocatedBytes(threads), b = THREADS.getThreadAllocatedBytes(threads);
+			overhead = 0;
+			for (int i = 0; i < threads.length; i++)
+				overhead += b[i] - a[i];
+		}
+
+		public int write(byte[] b, int len) {
+			writes++;
+			if (writes == first)
+				begin = THREADS.getThreadAllocatedBytes(threads);
+			else if (writes == last)
+				end = THREADS.getThreadAllocatedBytes(threads);
+			return len;
+		}
+
+		public boolean open(Header h, String artist) {
+			return true;
+		}
+
+		public void start(boolean b) {
+		}
+
+		public void drain() {
+		}
+
+		public void close() {
+		}
+
+		public void refreshMessage(String msg) {
+		}
+
+		public void setLineGain(float gain) {
+		}
+
+		public FloatControl getFloatControl() {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * DctTest.java -- 检查多相合成滤波的矩阵运算
+ */
+package jmp123.decoder;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * {@link Synthesis} 中完全展开的矩阵运算和 {@link DctTable} 查表的矩阵运算，和
+ * V[k] = sum(cos((16+k)(2j+1)PI/64) * x[j]) 双精度直接计算结果的误差都不应超过输入幅值之和的 1e-5 倍。
+ */
+public class DctTest extends TestCase {
+	private static final int COUNT = 1024;
+
+	public void testUnrolled() {
+		final Synthesis synthesis = new Synthesis(null, 1);
+		check(new Dct() {
+			public void dct32to64(float[] src, float[] dest, int off) {
+				synthesis.dct32to64(src, dest, off);
+			}
+		});
+	}
+
+	public void testTable() {
+		final DctTable table = new DctTable();
+		check(new Dct() {
+			public void dct32to64(float[] src, float[] dest, int off) {
+				table.dct32to64(src, dest, off);
+			}
+		});
+	}
+
+	/*
+	 * 输出写到FIFO队列的不同位置，检查只写了off开始的64个值。
+	 */
+	private static void check(Dct dct) {
+		Random rnd = new Random(COUNT);
+		float[] x = new float[32], fifo = new float[1024];
+		for (int n = 0; n < COUNT; n++) {
+			float scale = (n % 7 == 0) ? 0 : (n % 3 == 0) ? 4 : 0.05f;
+			for (int j = 0; j < 32; j++)
+				x[j] = (float) (rnd.nextGaussian() * scale);
+			int off = (n & 15) << 6;
+			Arrays.fill(fifo, Float.NaN);
+			dct.dct32to64(x, fifo, off);
+			double norm = 0;
+			for (int j = 0; j < 32; j++)
+				norm += Math.abs(x[j]);
+			for (int k = 0; k < 64; k++) {
+				double ref = 0;
+				for (int j = 0; j < 32; j++)
+					ref += Math.cos((16 + k) * (2 * j + 1) * Math.PI / 64) * x[j];
+				assertTrue("n=" + n + " k=" + k + ": " + fifo[off + k] + ", " + ref,
+						Math.abs(fifo[off + k] - ref) <= 1e-5 * norm);
+			}
+			for (int i = 0; i < 1024; i++)
+				if (i < off || i >= off + 64)
+					assertTrue("n=" + n + " i=" + i, Float.isNaN(fifo[i]));
+		}
+	}
+
+	private interface Dct {
+		void dct32to64(float[] src, float[] dest, int off);
+	}
+}
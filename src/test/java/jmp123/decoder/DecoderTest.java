@@ -0,0 +1,161 @@
+/*
+ * DecoderTest.java -- 比较拉取方式和推送方式解码得到的PCM
+ */
+package jmp123.decoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.sound.sampled.FloatControl;
+
+import junit.framework.TestCase;
+
+import jmp123.Decoder;
+import jmp123.PlayBack;
+import jmp123.bench.Fixtures;
+
+/**
+ * 每个测试文件用 {@link PlayBack#start(boolean)}（推送给 {@link IDirectAudio}）和 {@link Decoder}（拉取）分别解码，
+ * 16位整数和浮点两种样本格式得到的样本应逐个相同。拉取时依次用 {@link Decoder#nextFrame(short[])}、每次1个样本、每次7帧和
+ * 每次取一个较大且不是帧长整数倍的长度读取，同一个Decoder对象依次解码所有文件。
+ */
+public class DecoderTest extends TestCase {
+	public void testPcm16() throws IOException {
+		check(IDirectAudio.FORMAT_PCM16);
+	}
+
+	public void testFloat() throws IOException {
+		check(IDirectAudio.FORMAT_FLOAT);
+	}
+
+	private static void check(int format) throws IOException {
+		File dir = new File(Fixtures.DEFAULT_DIR);
+		Decoder decoder = new Decoder(format);
+		for (Fixtures.Spec spec : Fixtures.Spec.values()) {
+			String path = Fixtures.create(spec, dir).getPath();
+			float[] ref = push(path, format);
+			assertTrue(spec.name(), ref.length > 0);
+			for (int chunk = 0; chunk < 4; chunk++)
+				assertTrue(spec + " chunk=" + chunk, Arrays.equals(ref, pull(decoder, path, format, chunk)));
+		}
+	}
+
+	private static float[] push(String path, int format) throws IOException {
+		Capture audio = new Capture(format);
+		PlayBack playback = new PlayBack(audio);
+		assertTrue(path, playback.open(path, null));
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+		}));
+		try {
+			playback.start(false);
+		} finally {
+			System.setOut(out);
+		}
+		playback.close();
+		return Arrays.copyOf(audio.samples, audio.size);
+	}
+
+	/*
+	 * chunk: 0 每次一帧，1 每次1个样本，2 每次7帧，3 每次3001个样本。
+	 */
+	private static float[] pull(Decoder decoder, String path, int format, int chunk) throws IOException {
+		assertTrue(path, decoder.open(path));
+		boolean pcm16 = format == IDirectAudio.FORMAT_PCM16;
+		int frame = decoder.getFrameSamples();
+		int len = chunk == 0 ? frame : chunk == 1 ? 1 : chunk == 2 ? 7 * frame : 3001;
+		short[] s = new short[len];
+		float[] f = new float[len];
+		float[] samples = new float[1 << 16];
+		int size = 0, n;
+		while (true) {
+			if (pcm16)
+				n = chunk == 0 ? decoder.nextFrame(s) : decoder.read(s, 0, len);
+			else
+				n = chunk == 0 ? decoder.nextFrame(f) : decoder.read(f, 0, len);
+			if (n == -1)
+				break;
+			if (size + n > samples.length)
+				samples = Arrays.copyOf(samples, Math.max(size + n, samples.length << 1));
+			for (int i = 0; i < n; i++)
+				samples[size + i] = pcm16 ? s[i] : f[i];
+			size += n;
+		}
+		decoder.close();
+		return Arrays.copyOf(samples, size);
+	}
+
+	private static final class Capture implements IDirectAudio {
+		private final int format;
+		float[] samples = new float[1 << 16];
+		int size;
+
+		Capture(int format) {
+			this.format = format;
+		}
+
+		private void ensure(int len) {
+			if (size + len > samples.length)
+				samples = Arrays.copyOf(samples, Math.max(size + len, samples.length << 1));
+		}
+
+		public int getSampleFormat() {
+			return format;
+		}
+
+		public ByteBuffer getBuffer(int size) {
+			return null;
+		}
+
+		public int write(ByteBuffer buf, int size) {
+			return 0;
+		}
+
+		public int write(short[] b, int len) {
+			ensure(len);
+			for (int i = 0; i < len; i++)
+				samples[size++] = b[i];
+			return len;
+		}
+
+		public int write(float[] b, int len) {
+			ensure(len);
+			System.arraycopy(b, 0, samples, size, len);
+			size += len;
+			return len;
+		}
+
+		public int write(byte[] b, int len) {
+			return 0;
+		}
+
+		public boolean open(Header h, String artist) {
+			return true;
+		}
+
+		public void start(boolean b) {
+		}
+
+		public void drain() {
+		}
+
+		public void close() {
+		}
+
+		public void refreshMessage(String msg) {
+		}
+
+		public void setLineGain(float gain) {
+		}
+
+		public FloatControl getFloatControl() {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * HuffmanTest.java -- 比较两种哈夫曼解码方式
+ */
+package jmp123.decoder;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * {@link BitStreamMainData#HUFF_TREE} 和 {@link BitStreamMainData#HUFF_LOOKUP} 解码同样的位流，每个粒度解得的576个值、
+ * 返回值和解码后的位流位置都应相同。
+ * <p>
+ * 码表是完全的前缀码，任意比特序列都能解码，所以输入用固定种子的随机数产生，码表号、big_values、区域划分和 part2_3_length 也随机选取。
+ */
+public class HuffmanTest extends TestCase {
+	private static final int LEN = 512; // 每个粒度填入位流缓冲区的字节数
+
+	// 哈夫曼码表号4和14未使用
+	private static final int[] TABLES = {0,1,2,3,5,6,7,8,9,10,11,12,13,15,16,17,18,19,20,21,22,23,24,
+		25,26,27,28,29,30,31};
+
+	private final BitStreamMainData tree = new BitStreamMainData(4096, 1024, BitStreamMainData.HUFF_TREE);
+	private final BitStreamMainData lookup = new BitStreamMainData(4096, 1024, BitStreamMainData.HUFF_LOOKUP);
+	private final byte[] data = new byte[LEN];
+	private final int[] hv1 = new int[32 * 18 + 4], hv2 = new int[32 * 18 + 4];
+	private final int[] tables = new int[3];
+
+	public void testRandomTables() {
+		Random rnd = new Random(1);
+		for (int n = 0; n < 4096; n++) {
+			for (int i = 0; i < 3; i++)
+				tables[i] = TABLES[rnd.nextInt(TABLES.length)];
+			compare(rnd, "granule " + n);
+		}
+	}
+
+	public void testEveryTable() {
+		Random rnd = new Random(2);
+		for (int t : TABLES) {
+			Arrays.fill(tables, t);
+			for (int n = 0; n < 64; n++)
+				compare(rnd, "table " + t + ", granule " + n);
+		}
+	}
+
+	/*
+	 * 和 Layer3 相同，先填入主数据，再定位到它的开始位置解码。
+	 */
+	private void compare(Random rnd, String msg) {
+		int part3len = rnd.nextInt(4096), bigValues = rnd.nextInt(289);
+		int r1 = rnd.nextInt(23) * 8, r2 = r1 + rnd.nextInt(23) * 8, count1table = rnd.nextInt(2);
+		rnd.nextBytes(data);
+		tree.append(data, 0, LEN);
+		tree.seekBack(LEN);
+		lookup.append(data, 0, LEN);
+		lookup.seekBack(LEN);
+		int ret1 = tree.decodeHuff(part3len, bigValues, r1, r2, tables, count1table, hv1);
+		int ret2 = lookup.decodeHuff(part3len, bigValues, r1, r2, tables, count1table, hv2);
+		assertEquals(msg, ret1, ret2);
+		assertTrue(msg, Arrays.equals(hv1, hv2));
+		assertEquals(msg, tree.bytePos, lookup.bytePos);
+		assertEquals(msg, tree.bitPos, lookup.bitPos);
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * ImdctTest.java -- 比较两种IMDCT实现解码得到的PCM
+ */
+package jmp123.decoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import javax.sound.sampled.FloatControl;
+
+import junit.framework.TestCase;
+
+import jmp123.PlayBack;
+import jmp123.bench.Fixtures;
+
+/**
+ * 用 {@link Layer3#IMDCT_REFERENCE} 和 {@link Layer3#IMDCT_FAST} 分别解码每个 Layer Ⅲ 测试文件，两次得到的PCM数据应逐字节相同。
+ * 测试文件包括长块、短块、开始块、结束块和混合块。
+ */
+public class ImdctTest extends TestCase {
+	public void testFixtures() throws IOException {
+		File dir = new File(Fixtures.DEFAULT_DIR);
+		for (Fixtures.Spec spec : Fixtures.Spec.values()) {
+			if (!spec.name().startsWith("L3"))
+				continue;
+			String path = Fixtures.create(spec, dir).getPath();
+			byte[] ref = decode(path, "reference"), fast = decode(path, "fast");
+			assertTrue(spec.name(), fast.length > 0);
+			assertTrue(spec.name(), Arrays.equals(ref, fast));
+		}
+	}
+
+	private static byte[] decode(String path, String imdct) throws IOException {
+		PrintStream out = System.out;
+		System.setProperty("jmp123.imdct", imdct);
+		try {
+			Capture audio = new Capture();
+			PlayBack playback = new PlayBack(audio);
+			assertTrue(path, playback.open(path, null));
+			System.setOut(new PrintStream(new OutputStream() {
+				public void write(int b) {
+				}
+			}));
+			playback.start(false);
+			playback.close();
+			return audio.pcm.toByteArray();
+		} finally {
+			System.setOut(out);
+			System.clearProperty("jmp123.imdct");
+		}
+	}
+
+	private static final class Capture implements IAudio {
+		final ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+
+		public int write(byte[] b, int len) {
+			pcm.write(b, 0, len);
+			return len;
+		}
+
+		public boolean open(Header h, String artist) {
+			return true;
+		}
+
+		public void start(boolean b) {
+		}
+
+		public void drain() {
+		}
+
+		public void close() {
+		}
+
+		public void refreshMessage(String msg) {
+		}
+
+		public void setLineGain(float gain) {
+		}
+
+		public FloatControl getFloatControl() {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * SynthesisTest.java -- 检查多相合成滤波对全0输入的处理
+ */
+package jmp123.decoder;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * {@link Synthesis} 对全为0的输入不作矩阵运算，FIFO队列全为0后也不作加窗运算。把全0输入的第一个值换成
+ * {@link Float#MIN_VALUE} 时按正常步骤运算，两者输出的16位整数样本应逐字节相同。
+ */
+public class SynthesisTest extends TestCase {
+	private static final int SLICES = 4096;
+
+	public void testSilence() {
+		for (int channels = 1; channels <= 2; channels++)
+			assertTrue("channels=" + channels, Arrays.equals(synthesize(channels, true), synthesize(channels, false)));
+	}
+
+	/*
+	 * 随机的子带样本中穿插长度为0、10、20、30的全0段，包括开头的全0段。
+	 */
+	private static byte[] synthesize(int channels, boolean zero) {
+		AudioBuffer ab = new AudioBuffer(null, 64 * channels);
+		Synthesis filter = new Synthesis(ab, channels);
+		ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+		Random rnd = new Random(channels);
+		float[] samples = new float[32];
+		for (int n = 0; n < SLICES; n++) {
+			boolean silent = n % 100 >= 100 - (n / 100 % 4) * 10 || n < 20;
+			for (int ch = 0; ch < channels; ch++) {
+				for (int i = 0; i < 32; i++)
+					samples[i] = silent ? 0 : (float) (rnd.nextGaussian() * 0.05f);
+				if (silent && !zero)
+					samples[0] = Float.MIN_VALUE;
+				filter.synthesisSubBand(samples, ch);
+			}
+			pcm.write(ab.pcmbuf, 0, ab.pcmbuf.length);
+			ab.output();
+		}
+		return pcm.toByteArray();
+	}
+}
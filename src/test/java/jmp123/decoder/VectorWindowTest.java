@@ -0,0 +1,176 @@
+/*
+ * VectorWindowTest.java -- 比较向量化和标量的多相合成滤波加窗运算
+ */
+package jmp123.decoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.sound.sampled.FloatControl;
+
+import junit.framework.TestCase;
+
+import jmp123.PlayBack;
+import jmp123.bench.Fixtures;
+
+/**
+ * {@link VectorWindow} 和标量代码的加窗运算结果应逐位相同：16位整数输出对照 {@link Synthesis} 中switch语句的标量代码，
+ * 浮点输出对照和它运算顺序相同的标量实现。输入为随机的子带样本和解码各测试文件得到的子带样本。
+ * <p>
+ * 需要JDK 17及以上版本和 <code>--add-modules jdk.incubator.vector</code>，只在vector配置中运行。
+ */
+public class VectorWindowTest extends TestCase {
+	private static final int SLICES = 4096;
+
+	public void testSupported() {
+		assertTrue("VectorWindow not available", Synthesis.isVectorSupported());
+	}
+
+	public void testRandomPcm16() {
+		for (int channels = 1; channels <= 2; channels++) {
+			Capture scalar = new Capture(), vector = new Capture();
+			synthesize(scalar, channels, false);
+			synthesize(vector, channels, true);
+			assertTrue("channels=" + channels, Arrays.equals(scalar.pcm.toByteArray(), vector.pcm.toByteArray()));
+		}
+	}
+
+	public void testRandomFloat() {
+		for (int channels = 1; channels <= 2; channels++) {
+			FloatCapture scalar = new FloatCapture(), vector = new FloatCapture();
+			synthesize(scalar, channels, false);
+			synthesize(vector, channels, true);
+			assertTrue("channels=" + channels, scalar.size > 0);
+			assertTrue("channels=" + channels, Arrays.equals(scalar.floats(), vector.floats()));
+		}
+	}
+
+	public void testFixtures() throws IOException {
+		File dir = new File(Fixtures.DEFAULT_DIR);
+		for (Fixtures.Spec spec : Fixtures.Spec.values()) {
+			String path = Fixtures.create(spec, dir).getPath();
+			Capture scalar = decode(path, new Capture(), true), vector = decode(path, new Capture(), false);
+			assertTrue(spec + " pcm16", scalar.pcm.size() > 0 && Arrays.equals(scalar.pcm.toByteArray(), vector.pcm.toByteArray()));
+
+			FloatCapture s = decode(path, new FloatCapture(), true), v = decode(path, new FloatCapture(), false);
+			assertTrue(spec + " float", Arrays.equals(s.floats(), v.floats()));
+		}
+	}
+
+	/*
+	 * 随机的子带样本：大多数较小，有的超出16位整数的范围，有的全为0。
+	 */
+	private static void synthesize(IAudio audio, int channels, boolean vector) {
+		AudioBuffer ab = new AudioBuffer(audio, 64 * channels);
+		Synthesis filter = new Synthesis(ab, channels);
+		assertEquals(vector, filter.setVectorEnabled(vector));
+		Random rnd = new Random(channels);
+		float[] samples = new float[32];
+		for (int n = 0; n < SLICES; n++) {
+			for (int ch = 0; ch < channels; ch++) {
+				float scale = (n % 97 < 8) ? 0 : (n % 13 == 0) ? 4 : 0.05f;
+				for (int i = 0; i < 32; i++)
+					samples[i] = (float) (rnd.nextGaussian() * scale);
+				filter.synthesisSubBand(samples, ch);
+			}
+			ab.output();
+		}
+	}
+
+	private static <T extends IAudio> T decode(String path, T audio, boolean scalar) throws IOException {
+		PrintStream out = System.out;
+		if (scalar)
+			System.setProperty("jmp123.synthesis", "scalar");
+		try {
+			PlayBack playback = new PlayBack(audio);
+			assertTrue(path, playback.open(path, null));
+			System.setOut(new PrintStream(new OutputStream() {
+				public void write(int b) {
+				}
+			}));
+			playback.start(false);
+			playback.close();
+		} finally {
+			System.setOut(out);
+			System.clearProperty("jmp123.synthesis");
+		}
+		return audio;
+	}
+
+	/*
+	 * 16位整数输出：AudioBuffer调用 write(byte[], int)。
+	 */
+	private static class Capture implements IAudio {
+		final ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+
+		public int write(byte[] b, int len) {
+			pcm.write(b, 0, len);
+			return len;
+		}
+
+		public boolean open(Header h, String artist) {
+			return true;
+		}
+
+		public void start(boolean b) {
+		}
+
+		public void drain() {
+		}
+
+		public void close() {
+		}
+
+		public void refreshMessage(String msg) {
+		}
+
+		public void setLineGain(float gain) {
+		}
+
+		public FloatControl getFloatControl() {
+			return null;
+		}
+	}
+
+	/*
+	 * 浮点输出：AudioBuffer调用 write(float[], int)。
+	 */
+	private static final class FloatCapture extends Capture implements IDirectAudio {
+		float[] samples = new float[1 << 16];
+		int size;
+
+		float[] floats() {
+			return Arrays.copyOf(samples, size);
+		}
+
+		public int getSampleFormat() {
+			return FORMAT_FLOAT;
+		}
+
+		public ByteBuffer getBuffer(int size) {
+			return null;
+		}
+
+		public int write(ByteBuffer buf, int size) {
+			return 0;
+		}
+
+		public int write(short[] b, int len) {
+			return 0;
+		}
+
+		public int write(float[] b, int len) {
+			if (size + len > samples.length)
+				samples = Arrays.copyOf(samples, Math.max(size + len, samples.length << 1));
+			System.arraycopy(b, 0, samples, size, len);
+			size += len;
+			return len;
+		}
+	}
+}
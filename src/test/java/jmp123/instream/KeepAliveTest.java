@@ -0,0 +1,181 @@
+/*
+ * KeepAliveTest.java -- 检查HTTP持久连接的复用
+ */
+package jmp123.instream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import javax.sound.sampled.FloatControl;
+
+import junit.framework.TestCase;
+
+import jmp123.PlayBack;
+import jmp123.bench.Fixtures;
+import jmp123.bench.LoopbackServer;
+import jmp123.decoder.Header;
+import jmp123.decoder.IAudio;
+
+/**
+ * 用 {@link LoopbackServer} 检查 {@link HttpConnection} 的空闲连接池：
+ * <ul>
+ * <li>同一URL连续请求10次，响应内容和文件相同，只建立一个连接；</li>
+ * <li>像播放列表一样逐个播放所有测试文件，解码结果和播放本地文件相同，建立的连接数不超过下载线程数；</li>
+ * <li>服务器每个连接只处理3个请求后关闭连接，客户端改用新的连接重试，结果不变。</li>
+ * </ul>
+ * 以上检查分别用 Content-Length 和分块传输编码各做一次。
+ */
+public class KeepAliveTest extends TestCase {
+	private static final int CONNECTIONS = Math.max(1, Integer.getInteger("jmp123.http.connections", 4));
+
+	private static final int REPEAT = 10;
+
+	private File dir;
+
+	protected void setUp() throws IOException {
+		dir = new File(Fixtures.DEFAULT_DIR);
+		for (Fixtures.Spec spec : Fixtures.Spec.values())
+			Fixtures.create(spec, dir);
+		HttpConnection.closeIdle();
+	}
+
+	protected void tearDown() {
+		HttpConnection.closeIdle();
+	}
+
+	public void testRepeat() throws IOException {
+		for (boolean chunked : new boolean[] { false, true }) {
+			HttpConnection.closeIdle();
+			assertEquals(mode(chunked), 1, repeat(chunked, Integer.MAX_VALUE));
+		}
+	}
+
+	public void testPlaylist() throws IOException {
+		for (boolean chunked : new boolean[] { false, true }) {
+			HttpConnection.closeIdle();
+			int connections = playlist(chunked, Integer.MAX_VALUE);
+			assertTrue(mode(chunked) + ": connections=" + connections, connections <= CONNECTIONS);
+		}
+	}
+
+	public void testServerClose() throws IOException {
+		final int maxRequests = 3;
+		for (boolean chunked : new boolean[] { false, true }) {
+			HttpConnection.closeIdle();
+			assertEquals(mode(chunked), (REPEAT + maxRequests - 1) / maxRequests, repeat(chunked, maxRequests));
+			HttpConnection.closeIdle();
+			playlist(chunked, maxRequests);
+		}
+	}
+
+	private static String mode(boolean chunked) {
+		return chunked ? "chunked" : "length";
+	}
+
+	/*
+	 * 同一URL连续请求REPEAT次，返回建立的连接数。
+	 */
+	private int repeat(boolean chunked, int maxRequests) throws IOException {
+		String name = Fixtures.Spec.L3_MPEG1_JSTEREO_CBR.fileName();
+		byte[] expected = Files.readAllBytes(new File(dir, name).toPath());
+		LoopbackServer server = new LoopbackServer(dir, chunked, maxRequests);
+		server.start();
+		try {
+			URL url = new URL(server.url(name));
+			for (int i = 0; i < REPEAT; i++) {
+				HttpConnection c = new HttpConnection();
+				c.open(url, null);
+				assertEquals(mode(chunked) + " request " + i, 200, c.getResponseCode());
+				assertTrue(mode(chunked) + " request " + i, Arrays.equals(expected, readFully(c.getInputStream())));
+				c.close();
+			}
+		} finally {
+			server.shutdown();
+		}
+		assertEquals(mode(chunked), REPEAT, server.getRequests());
+		return server.getConnections();
+	}
+
+	/*
+	 * 用同一个PlayBack逐个播放所有文件，和播放本地文件的结果比较。返回建立的连接数。
+	 */
+	private int playlist(boolean chunked, int maxRequests) throws IOException {
+		LoopbackServer server = new LoopbackServer(dir, chunked, maxRequests);
+		server.start();
+		Capture local = new Capture(), remote = new Capture();
+		PlayBack lp = new PlayBack(local), rp = new PlayBack(remote);
+		PrintStream out = System.out;
+		try {
+			System.setOut(new PrintStream(new OutputStream() {
+				public void write(int b) {
+				}
+
+				public void write(byte[] b, int off, int len) {
+				}
+			}));
+			for (Fixtures.Spec spec : Fixtures.Spec.values()) {
+				String name = mode(chunked) + " " + spec;
+				local.pcm.reset();
+				remote.pcm.reset();
+				assertTrue(name, lp.open(new File(dir, spec.fileName()).getPath(), null) && lp.start(false));
+				lp.close();
+				assertTrue(name, rp.open(server.url(spec.fileName()), null) && rp.start(false));
+				rp.close();
+				assertTrue(name, local.pcm.size() > 0);
+				assertTrue(name, Arrays.equals(local.pcm.toByteArray(), remote.pcm.toByteArray()));
+			}
+		} finally {
+			System.setOut(out);
+			server.shutdown();
+		}
+		return server.getConnections();
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] b = new byte[4096];
+		int n;
+		while ((n = in.read(b, 0, b.length)) != -1)
+			bos.write(b, 0, n);
+		return bos.toByteArray();
+	}
+
+	private static final class Capture implements IAudio {
+		final ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+
+		public int write(byte[] b, int len) {
+			pcm.write(b, 0, len);
+			return len;
+		}
+
+		public boolean open(Header h, String artist) {
+			return true;
+		}
+
+		public void start(boolean b) {
+		}
+
+		public void drain() {
+		}
+
+		public void close() {
+		}
+
+		public void refreshMessage(String msg) {
+		}
+
+		public void setLineGain(float gain) {
+		}
+
+		public FloatControl getFloatControl() {
+			return null;
+		}
+	}
+}
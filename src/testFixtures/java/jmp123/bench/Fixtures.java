@@ -0,0 +1,552 @@
+/*
+ * Fixtures.java -- 生成测试用的MPEG音频文件
+ */
+package jmp123.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * 确定性地生成基准测试和单元测试用的MPEG Audio Layer Ⅰ/Ⅱ/Ⅲ 文件。
+ * <p>
+ * 帧头和边信息按标准填写，其余数据（比特分配、增益因子、哈夫曼码字和样本）由固定种子的随机数产生。解码器对这些数据的处理路径和真实文件相同，
+ * 且同一{@link Spec}每次生成的文件逐字节相同。
+ */
+public final class Fixtures {
+	/**
+	 * 未指定目录时存放生成文件的目录。
+	 */
+	public static final String DEFAULT_DIR = "target/fixtures";
+
+	/**
+	 * 基准测试文件的规格。
+	 */
+	public enum Spec {
+		L1_MPEG1_STEREO(1, 3, 0, 0, 12, 12, 600),
+		L1_MPEG2_MONO(1, 2, 0, 3, 8, 8, 600),
+		L2_MPEG1_STEREO(2, 3, 0, 0, 10, 10, 400),
+		L2_MPEG1_MONO(2, 3, 1, 3, 8, 8, 400),
+		L2_MPEG2_JSTEREO(2, 2, 1, 1, 10, 10, 400),
+		L3_MPEG1_JSTEREO_CBR(3, 3, 0, 1, 9, 9, 400),
+		L3_MPEG1_STEREO_VBR(3, 3, 0, 0, 6, 14, 400),
+		L3_MPEG1_MONO_CBR(3, 3, 2, 3, 5, 5, 400),
+		L3_MPEG2_JSTEREO_VBR(3, 2, 0, 1, 4, 12, 600),
+		L3_MPEG25_MONO_CBR(3, 0, 0, 3, 4, 4, 600);
+
+		final int layer, verID, sfreq, mode, minBitrate, maxBitrate, frames;
+
+		Spec(int layer, int verID, int sfreq, int mode, int minBitrate, int maxBitrate, int frames) {
+			this.layer = layer;
+			this.verID = verID;
+			this.sfreq = sfreq;
+			this.mode = mode;
+			this.minBitrate = minBitrate;
+			this.maxBitrate = maxBitrate;
+			this.frames = frames;
+		}
+
+		/**
+		 * 是否为可变位率（VBR）文件。VBR文件的第一帧是Xing标签帧。
+		 * @return 可变位率返回true。
+		 */
+		public boolean isVBR() {
+			return minBitrate != maxBitrate;
+		}
+
+		/**
+		 * 获取生成的文件的文件名。
+		 * @return 文件名。
+		 */
+		public String fileName() {
+			return name().toLowerCase() + ".mp3";
+		}
+	}
+
+	private static final int[][] SAMPLING_RATE = {
+		{11025, 12000, 8000}, {0, 0, 0}, {22050, 24000, 16000}, {44100, 48000, 32000}};
+
+	private static final int[][][] BITRATE = {
+		{{0,32,64,96,128,160,192,224,256,288,320,352,384,416,448},
+		{0,32,48,56,64,80,96,112,128,160,192,224,256,320,384},
+		{0,32,40,48,56,64,80,96,112,128,160,192,224,256,320}},
+		{{0,32,48,56,64,80,96,112,128,144,160,176,192,224,256},
+		{0,8,16,24,32,40,48,56,64,80,96,112,128,144,160},
+		{0,8,16,24,32,40,48,56,64,80,96,112,128,144,160}}};
+
+	// 哈夫曼码表号4和14未使用
+	private static final int[] TABLES = {1,2,3,5,6,7,8,9,10,11,12,13,15,16,17,18,19,20,21,22,23,24,
+		25,26,27,28,29,30,31};
+
+	private final Spec spec;
+	private final Random rnd;
+	private final int lsf, channels, samplingRate;
+	private final int bandBitrate, sblimit; // 只用于createBandLimited
+
+	private Fixtures(Spec spec) {
+		this(spec, 0, 0);
+	}
+
+	private Fixtures(Spec spec, int bandBitrate, int sblimit) {
+		this.spec = spec;
+		this.bandBitrate = bandBitrate;
+		this.sblimit = sblimit;
+		rnd = new Random(0x6A6D7031L + spec.ordinal() + (bandBitrate << 8) + (sblimit << 16));
+		lsf = spec.verID == 3 ? 0 : 1;
+		channels = spec.mode == 3 ? 1 : 2;
+		samplingRate = SAMPLING_RATE[spec.verID][spec.sfreq];
+	}
+
+	/**
+	 * 生成spec指定的文件到目录dir。若文件已经存在则不重新生成。
+	 *
+	 * @param spec
+	 *            文件规格。
+	 * @param dir
+	 *            存放文件的目录。
+	 * @return 生成的文件。
+	 * @throws IOException
+	 *             发生I/O错误。
+	 */
+	public static File create(Spec spec, File dir) throws IOException {
+		return new Fixtures(spec).save(dir, spec.fileName());
+	}
+
+	/**
+	 * 生成一个只有低频子带有非零值的MPEG-1 Layer Ⅲ 立体声CBR文件（44.1kHz、长块、无M/S和强度立体声），模拟低通滤波后编码的文件。
+	 * 哈夫曼值只取0和±1，用码表1编码；每个粒度组每个声道的码字不超过按位率平均分配的位数，位率低时非零子带数可能比sblimit更少。
+	 * 若文件已经存在则不重新生成。
+	 *
+	 * @param kbps
+	 *            位率，MPEG-1 Layer Ⅲ 的位率之一。
+	 * @param sblimit
+	 *            非零子带数，1..32。
+	 * @param dir
+	 *            存放文件的目录。
+	 * @return 生成的文件，文件名为 <code>l3_bandlimited_{kbps}_{sblimit}.mp3</code>。
+	 * @throws IOException
+	 *             发生I/O错误。
+	 */
+	public static File createBandLimited(int kbps, int sblimit, File dir) throws IOException {
+		int idx = 1;
+		while (idx < 15 && BITRATE[0][2][idx] != kbps)
+			idx++;
+		if (idx == 15 || sblimit < 1 || sblimit > 32)
+			throw new IllegalArgumentException("kbps=" + kbps + ", sblimit=" + sblimit);
+		// 格式和L3_MPEG1_STEREO_VBR相同，但固定位率
+		return new Fixtures(Spec.L3_MPEG1_STEREO_VBR, idx, sblimit).save(dir,
+				"l3_bandlimited_" + kbps + "_" + sblimit + ".mp3");
+	}
+
+	private File save(File dir, String name) throws IOException {
+		File file = new File(dir, name);
+		if (file.isFile())
+			return file;
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Cannot create directory: " + dir);
+		byte[] b = sblimit > 0 ? bandLimited() : generate();
+		File tmp = new File(dir, name + ".tmp");
+		FileOutputStream out = new FileOutputStream(tmp);
+		try {
+			out.write(b);
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(file) && !file.isFile())
+			throw new IOException("Cannot create file: " + file);
+		return file;
+	}
+
+	/**
+	 * 生成全部规格的文件。
+	 *
+	 * @param args
+	 *            args[0]指定存放文件的目录，缺省为 {@link #DEFAULT_DIR}。
+	 * @throws IOException
+	 *             发生I/O错误。
+	 */
+	public static void main(String[] args) throws IOException {
+		File dir = new File(args.length > 0 ? args[0] : DEFAULT_DIR);
+		for (Spec spec : Spec.values())
+			System.out.println(create(spec, dir));
+	}
+
+	private int frameSize(int bitrateIndex) {
+		int br = BITRATE[lsf][spec.layer - 1][bitrateIndex];
+		switch (spec.layer) {
+		case 1:
+			return (br * 12000 / samplingRate) << 2;
+		case 2:
+			return br * 144000 / samplingRate;
+		default:
+			return br * 144000 / (samplingRate << lsf);
+		}
+	}
+
+	private int bitrateIndex() {
+		return spec.minBitrate + rnd.nextInt(spec.maxBitrate - spec.minBitrate + 1);
+	}
+
+	private void header(BitWriter bw, int bitrateIndex, int modeExtension) {
+		bw.put(0x7ff, 11);
+		bw.put(spec.verID, 2);
+		bw.put(4 - spec.layer, 2);
+		bw.put(1, 1);	// protection_bit: 无CRC
+		bw.put(bitrateIndex, 4);
+		bw.put(spec.sfreq, 2);
+		bw.put(0, 2);	// padding_bit, private_bit
+		bw.put(spec.mode, 2);
+		bw.put(modeExtension, 2);
+		bw.put(0, 4);	// copyright, original, emphasis
+	}
+
+	private byte[] generate() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int[] offsets = new int[spec.frames];
+		int f = 0;
+		if (spec.isVBR())
+			f = 1; // 第一帧是Xing标签帧，最后填写
+		Layer3State l3 = spec.layer == 3 ? new Layer3State() : null;
+		for (; f < spec.frames; f++) {
+			offsets[f] = out.size();
+			int idx = bitrateIndex();
+			byte[] frame = new byte[frameSize(idx)];
+			BitWriter bw = new BitWriter(frame);
+			// 联合立体声: 总是M/S，MPEG-1的1/4帧同时使用强度立体声
+			int ext = spec.mode == 1 ? 2 + (lsf == 0 && rnd.nextInt(4) == 0 ? 1 : 0) : 0;
+			header(bw, idx, ext);
+			switch (spec.layer) {
+			case 1:
+				layer1(bw, frame.length);
+				break;
+			case 2:
+				layer2(bw, frame.length, idx, ext);
+				break;
+			default:
+				l3.frame(bw, frame, ext);
+			}
+			out.write(frame, 0, frame.length);
+		}
+		byte[] b = out.toByteArray();
+		if (!spec.isVBR())
+			return b;
+
+		byte[] xing = xingFrame(offsets, b.length);
+		byte[] all = new byte[xing.length + b.length];
+		System.arraycopy(xing, 0, all, 0, xing.length);
+		System.arraycopy(b, 0, all, xing.length, b.length);
+		return all;
+	}
+
+	// Xing标签帧: 帧数、字节数、100项TOC、质量
+	private byte[] xingFrame(int[] offsets, int bytes) {
+		int idx = lsf == 0 ? 9 : 8;
+		byte[] frame = new byte[frameSize(idx)];
+		BitWriter bw = new BitWriter(frame);
+		header(bw, idx, 0);
+		bw.skip(8 * sideInfoSize());
+		bw.put('X', 8); bw.put('i', 8); bw.put('n', 8); bw.put('g', 8);
+		bw.put(0xf, 32);
+		bw.put(spec.frames, 32);
+		bw.put(bytes + frame.length, 32);
+		for (int i = 0; i < 100; i++) {
+			long pos = frame.length + offsets[1 + i * (spec.frames - 1) / 100];
+			bw.put((int) Math.min(255, pos * 256 / (bytes + frame.length)), 8);
+		}
+		bw.put(100, 32);
+		return frame;
+	}
+
+	private int sideInfoSize() {
+		if (lsf == 0)
+			return channels == 1 ? 17 : 32;
+		return channels == 1 ? 9 : 17;
+	}
+
+	//-------------------------------------------------------------------------
+	// Layer Ⅰ
+
+	private void layer1(BitWriter bw, int frameSize) {
+		int[][] alloc = new int[channels][32];
+		int sb, ch, bits = 32 * 4 * channels;
+		for (sb = 0; sb < 27; sb++)
+			for (ch = 0; ch < channels; ch++)
+				bits += layer1Bits(alloc[ch][sb] = rnd.nextInt(sb < 8 ? 12 : 6));
+		while (bits > (frameSize - 4) << 3) {
+			sb = rnd.nextInt(27);
+			ch = rnd.nextInt(channels);
+			if (alloc[ch][sb] != 0) {
+				bits -= layer1Bits(alloc[ch][sb]);
+				bits += layer1Bits(--alloc[ch][sb]);
+			}
+		}
+		for (sb = 0; sb < 32; sb++)
+			for (ch = 0; ch < channels; ch++)
+				bw.put(alloc[ch][sb], 4);
+		for (sb = 0; sb < 32; sb++)
+			for (ch = 0; ch < channels; ch++)
+				if (alloc[ch][sb] != 0)
+					bw.put(4 + rnd.nextInt(30), 6);
+		for (int gr = 0; gr < 12; gr++)
+			for (sb = 0; sb < 32; sb++)
+				for (ch = 0; ch < channels; ch++)
+					if (alloc[ch][sb] != 0)
+						bw.put(rnd.nextInt(), alloc[ch][sb] + 1);
+	}
+
+	private static int layer1Bits(int allocation) {
+		return allocation == 0 ? 0 : 6 + 12 * (allocation + 1);
+	}
+
+	//-------------------------------------------------------------------------
+	// Layer Ⅱ, ISO/IEC 11172-3 Table 3-B.2, ISO/IEC 13818-3 Table B.1
+
+	private static final byte[][] NBAL = {
+		{4,4,4,4,4,4,4,4,4,4,4,3,3,3,3,3,3,3,3,3,3,3,3,2,2,2,2},
+		{4,4,4,4,4,4,4,4,4,4,4,3,3,3,3,3,3,3,3,3,3,3,3,2,2,2,2,2,2,2},
+		{4,4,3,3,3,3,3,3},
+		{4,4,3,3,3,3,3,3,3,3,3,3},
+		{4,4,4,4,3,3,3,3,3,3,3,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2}};
+	private static final byte[][] SBQUANT_OFFSET = {
+		{7,7,7,6,6,6,6,6,6,6,6,3,3,3,3,3,3,3,3,3,3,3,3,0,0,0,0},
+		{7,7,7,6,6,6,6,6,6,6,6,3,3,3,3,3,3,3,3,3,3,3,3,0,0,0,0,0,0,0},
+		{5,5,2,2,2,2,2,2},
+		{5,5,2,2,2,2,2,2,2,2,2,2},
+		{4,4,4,4,2,2,2,2,2,2,2,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1}};
+	private static final byte[][][] AIDX_TABLE = {
+		{{0,2,2,2,2,2,2,0,0,0,1,1,1,1,1,0},{0,2,2,0,0,0,1,1,1,1,1,1,1,1,1,0}},
+		{{0,2,2,2,2,2,2,0,0,0,0,0,0,0,0,0},{0,2,2,0,0,0,0,0,0,0,0,0,0,0,0,0}},
+		{{0,3,3,3,3,3,3,0,0,0,1,1,1,1,1,0},{0,3,3,0,0,0,1,1,1,1,1,1,1,1,1,0}}};
+	private static final byte[] BITALLOC_OFFSET = {0, 3, 3, 1, 2, 3, 4, 5};
+	private static final byte[][] OFFSET_TABLE = {{0, 1, 16}, {0, 1, 2, 3, 4, 5, 16},
+		{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14},
+		{0, 1, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15},
+		{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16},
+		{0, 2, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}};
+	private static final byte[] CQ_BITS = {5,7,3,10,4,5,6,7,8,9,10,11,12,13,14,15,16};
+	private static final byte[] GROUP = {2,3,0,4,0,0,0,0,0,0,0,0,0,0,0,0,0};
+	private static final int[] SCF_COUNT = {3, 2, 1, 2};
+
+	private void layer2(BitWriter bw, int frameSize, int bitrateIndex, int modeExtension) {
+		int aidx, sblimit;
+		if (spec.verID == 2) {
+			aidx = 4;
+			sblimit = 30;
+		} else {
+			aidx = AIDX_TABLE[spec.sfreq][2 - channels][bitrateIndex];
+			sblimit = aidx == 0 ? 27 : aidx == 1 ? 30 : aidx == 2 ? 8 : 12;
+		}
+		int bound = spec.mode == 1 ? (modeExtension + 1) << 2 : 32;
+		if (bound > sblimit)
+			bound = sblimit;
+
+		int[][] alloc = new int[2][32], scfsi = new int[2][32];
+		int sb, ch, bits = 0;
+		for (sb = 0; sb < sblimit; sb++) {
+			int n = sb < bound ? channels : 1;
+			bits += n * NBAL[aidx][sb];
+			for (ch = 0; ch < n; ch++)
+				alloc[ch][sb] = rnd.nextInt(1 << (NBAL[aidx][sb] - (sb < 4 ? 0 : 1)));
+			if (n == 1)
+				alloc[1][sb] = alloc[0][sb];
+			for (ch = 0; ch < channels; ch++)
+				scfsi[ch][sb] = rnd.nextInt(4);
+		}
+		bits += layer2Bits(alloc, scfsi, aidx, sblimit, bound);
+		while (bits > (frameSize - 4) << 3) {
+			sb = rnd.nextInt(sblimit);
+			ch = sb < bound ? rnd.nextInt(channels) : 0;
+			if (alloc[ch][sb] != 0) {
+				bits -= layer2Bits(alloc, scfsi, aidx, sblimit, bound);
+				alloc[ch][sb]--;
+				if (sb >= bound)
+					alloc[1][sb] = alloc[0][sb];
+				bits += layer2Bits(alloc, scfsi, aidx, sblimit, bound);
+			}
+		}
+
+		for (sb = 0; sb < sblimit; sb++)
+			for (ch = 0; ch < (sb < bound ? channels : 1); ch++)
+				bw.put(alloc[ch][sb], NBAL[aidx][sb]);
+		for (sb = 0; sb < sblimit; sb++)
+			for (ch = 0; ch < channels; ch++)
+				if (alloc[ch][sb] != 0)
+					bw.put(scfsi[ch][sb], 2);
+		for (sb = 0; sb < sblimit; sb++)
+			for (ch = 0; ch < channels; ch++)
+				if (alloc[ch][sb] != 0)
+					for (int i = SCF_COUNT[scfsi[ch][sb]]; i > 0; i--)
+						bw.put(4 + rnd.nextInt(30), 6);
+		for (int gr = 0; gr < 12; gr++)
+			for (sb = 0; sb < sblimit; sb++)
+				for (ch = 0; ch < (sb < bound ? channels : 1); ch++)
+					if (alloc[ch][sb] != 0) {
+						int index = quantClass(aidx, sb, alloc[ch][sb]);
+						if (GROUP[index] != 0)
+							bw.put(rnd.nextInt(), CQ_BITS[index]);
+						else
+							for (int s = 0; s < 3; s++)
+								bw.put(rnd.nextInt(), CQ_BITS[index]);
+					}
+	}
+
+	private static int quantClass(int aidx, int sb, int allocation) {
+		return OFFSET_TABLE[BITALLOC_OFFSET[SBQUANT_OFFSET[aidx][sb]]][allocation - 1];
+	}
+
+	private int layer2Bits(int[][] alloc, int[][] scfsi, int aidx, int sblimit, int bound) {
+		int bits = 0;
+		for (int sb = 0; sb < sblimit; sb++)
+			for (int ch = 0; ch < channels; ch++)
+				if (alloc[ch][sb] != 0) {
+					bits += 2 + 6 * SCF_COUNT[scfsi[ch][sb]];
+					if (sb < bound || ch == 0) {
+						int index = quantClass(aidx, sb, alloc[ch][sb]);
+						bits += 12 * (GROUP[index] != 0 ? CQ_BITS[index] : 3 * CQ_BITS[index]);
+					}
+				}
+		return bits;
+	}
+
+	//-------------------------------------------------------------------------
+	// Layer Ⅲ
+
+	private final class Layer3State {
+		private final int granules = lsf == 0 ? 2 : 1;
+		private final int maxBegin = lsf == 0 ? 511 : 255;
+		private int reservoir; // 之前各帧未使用的主数据字节数
+
+		void frame(BitWriter bw, byte[] frame, int modeExtension) {
+			int sideInfo = sideInfoSize();
+			int slot = frame.length - 4 - sideInfo;
+			int begin = Math.min(reservoir, maxBegin);
+			int share = ((begin + slot) << 3) / (granules * channels);
+			int[][] part23 = new int[granules][channels];
+			int used = 0;
+			for (int gr = 0; gr < granules; gr++)
+				for (int ch = 0; ch < channels; ch++)
+					used += part23[gr][ch] = Math.min(4095, share * (55 + rnd.nextInt(41)) / 100);
+			reservoir = begin + slot - ((used + 7) >> 3);
+
+			if (lsf == 0) {
+				bw.put(begin, 9);
+				bw.put(0, channels == 1 ? 5 : 3);
+				for (int ch = 0; ch < channels; ch++)
+					bw.put(rnd.nextInt(16), 4);
+			} else {
+				bw.put(begin, 8);
+				bw.put(0, channels == 1 ? 1 : 2);
+			}
+			for (int gr = 0; gr < granules; gr++)
+				for (int ch = 0; ch < channels; ch++)
+					channel(bw, part23[gr][ch]);
+
+			// 主数据: 增益因子和哈夫曼码字都用随机数据
+			for (int i = 4 + sideInfo; i < frame.length; i++)
+				frame[i] = (byte) rnd.nextInt();
+		}
+
+		private void channel(BitWriter bw, int part23) {
+			bw.put(part23, 12);
+			bw.put(rnd.nextInt(289), 9);			// big_values
+			bw.put(140 + rnd.nextInt(45), 8);		// global_gain
+			bw.put(rnd.nextInt(lsf == 0 ? 16 : 512), lsf == 0 ? 4 : 9);
+			if (rnd.nextInt(100) < 15) {
+				bw.put(1, 1);	// window_switching_flag
+				int blockType = 1 + rnd.nextInt(4);
+				bw.put(blockType > 3 ? 2 : blockType, 2);
+				bw.put(lsf == 0 && rnd.nextInt(10) == 0 ? 1 : 0, 1); // 混合块只用于MPEG-1
+				bw.put(table(), 5);
+				bw.put(table(), 5);
+				for (int w = 0; w < 3; w++)
+					bw.put(rnd.nextInt(3), 3);
+			} else {
+				bw.put(0, 1);
+				bw.put(table(), 5);
+				bw.put(table(), 5);
+				bw.put(table(), 5);
+				bw.put(rnd.nextInt(16), 4);
+				bw.put(rnd.nextInt(8), 3);
+			}
+			if (lsf == 0)
+				bw.put(rnd.nextInt(2), 1);	// preflag
+			bw.put(rnd.nextInt(2), 1);		// scalefac_scale
+			bw.put(rnd.nextInt(2), 1);		// count1table_select
+		}
+
+		private int table() {
+			return TABLES[rnd.nextInt(TABLES.length)];
+		}
+	}
+
+	// 码表1: 下标为x*2+y，码字后跟非零值的符号位
+	private static final int[] TABLE1_CODE = { 1, 1, 1, 0 };
+	private static final int[] TABLE1_LEN = { 1, 3, 2, 3 };
+
+	private byte[] bandLimited() {
+		int sideInfo = sideInfoSize();
+		byte[] b = new byte[spec.frames * frameSize(bandBitrate)];
+		for (int f = 0; f < spec.frames; f++) {
+			byte[] frame = new byte[frameSize(bandBitrate)];
+			BitWriter bw = new BitWriter(frame), main = new BitWriter(frame);
+			header(bw, bandBitrate, 0);
+			bw.put(0, 9);			// main_data_begin: 不使用位流缓冲区
+			bw.put(0, 3 + 4 * channels);	// private_bits, scfsi
+			main.skip((4 + sideInfo) << 3);
+			int share = ((frame.length - 4 - sideInfo) << 3) / (2 * channels);
+			for (int gr = 0; gr < 2; gr++) {
+				for (int ch = 0; ch < channels; ch++) {
+					// scalefac_compress=0: 没有增益因子; 只有大值区，没有count1区
+					int start = main.pos, pairs, xy, len;
+					for (pairs = 0; pairs < 9 * sblimit; pairs++) {
+						xy = rnd.nextInt(4);
+						len = TABLE1_LEN[xy] + (xy >> 1) + (xy & 1);
+						if (main.pos - start + len > share)
+							break;
+						main.put(TABLE1_CODE[xy], TABLE1_LEN[xy]);
+						if ((xy >> 1) != 0)
+							main.put(rnd.nextInt(2), 1);
+						if ((xy & 1) != 0)
+							main.put(rnd.nextInt(2), 1);
+					}
+					bw.put(main.pos - start, 12);	// part2_3_length
+					bw.put(pairs, 9);				// big_values
+					bw.put(180 + rnd.nextInt(30), 8);	// global_gain
+					bw.put(0, 4);					// scalefac_compress
+					bw.put(0, 1);					// window_switching_flag
+					bw.put(1, 5);
+					bw.put(1, 5);
+					bw.put(1, 5);
+					bw.put(7, 4);					// region0_count
+					bw.put(7, 3);					// region1_count
+					bw.put(0, 3);					// preflag, scalefac_scale, count1table_select
+				}
+			}
+			System.arraycopy(frame, 0, b, f * frame.length, frame.length);
+		}
+		return b;
+	}
+
+	//-------------------------------------------------------------------------
+
+	private static final class BitWriter {
+		private final byte[] b;
+		private int pos;
+
+		BitWriter(byte[] b) {
+			this.b = b;
+		}
+
+		void put(int val, int n) {
+			for (int i = n - 1; i >= 0; i--, pos++)
+				if (((val >>> i) & 1) != 0)
+					b[pos >> 3] |= 0x80 >>> (pos & 7);
+		}
+
+		void skip(int n) {
+			pos += n;
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * LoopbackServer.java -- 本机回环地址上的简单HTTP服务器
+ */
+package jmp123.bench;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在本机回环地址上提供一个目录下的文件，用于检查 {@link jmp123.instream.HttpConnection} 和
+ * {@link jmp123.instream.BuffRandReadURL}。支持持久连接（keep-alive）和按范围读取（Range），响应内容按
+ * Content-Length 或分块传输编码（chunked）发送，并统计建立的连接数和收到的请求数。
+ * <p>
+ * 每个连接处理 <code>maxRequests</code> 个请求后不加通知地关闭，模拟服务器关闭空闲连接。
+ */
+public final class LoopbackServer extends Thread {
+	private final ServerSocket server;
+	private final File root;
+	private final boolean chunked;
+	private final int maxRequests;
+	private final AtomicInteger connections = new AtomicInteger();
+	private final AtomicInteger requests = new AtomicInteger();
+
+	/**
+	 * 创建服务器，监听一个空闲端口。
+	 *
+	 * @param root
+	 *            文件所在目录。
+	 * @param chunked
+	 *            true: 响应内容用分块传输编码发送；false: 用Content-Length指定长度。
+	 * @param maxRequests
+	 *            每个连接最多处理的请求数。
+	 * @throws IOException
+	 *             创建ServerSocket时发生I/O错误。
+	 */
+	public LoopbackServer(File root, boolean chunked, int maxRequests) throws IOException {
+		server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		this.root = root;
+		this.chunked = chunked;
+		this.maxRequests = maxRequests;
+		setName("loopback_server");
+		setDaemon(true);
+	}
+
+	/**
+	 * 获取文件的URL。
+	 *
+	 * @param name
+	 *            文件名。
+	 * @return URL字符串。
+	 */
+	public String url(String name) {
+		return "http://127.0.0.1:" + server.getLocalPort() + "/" + name;
+	}
+
+	public int getConnections() {
+		return connections.get();
+	}
+
+	public int getRequests() {
+		return requests.get();
+	}
+
+	public void shutdown() {
+		try {
+			server.close();
+		} catch (IOException e) {
+		}
+	}
+
+	public void run() {
+		try {
+			while (true) {
+				final Socket s = server.accept();
+				connections.incrementAndGet();
+				Thread t = new Thread() {
+					public void run() {
+						serve(s);
+					}
+				};
+				t.setDaemon(true);
+				t.start();
+			}
+		} catch (IOException e) {
+			// 已关闭
+		}
+	}
+
+	private void serve(Socket s) {
+		try {
+			InputStream in = new BufferedInputStream(s.getInputStream());
+			OutputStream out = new BufferedOutputStream(s.getOutputStream());
+			for (int n = 0; n < maxRequests; n++) {
+				String line = readLine(in), range = null, conn = null, h;
+				if (line == null || line.isEmpty())
+					break;
+				requests.incrementAndGet();
+				while ((h = readLine(in)) != null && !h.isEmpty()) {
+					int i = h.indexOf(':');
+					String key = h.substring(0, i).trim(), value = h.substring(i + 1).trim();
+					if (key.equalsIgnoreCase("Range"))
+						range = value;
+					else if (key.equalsIgnoreCase("Connection"))
+						conn = value;
+				}
+				respond(out, line.split(" ")[1], range);
+				if ("close".equalsIgnoreCase(conn))
+					break;
+			}
+		} catch (IOException e) {
+		} finally {
+			try {
+				s.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void respond(OutputStream out, String path, String range) throws IOException {
+		File file = new File(root, URLDecoder.decode(path.substring(1), "UTF-8"));
+		if (!file.isFile()) {
+			out.write("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n".getBytes("ISO-8859-1"));
+			out.flush();
+			return;
+		}
+		long length = file.length(), first = 0, last = length - 1;
+		boolean partial = false;
+		if (range != null && range.startsWith("bytes=")) {
+			String[] p = range.substring(6).split("-", -1);
+			first = Long.parseLong(p[0]);
+			if (!p[1].isEmpty())
+				last = Math.min(last, Long.parseLong(p[1]));
+			partial = true;
+		}
+		StringBuilder sb = new StringBuilder(partial ? "HTTP/1.1 206 Partial Content\r\n" : "HTTP/1.1 200 OK\r\n");
+		sb.append("Accept-Ranges: bytes\r\n");
+		if (partial)
+			sb.append("Content-Range: bytes ").append(first).append('-').append(last).append('/').append(length).append("\r\n");
+		if (chunked)
+			sb.append("Transfer-Encoding: chunked\r\n\r\n");
+		else
+			sb.append("Content-Length: ").append(last - first + 1).append("\r\n\r\n");
+		out.write(sb.toString().getBytes("ISO-8859-1"));
+
+		byte[] b = new byte[5000]; // 不是2的幂，块边界和客户端的读取边界错开
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.seek(first);
+			for (long pos = first; pos <= last;) {
+				int n = raf.read(b, 0, (int) Math.min(b.length, last - pos + 1));
+				if (chunked)
+					out.write((Integer.toHexString(n) + "\r\n").getBytes("ISO-8859-1"));
+				out.write(b, 0, n);
+				if (chunked)
+					out.write("\r\n".getBytes("ISO-8859-1"));
+				pos += n;
+			}
+		} finally {
+			raf.close();
+		}
+		if (chunked)
+			out.write("0\r\n\r\n".getBytes("ISO-8859-1"));
+		out.flush();
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		int c;
+		while ((c = in.read()) != '\n') {
+			if (c == -1)
+				return sb.length() == 0 ? null : sb.toString();
+			if (c != '\r')
+				sb.append((char) c);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * DctTable.java -- 查表实现的多相合成滤波矩阵运算
+ */
+package jmp123.decoder;
+
+/**
+ * 查表的Lee快速DCT：按级循环完成蝶形运算，系数取自预先计算的余弦表。代码量比 {@link Synthesis} 中完全展开的实现小得多，
+ * 算法相同但运算顺序不同，因此结果可能有浮点舍入误差级的差别。查表实现比展开的实现慢得多，解码器不使用，这个类只用于基准测试和单元测试的对照。
+ */
+final class DctTable {
+	/*
+	 * 蝶形系数，COS[n][i] = 0.5 / cos((2i+1)PI/(2n))，n=2,4,8,16,32。
+	 */
+	private static final float[][] COS = new float[33][];
+	static {
+		for (int n = 2; n <= 32; n <<= 1) {
+			COS[n] = new float[n >> 1];
+			for (int i = 0; i < (n >> 1); i++)
+				COS[n][i] = (float) (0.5 / Math.cos((2 * i + 1) * Math.PI / (2 * n)));
+		}
+	}
+
+	/*
+	 * 工作缓冲区。
+	 */
+	private final float[] buf = new float[32], tmp = new float[32];
+
+	/**
+	 * 一个子带的矩阵运算。输入、输出和 {@link Synthesis} 的矩阵运算相同。
+	 * @param src 输入的32个样本值。
+	 * @param dest 暂存输出值的长度为1024个元素的FIFO队列。
+	 * @param off FIFO队列的偏移量。
+	 */
+	void dct32to64(float[] src, float[] dest, int off) {
+		float[] x = buf, t = tmp, swap;
+		int n, h, o, i;
+		float a, b;
+		System.arraycopy(src, 0, x, 0, 32);
+
+		// 1. 逐级分解: 每个长度为n的块分为和(前半)与差乘系数(后半)两个长度为n/2的块
+		for (n = 32; n > 1; n >>= 1) {
+			final float[] c = COS[n];
+			h = n >> 1;
+			for (o = 0; o < 32; o += n) {
+				for (i = 0; i < h; i++) {
+					a = x[o + i];
+					b = x[o + n - 1 - i];
+					t[o + i] = a + b;
+					t[o + h + i] = (a - b) * c[i];
+				}
+			}
+			swap = x; x = t; t = swap;
+		}
+
+		// 2. 逐级合并: X[2k]=A[k], X[2k+1]=B[k]+B[k+1]
+		for (n = 2; n <= 32; n <<= 1) {
+			h = n >> 1;
+			for (o = 0; o < 32; o += n) {
+				for (i = 0; i < h - 1; i++) {
+					t[o + 2 * i] = x[o + i];
+					t[o + 2 * i + 1] = x[o + h + i] + x[o + h + i + 1];
+				}
+				t[o + n - 2] = x[o + h - 1];
+				t[o + n - 1] = x[o + n - 1];
+			}
+			swap = x; x = t; t = swap;
+		}
+
+		// 3. 由DCT输出X[0..31]得到64个矩阵运算结果V[0..63]:
+		// V[k]=X[k+16] (k=0..15), V[16]=0, V[k]=-X[48-k] (k=17..47), V[k]=-X[k-48] (k=48..63)
+		for (i = 0; i < 16; i++)
+			dest[off + i] = x[i + 16];
+		dest[off + 16] = 0;
+		for (i = 17; i < 48; i++)
+			dest[off + i] = -x[48 - i];
+		for (i = 48; i < 64; i++)
+			dest[off + i] = -x[i - 48];
+	}
+}